@@ -0,0 +1,202 @@
+package com.eurotech.persistence.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Benchmark results reduced to what the {@link RegressionGate} compares: score with its confidence interval and, for sample time
+ * benchmarks, the p99 latency. Read from JMH JSON results, and stored as a versioned JSON file meant to be committed next to the
+ * benchmarks, so that it changes together with the code it measures.
+ */
+public final class BenchmarkBaseline {
+    public static final int FORMAT_VERSION = 1;
+    private static final String P99 = "99.0";
+
+    private final Instant recorded;
+    private final Map<String, Entry> entries;
+
+    BenchmarkBaseline(Instant recorded, Map<String, Entry> entries) {
+        this.recorded = recorded;
+        this.entries = entries;
+    }
+
+    public Instant getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * @return The results keyed by {@link Entry#getKey()}, in the order they were recorded
+     */
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Reads the results of a JMH run, written in JSON format (the {@link BenchmarkRunner} default)
+     */
+    public static BenchmarkBaseline fromJmhResult(Path jmhResult) throws IOException {
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        for (Object element : (List<?>) Json.parse(readText(jmhResult))) {
+            final Map<?, ?> result = (Map<?, ?>) element;
+            final Map<?, ?> primaryMetric = (Map<?, ?>) result.get("primaryMetric");
+            final List<?> confidence = (List<?>) primaryMetric.get("scoreConfidence");
+            final Map<?, ?> percentiles = (Map<?, ?>) primaryMetric.get("scorePercentiles");
+            final Map<String, String> params = new TreeMap<>();
+            if (result.get("params") != null) {
+                ((Map<?, ?>) result.get("params")).forEach((name, value) -> params.put(String.valueOf(name), String.valueOf(value)));
+            }
+            final Entry entry = new Entry((String) result.get("benchmark"),
+                    (String) result.get("mode"),
+                    (int) Json.number(result.get("threads")),
+                    params,
+                    Json.number(primaryMetric.get("score")),
+                    Json.number(confidence.get(0)),
+                    Json.number(confidence.get(1)),
+                    "sample".equals(result.get("mode")) && percentiles != null ? Json.number(percentiles.get(P99)) : Double.NaN,
+                    (String) primaryMetric.get("scoreUnit"));
+            entries.put(entry.getKey(), entry);
+        }
+        return new BenchmarkBaseline(Instant.now(), entries);
+    }
+
+    public static BenchmarkBaseline read(Path baseline) throws IOException {
+        final Map<?, ?> root = (Map<?, ?>) Json.parse(readText(baseline));
+        final int version = (int) Json.number(root.get("version"));
+        if (version != FORMAT_VERSION) {
+            throw new IOException(String.format("Unsupported baseline format version %d in %s, expected %d", version, baseline, FORMAT_VERSION));
+        }
+        final Map<String, Entry> entries = new LinkedHashMap<>();
+        for (Object element : (List<?>) root.get("benchmarks")) {
+            final Map<?, ?> stored = (Map<?, ?>) element;
+            final Map<String, String> params = new TreeMap<>();
+            ((Map<?, ?>) stored.get("params")).forEach((name, value) -> params.put(String.valueOf(name), String.valueOf(value)));
+            final Entry entry = new Entry((String) stored.get("benchmark"),
+                    (String) stored.get("mode"),
+                    (int) Json.number(stored.get("threads")),
+                    params,
+                    Json.number(stored.get("score")),
+                    Json.number(stored.get("scoreLower")),
+                    Json.number(stored.get("scoreUpper")),
+                    Json.number(stored.get("p99")),
+                    (String) stored.get("unit"));
+            entries.put(entry.getKey(), entry);
+        }
+        return new BenchmarkBaseline(Instant.parse((String) root.get("recorded")), entries);
+    }
+
+    public void write(Path baseline) throws IOException {
+        final List<Map<String, Object>> benchmarks = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            final Map<String, Object> stored = new LinkedHashMap<>();
+            stored.put("benchmark", entry.benchmark);
+            stored.put("mode", entry.mode);
+            stored.put("threads", entry.threads);
+            stored.put("params", entry.params);
+            stored.put("score", entry.score);
+            stored.put("scoreLower", entry.scoreLower);
+            stored.put("scoreUpper", entry.scoreUpper);
+            stored.put("p99", entry.p99);
+            stored.put("unit", entry.unit);
+            benchmarks.add(stored);
+        }
+        final Map<String, Object> root = new LinkedHashMap<>();
+        root.put("version", FORMAT_VERSION);
+        root.put("recorded", recorded.toString());
+        root.put("benchmarks", benchmarks);
+        final Path parent = baseline.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(baseline, Json.write(root).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readText(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The result of one benchmark method, in one mode, with one set of parameters and thread count
+     */
+    public static final class Entry {
+        private final String benchmark;
+        private final String mode;
+        private final int threads;
+        private final Map<String, String> params;
+        private final double score;
+        private final double scoreLower;
+        private final double scoreUpper;
+        private final double p99;
+        private final String unit;
+
+        Entry(String benchmark, String mode, int threads, Map<String, String> params, double score, double scoreLower, double scoreUpper,
+              double p99, String unit) {
+            this.benchmark = benchmark;
+            this.mode = mode;
+            this.threads = threads;
+            this.params = params;
+            this.score = score;
+            this.scoreLower = scoreLower;
+            this.scoreUpper = scoreUpper;
+            this.p99 = p99;
+            this.unit = unit;
+        }
+
+        /**
+         * @return The benchmark name without its package, followed by mode, thread count and parameters, e.g.
+         * "TxManagerBenchmark.emptyTransaction thrpt t4 {stack=LEGACY}"
+         */
+        public String getKey() {
+            final String simpleName = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+            return String.format("%s %s t%d%s", simpleName, mode, threads, params.isEmpty() ? "" : " " + params);
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        /**
+         * @return Whether larger scores are better (throughput), as opposed to times per operation
+         */
+        public boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return Lower bound of the 99.9% confidence interval of the score, NaN when JMH could not compute it (single iteration)
+         */
+        public double getScoreLower() {
+            return scoreLower;
+        }
+
+        /**
+         * @return Upper bound of the 99.9% confidence interval of the score, NaN when JMH could not compute it (single iteration)
+         */
+        public double getScoreUpper() {
+            return scoreUpper;
+        }
+
+        /**
+         * @return The 99th percentile of the sampled latencies, NaN for anything but sample time benchmarks
+         */
+        public double getP99() {
+            return p99;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+}
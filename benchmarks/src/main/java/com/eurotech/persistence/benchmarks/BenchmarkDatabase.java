@@ -0,0 +1,49 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The "demos" persistence unit, moved to an in-memory Derby database so that benchmarks do not measure the disk
+ */
+final class BenchmarkDatabase {
+    static final String PERSISTENCE_UNIT = "demos";
+    private static final String JDBC_URL = "javax.persistence.jdbc.url";
+    private static final String IN_MEMORY_URL = "jdbc:derby:memory:benchmarks;create=true";
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * @return Properties overriding the persistence unit's ones, pointing to the in-memory database
+     */
+    static Map<String, Object> inMemoryProperties() {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put(JDBC_URL, IN_MEMORY_URL);
+        return properties;
+    }
+
+    /**
+     * @return A {@link TxManager} making a single attempt per transaction, so that retries do not blur the measurements
+     */
+    static TxManager createTxManager() {
+        return createTxManager(1, inMemoryProperties());
+    }
+
+    /**
+     * @param jdbcUrl The database to run against, in-memory Derby if empty
+     */
+    static TxManager createTxManager(int maxAttempts, Optional<String> jdbcUrl) {
+        final Map<String, Object> properties = inMemoryProperties();
+        jdbcUrl.ifPresent(url -> properties.put(JDBC_URL, url));
+        return createTxManager(maxAttempts, properties);
+    }
+
+    static TxManager createTxManager(int maxAttempts, Map<String, ?> properties) {
+        return new JpaTxManagerFactory(maxAttempts).create(PERSISTENCE_UNIT, properties);
+    }
+}
@@ -0,0 +1,226 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.demos.transactions.NonVersionedEntity;
+import com.eurotech.demos.transactions.VersionedEntity;
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.BulkOptions;
+import com.eurotech.persistence.transactions.BulkResult;
+import com.eurotech.persistence.transactions.TxManager;
+
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Concurrent workers reading, updating and deleting entities picked from a key space with a Zipfian (hot keys) distribution,
+ * each operation in its own transaction reading the entity with the configured lock mode. Reports throughput, latency
+ * percentiles, abort and retry rates, and the time spent in the locking reads. Run with --help for the options.
+ * <p>
+ * Latencies are recorded per operation for those that completed, and separately for those aborted after exhausting their
+ * retries: leaving them out would hide the slowest operations exactly when contention is high.
+ * <p>
+ * A delete removes the entity and creates its replacement in the same transaction, so that the key space does not shrink:
+ * operations on a key whose entity has just been replaced by another worker find nothing, and are counted as misses.
+ */
+public class ContentionLoadGenerator {
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    enum Operation {READ, UPDATE, DELETE}
+
+    private final LoadOptions options;
+    private final TxManager txManager;
+    private final DemoEntityRepository<NonVersionedEntity> repository;
+    private final Function<String, NonVersionedEntity> newEntity;
+    private final ZipfianGenerator keys;
+    // Key -> id of the entity currently standing for it
+    private final AtomicLongArray ids;
+
+    @SuppressWarnings("unchecked")
+    ContentionLoadGenerator(LoadOptions options, TxManager txManager) {
+        this.options = options;
+        this.txManager = txManager;
+        if (options.versioned) {
+            this.repository = new DemoEntityRepository<>((Class<NonVersionedEntity>) (Class<?>) VersionedEntity.class);
+            this.newEntity = VersionedEntity::newEntity;
+        } else {
+            this.repository = new DemoEntityRepository<>(NonVersionedEntity.class);
+            this.newEntity = NonVersionedEntity::newEntity;
+        }
+        this.keys = new ZipfianGenerator(options.keys, options.zipfExponent);
+        this.ids = new AtomicLongArray(options.keys);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 1 && (args[0].equals("help") || args[0].equals("--help"))) {
+            System.out.println(LoadOptions.usage());
+            return;
+        }
+        final LoadOptions options = LoadOptions.parse(args);
+        final ContentionLoadGenerator generator = new ContentionLoadGenerator(options, BenchmarkDatabase.createTxManager(options.maxAttempts, options.jdbcUrl));
+        generator.populate();
+        System.out.println(options);
+        if (!options.warmup.isZero()) {
+            generator.run(options.warmup.toNanos());
+        }
+        System.out.println(generator.run(options.duration.toNanos()));
+    }
+
+    void populate() {
+        final List<Integer> allKeys = new ArrayList<>();
+        for (int key = 0; key < options.keys; key++) {
+            allKeys.add(key);
+        }
+        final BulkResult<Integer, Long> created = txManager.executeAll(allKeys,
+                (tx, key) -> repository.create(tx, newEntity.apply("Key " + key)).getId(),
+                BulkOptions.defaults());
+        if (created.hasFailures()) {
+            throw created.getFailures().get(0).getException();
+        }
+        created.getItemResults().forEach(itemResult -> ids.set(itemResult.getItem(), itemResult.getResult()));
+    }
+
+    Stats run(long durationNanos) throws InterruptedException {
+        final long end = System.nanoTime() + durationNanos;
+        final List<Worker> workers = new ArrayList<>();
+        for (int w = 0; w < options.workers; w++) {
+            workers.add(new Worker(end));
+        }
+        final long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        final Stats total = new Stats();
+        total.workers = options.workers;
+        for (Worker worker : workers) {
+            worker.join();
+            total.merge(worker.stats);
+        }
+        total.elapsedNanos = System.nanoTime() - start;
+        return total;
+    }
+
+    private Operation nextOperation() {
+        final int draw = ThreadLocalRandom.current().nextInt(options.readWeight + options.updateWeight + options.deleteWeight);
+        if (draw < options.readWeight) {
+            return Operation.READ;
+        }
+        return draw < options.readWeight + options.updateWeight ? Operation.UPDATE : Operation.DELETE;
+    }
+
+    /**
+     * @return The id of the entity standing for the key after the operation, empty if the entity was not found
+     */
+    private Optional<Long> execute(Operation operation, Long id, Stats stats) {
+        return txManager.execute(tx -> {
+            stats.attempts++;
+            final long lockStart = System.nanoTime();
+            final Optional<NonVersionedEntity> entity = repository.find(tx, id, options.lockMode);
+            stats.lockWaitNanos += System.nanoTime() - lockStart;
+            if (!entity.isPresent()) {
+                return Optional.empty();
+            }
+            switch (operation) {
+                case UPDATE:
+                    entity.get().setContent("Updated " + ThreadLocalRandom.current().nextInt());
+                    repository.update(tx, entity.get(), entity.get());
+                    return Optional.of(id);
+                case DELETE:
+                    repository.delete(tx, entity.get());
+                    return Optional.of(repository.create(tx, newEntity.apply("Replacement")).getId());
+                default:
+                    return Optional.of(id);
+            }
+        });
+    }
+
+    private class Worker extends Thread {
+        private final long end;
+        private final Stats stats = new Stats();
+
+        private Worker(long end) {
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < end) {
+                final Operation operation = nextOperation();
+                final int key = keys.next();
+                final long id = ids.get(key);
+                final long start = System.nanoTime();
+                try {
+                    final Optional<Long> idAfter = execute(operation, id, stats);
+                    if (!idAfter.isPresent()) {
+                        stats.misses++;
+                    } else if (idAfter.get() != id) {
+                        // The replacement is published once committed
+                        ids.compareAndSet(key, id, idAfter.get());
+                    }
+                    stats.latencies.get(operation).record(System.nanoTime() - start);
+                } catch (RuntimeException e) {
+                    stats.abortLatencies.record(System.nanoTime() - start);
+                    stats.aborts++;
+                }
+                stats.operations++;
+            }
+        }
+    }
+
+    static class Stats {
+        private final Map<Operation, LatencyRecorder> latencies = new EnumMap<>(Operation.class);
+        private final LatencyRecorder abortLatencies = new LatencyRecorder();
+        private long operations;
+        private long attempts;
+        private long aborts;
+        private long misses;
+        private long lockWaitNanos;
+        private long elapsedNanos;
+        private int workers;
+
+        private Stats() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyRecorder());
+            }
+        }
+
+        private void merge(Stats other) {
+            other.latencies.forEach((operation, recorder) -> latencies.get(operation).merge(recorder));
+            abortLatencies.merge(other.abortLatencies);
+            operations += other.operations;
+            attempts += other.attempts;
+            aborts += other.aborts;
+            misses += other.misses;
+            lockWaitNanos += other.lockWaitNanos;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder report = new StringBuilder();
+            final double seconds = elapsedNanos / 1e9;
+            report.append(String.format("throughput: %.1f ops/s (%d operations in %.1f s)%n", (operations - aborts) / seconds, operations, seconds));
+            report.append(String.format("aborts: %.2f%% (%d), retries: %.3f per operation (%d), misses: %d%n",
+                    100.0 * aborts / Math.max(1, operations), aborts, (double) (attempts - operations) / Math.max(1, operations), attempts - operations, misses));
+            report.append(String.format("time in locking reads: %.3f ms per attempt, %.1f%% of the workers' time%n",
+                    (double) lockWaitNanos / Math.max(1, attempts) / NANOS_PER_MILLI, 100.0 * lockWaitNanos / Math.max(1, elapsedNanos * workers)));
+            report.append(String.format("%-8s %10s %10s %10s %10s %10s %10s%n", "latency", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+            latencies.forEach((operation, recorder) -> appendLatencies(report, operation.name(), recorder));
+            appendLatencies(report, "ABORTED", abortLatencies);
+            return report.toString();
+        }
+
+        private static void appendLatencies(StringBuilder report, String name, LatencyRecorder recorder) {
+            report.append(String.format("%-8s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    name, recorder.count(),
+                    millis(recorder.percentile(50)), millis(recorder.percentile(90)), millis(recorder.percentile(99)),
+                    millis(recorder.percentile(99.9)), millis(recorder.percentile(100))));
+        }
+
+        private static double millis(long nanos) {
+            return (double) nanos / NANOS_PER_MILLI;
+        }
+    }
+}
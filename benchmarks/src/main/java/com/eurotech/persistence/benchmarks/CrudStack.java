@@ -0,0 +1,106 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.demos.transactions.NonVersionedEntity;
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import org.eclipse.kapua.commons.jpa.AbstractEntityManagerFactory;
+import org.eclipse.kapua.commons.jpa.DemoEntityDAO;
+import org.eclipse.kapua.commons.jpa.EntityManagerSession;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.LockModeType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The same create, find, update and delete operations, each one in its own transaction, through one of the persistence stacks
+ */
+public interface CrudStack {
+    NonVersionedEntity create(String content);
+
+    Optional<NonVersionedEntity> find(Long id);
+
+    NonVersionedEntity update(Long id, String content);
+
+    NonVersionedEntity delete(Long id);
+
+    enum Kind {
+        /**
+         * {@link EntityManagerSession} and {@link DemoEntityDAO}, as configured by {@link AbstractEntityManagerFactory} (no shared cache)
+         */
+        LEGACY {
+            @Override
+            CrudStack create(Map<String, Object> properties) {
+                final EntityManagerSession session = new EntityManagerSession(new AbstractEntityManagerFactory(BenchmarkDatabase.PERSISTENCE_UNIT, properties) {
+                });
+                final DemoEntityDAO<NonVersionedEntity> dao = new DemoEntityDAO<>(NonVersionedEntity.class);
+                return new CrudStack() {
+                    @Override
+                    public NonVersionedEntity create(String content) {
+                        return session.doTransactedAction(em -> dao.create(em, NonVersionedEntity.newEntity(content)));
+                    }
+
+                    @Override
+                    public Optional<NonVersionedEntity> find(Long id) {
+                        return Optional.ofNullable(session.doAction(em -> dao.find(em, id)));
+                    }
+
+                    @Override
+                    public NonVersionedEntity update(Long id, String content) {
+                        return session.doTransactedAction(em -> {
+                            final NonVersionedEntity entity = dao.find(em, id);
+                            entity.setContent(content);
+                            return dao.update(em, entity);
+                        });
+                    }
+
+                    @Override
+                    public NonVersionedEntity delete(Long id) {
+                        return session.doTransactedAction(em -> dao.delete(em, id));
+                    }
+                };
+            }
+        },
+        /**
+         * {@link TxManager} and {@link DemoEntityRepository}, as configured by {@link com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory},
+         * with the shared cache disabled as in the legacy stack
+         */
+        TX_MANAGER {
+            @Override
+            CrudStack create(Map<String, Object> properties) {
+                final Map<String, Object> withoutSharedCache = new HashMap<>(properties);
+                withoutSharedCache.put(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "false");
+                final TxManager txManager = BenchmarkDatabase.createTxManager(1, withoutSharedCache);
+                final DemoEntityRepository<NonVersionedEntity> repository = new DemoEntityRepository<>(NonVersionedEntity.class);
+                return new CrudStack() {
+                    @Override
+                    public NonVersionedEntity create(String content) {
+                        return txManager.execute(tx -> repository.create(tx, NonVersionedEntity.newEntity(content)));
+                    }
+
+                    @Override
+                    public Optional<NonVersionedEntity> find(Long id) {
+                        return txManager.execute(tx -> repository.find(tx, id, LockModeType.NONE));
+                    }
+
+                    @Override
+                    public NonVersionedEntity update(Long id, String content) {
+                        return txManager.execute(tx -> {
+                            final NonVersionedEntity entity = repository.find(tx, id, LockModeType.NONE).get();
+                            entity.setContent(content);
+                            return repository.update(tx, entity, entity);
+                        });
+                    }
+
+                    @Override
+                    public NonVersionedEntity delete(Long id) {
+                        return txManager.execute(tx -> repository.delete(tx, repository.find(tx, id, LockModeType.NONE).get()));
+                    }
+                };
+            }
+        };
+
+        abstract CrudStack create(Map<String, Object> properties);
+    }
+}
@@ -0,0 +1,294 @@
+package com.eurotech.persistence.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON to read JMH result files and read/write benchmark baselines without pulling in a JSON library.
+ * Objects are parsed to {@link LinkedHashMap}s, arrays to {@link List}s, numbers to {@link Double}s; the "NaN" strings JMH writes for
+ * missing statistics are left as strings, see {@link #number(Object)}.
+ */
+final class Json {
+    private final String text;
+    private int position;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    static Object parse(String text) {
+        final Json json = new Json(text);
+        final Object res = json.value();
+        json.skipWhitespace();
+        if (json.position != text.length()) {
+            throw json.error("Unexpected trailing content");
+        }
+        return res;
+    }
+
+    /**
+     * @return The number held by a parsed value, NaN for anything that is not a number (JMH writes missing statistics as "NaN")
+     */
+    static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    static String write(Object value) {
+        final StringBuilder out = new StringBuilder();
+        write(value, out, 0);
+        return out.append('\n').toString();
+    }
+
+    private static void write(Object value, StringBuilder out, int indent) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value, out);
+        } else if (value instanceof Double || value instanceof Float) {
+            final double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                writeString(Double.toString(number), out);
+            } else {
+                out.append(number);
+            }
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map) {
+            final Iterator<? extends Map.Entry<?, ?>> entries = ((Map<?, ?>) value).entrySet().iterator();
+            out.append('{');
+            while (entries.hasNext()) {
+                final Map.Entry<?, ?> entry = entries.next();
+                newLine(out, indent + 1);
+                writeString(String.valueOf(entry.getKey()), out);
+                out.append(": ");
+                write(entry.getValue(), out, indent + 1);
+                if (entries.hasNext()) {
+                    out.append(',');
+                }
+            }
+            newLine(out, indent);
+            out.append('}');
+        } else if (value instanceof Iterable) {
+            final Iterator<?> elements = ((Iterable<?>) value).iterator();
+            out.append('[');
+            while (elements.hasNext()) {
+                newLine(out, indent + 1);
+                write(elements.next(), out, indent + 1);
+                if (elements.hasNext()) {
+                    out.append(',');
+                }
+            }
+            newLine(out, indent);
+            out.append(']');
+        } else {
+            throw new IllegalArgumentException("Cannot write " + value.getClass().getName() + " as JSON");
+        }
+    }
+
+    private static void newLine(StringBuilder out, int indent) {
+        out.append('\n');
+        for (int i = 0; i < indent; i++) {
+            out.append("  ");
+        }
+    }
+
+    private static void writeString(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private Object value() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        final char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return number();
+                }
+                throw error("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> object() {
+        final Map<String, Object> res = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return res;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            final String name = string();
+            skipWhitespace();
+            expect(':');
+            res.put(name, value());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return res;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        final List<Object> res = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return res;
+        }
+        while (true) {
+            res.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return res;
+            }
+        }
+    }
+
+    private String string() {
+        final StringBuilder res = new StringBuilder();
+        position++;
+        while (true) {
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            final char c = text.charAt(position++);
+            if (c == '"') {
+                return res.toString();
+            }
+            if (c != '\\') {
+                res.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                throw error("Unterminated string");
+            }
+            final char escaped = text.charAt(position++);
+            switch (escaped) {
+                case 'b':
+                    res.append('\b');
+                    break;
+                case 'f':
+                    res.append('\f');
+                    break;
+                case 'n':
+                    res.append('\n');
+                    break;
+                case 'r':
+                    res.append('\r');
+                    break;
+                case 't':
+                    res.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("Truncated unicode escape");
+                    }
+                    res.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    position += 4;
+                    break;
+                default:
+                    res.append(escaped);
+            }
+        }
+    }
+
+    private Double number() {
+        final int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(text.substring(start, position));
+        } catch (NumberFormatException e) {
+            throw error("Malformed number " + text.substring(start, position));
+        }
+    }
+
+    private Object literal(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("Unexpected literal");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        return text.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + position);
+    }
+}
@@ -0,0 +1,47 @@
+package com.eurotech.persistence.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Records latencies in nanoseconds, exactly: meant for a single thread, recorders of different threads are merged at the end
+ */
+class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int size;
+    private boolean sorted;
+
+    void record(long nanos) {
+        if (size == latencies.length) {
+            latencies = Arrays.copyOf(latencies, size * 2);
+        }
+        latencies[size++] = nanos;
+        sorted = false;
+    }
+
+    void merge(LatencyRecorder other) {
+        latencies = Arrays.copyOf(latencies, Math.max(latencies.length, size + other.size));
+        System.arraycopy(other.latencies, 0, latencies, size, other.size);
+        size += other.size;
+        sorted = false;
+    }
+
+    int count() {
+        return size;
+    }
+
+    /**
+     * @param percentile In [0, 100]
+     * @return The latency in nanoseconds, 0 if nothing has been recorded
+     */
+    long percentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(latencies, 0, size);
+            sorted = true;
+        }
+        final int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return latencies[Math.max(0, Math.min(index, size - 1))];
+    }
+}
@@ -0,0 +1,93 @@
+package com.eurotech.persistence.benchmarks;
+
+import javax.persistence.LockModeType;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Options of the {@link ContentionLoadGenerator}, parsed from arguments in the form --name=value
+ */
+class LoadOptions {
+    int workers = 8;
+    int keys = 1000;
+    double zipfExponent = 0.99;
+    int readWeight = 80;
+    int updateWeight = 15;
+    int deleteWeight = 5;
+    LockModeType lockMode = LockModeType.NONE;
+    boolean versioned = true;
+    Duration warmup = Duration.ofSeconds(5);
+    Duration duration = Duration.ofSeconds(30);
+    int maxAttempts = 5;
+    Optional<String> jdbcUrl = Optional.empty();
+
+    static LoadOptions parse(String[] args) {
+        final LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg + "\n" + usage());
+            }
+            final String value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "workers":
+                    options.workers = Integer.parseInt(value);
+                    break;
+                case "keys":
+                    options.keys = Integer.parseInt(value);
+                    break;
+                case "zipf":
+                    options.zipfExponent = Double.parseDouble(value);
+                    break;
+                case "mix":
+                    final String[] weights = value.split(":");
+                    if (weights.length != 3) {
+                        throw new IllegalArgumentException("Expected --mix=read:update:delete, got " + arg);
+                    }
+                    options.readWeight = Integer.parseInt(weights[0]);
+                    options.updateWeight = Integer.parseInt(weights[1]);
+                    options.deleteWeight = Integer.parseInt(weights[2]);
+                    break;
+                case "lock-mode":
+                    options.lockMode = LockModeType.valueOf(value);
+                    break;
+                case "versioned":
+                    options.versioned = Boolean.parseBoolean(value);
+                    break;
+                case "warmup":
+                    options.warmup = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "duration":
+                    options.duration = Duration.ofSeconds(Long.parseLong(value));
+                    break;
+                case "max-attempts":
+                    options.maxAttempts = Integer.parseInt(value);
+                    break;
+                case "jdbc-url":
+                    options.jdbcUrl = Optional.of(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg + "\n" + usage());
+            }
+        }
+        final boolean optimistic = options.lockMode == LockModeType.OPTIMISTIC
+                || options.lockMode == LockModeType.OPTIMISTIC_FORCE_INCREMENT
+                || options.lockMode == LockModeType.READ
+                || options.lockMode == LockModeType.WRITE;
+        if (optimistic && !options.versioned) {
+            throw new IllegalArgumentException("Lock mode " + options.lockMode + " requires versioned entities");
+        }
+        return options;
+    }
+
+    static String usage() {
+        return "Options: --workers=8 --keys=1000 --zipf=0.99 --mix=80:15:5 (read:update:delete) --lock-mode=NONE --versioned=true"
+                + " --warmup=5 --duration=30 (seconds) --max-attempts=5 --jdbc-url=... (in-memory Derby by default)";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("workers=%d keys=%d zipf=%.2f mix=%d:%d:%d lock-mode=%s versioned=%s duration=%ds max-attempts=%d",
+                workers, keys, zipfExponent, readWeight, updateWeight, deleteWeight, lockMode, versioned, duration.getSeconds(), maxAttempts);
+    }
+}
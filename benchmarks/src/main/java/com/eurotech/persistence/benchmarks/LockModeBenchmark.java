@@ -0,0 +1,60 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.demos.transactions.VersionedEntity;
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads, and read-then-update transactions, of a {@link VersionedEntity} (optimistic lock modes need a version) with each {@link LockModeType}, uncontended
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LockModeBenchmark {
+    @Param
+    public LockModeType lockMode;
+
+    private TxManager txManager;
+    private final DemoEntityRepository<VersionedEntity> repository = new DemoEntityRepository<>(VersionedEntity.class);
+    private Long existingId;
+    private long updates;
+
+    @Setup
+    public void setUp() {
+        txManager = BenchmarkDatabase.createTxManager();
+        existingId = txManager.execute(tx -> repository.create(tx, VersionedEntity.newEntity("Created"))).getId();
+    }
+
+    @Benchmark
+    public Optional<VersionedEntity> find() {
+        return txManager.execute(tx -> repository.find(tx, existingId, lockMode));
+    }
+
+    @Benchmark
+    public VersionedEntity update() {
+        final String content = "Updated " + updates++;
+        return txManager.execute(tx -> {
+            final VersionedEntity entity = repository.find(tx, existingId, lockMode).get();
+            entity.setContent(content);
+            return repository.update(tx, entity, entity);
+        });
+    }
+}
@@ -0,0 +1,217 @@
+package com.eurotech.persistence.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares JMH results against a stored {@link BenchmarkBaseline}, failing (exit status 1) when a benchmark regressed:
+ * <ul>
+ * <li>its score got worse by more than the tolerance and its confidence interval does not overlap the baseline's one
+ * (when either run has a single iteration there is no interval, and the tolerance alone decides)</li>
+ * <li>or, for sample time benchmarks, its p99 latency grew by more than the p99 tolerance</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ *     RegressionGate record jmh-result.json baselines/benchmarks.json
+ *     RegressionGate check jmh-result.json baselines/benchmarks.json [--tolerance=10] [--p99-tolerance=20] [--fail-on-missing=false]
+ * </pre>
+ * Tolerances are percentages. Scores only compare on the same hardware and JDK, so the baseline is recorded on the machine that
+ * runs the check; checking without a baseline exits with status 2.
+ */
+public final class RegressionGate {
+    public enum Verdict {UNCHANGED, IMPROVED, REGRESSED, NEW, MISSING}
+
+    private final double tolerance;
+    private final double p99Tolerance;
+
+    /**
+     * @param tolerance    Relative score change (0.1 for 10%) beyond which a change that is also statistically significant is reported
+     * @param p99Tolerance Relative p99 latency growth beyond which a sample time benchmark is reported as regressed
+     */
+    public RegressionGate(double tolerance, double p99Tolerance) {
+        this.tolerance = tolerance;
+        this.p99Tolerance = p99Tolerance;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !(args[0].equals("record") || args[0].equals("check"))) {
+            System.out.println(usage());
+            System.exit(args.length == 1 && (args[0].equals("help") || args[0].equals("--help")) ? 0 : 2);
+        }
+        final BenchmarkBaseline current = BenchmarkBaseline.fromJmhResult(Paths.get(args[1]));
+        final Path baselineFile = Paths.get(args[2]);
+        if (args[0].equals("record")) {
+            current.write(baselineFile);
+            System.out.printf("Recorded %d benchmarks to %s%n", current.getEntries().size(), baselineFile);
+            return;
+        }
+        if (!Files.isRegularFile(baselineFile)) {
+            System.out.printf("No baseline at %s, record one first:%n  RegressionGate record %s %s%n", baselineFile, args[1], baselineFile);
+            System.exit(2);
+        }
+        double tolerance = 10;
+        double p99Tolerance = 20;
+        boolean failOnMissing = false;
+        for (int i = 3; i < args.length; i++) {
+            final int separator = args[i].indexOf('=');
+            if (!args[i].startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + args[i] + "\n" + usage());
+            }
+            final String value = args[i].substring(separator + 1);
+            switch (args[i].substring(2, separator)) {
+                case "tolerance":
+                    tolerance = Double.parseDouble(value);
+                    break;
+                case "p99-tolerance":
+                    p99Tolerance = Double.parseDouble(value);
+                    break;
+                case "fail-on-missing":
+                    failOnMissing = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i] + "\n" + usage());
+            }
+        }
+        final List<Comparison> comparisons = new RegressionGate(tolerance / 100, p99Tolerance / 100)
+                .compare(BenchmarkBaseline.read(baselineFile), current);
+        System.out.print(report(comparisons));
+        boolean failed = false;
+        for (Comparison comparison : comparisons) {
+            failed |= comparison.verdict == Verdict.REGRESSED || (failOnMissing && comparison.verdict == Verdict.MISSING);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    static String usage() {
+        return "Usage: RegressionGate record <jmh-result.json> <baseline.json>\n"
+                + "       RegressionGate check <jmh-result.json> <baseline.json> [--tolerance=10] [--p99-tolerance=20] [--fail-on-missing=false]\n"
+                + "Tolerances are percentages";
+    }
+
+    /**
+     * @return One comparison per benchmark of either run: first those of the current run, in its order, then those missing from it
+     */
+    public List<Comparison> compare(BenchmarkBaseline baseline, BenchmarkBaseline current) {
+        final List<Comparison> res = new ArrayList<>();
+        for (BenchmarkBaseline.Entry entry : current.getEntries().values()) {
+            final BenchmarkBaseline.Entry previous = baseline.getEntries().get(entry.getKey());
+            if (previous == null || !previous.getUnit().equals(entry.getUnit())) {
+                res.add(new Comparison(entry.getKey(), null, entry, Verdict.NEW));
+            } else {
+                res.add(new Comparison(entry.getKey(), previous, entry, verdict(previous, entry)));
+            }
+        }
+        for (Map.Entry<String, BenchmarkBaseline.Entry> entry : baseline.getEntries().entrySet()) {
+            if (!current.getEntries().containsKey(entry.getKey())) {
+                res.add(new Comparison(entry.getKey(), entry.getValue(), null, Verdict.MISSING));
+            }
+        }
+        return res;
+    }
+
+    private Verdict verdict(BenchmarkBaseline.Entry baseline, BenchmarkBaseline.Entry current) {
+        if (!Double.isNaN(baseline.getP99()) && !Double.isNaN(current.getP99())
+                && relativeChange(baseline.getP99(), current.getP99()) > p99Tolerance) {
+            return Verdict.REGRESSED;
+        }
+        final double change = relativeChange(baseline.getScore(), current.getScore());
+        final double worsening = baseline.isHigherBetter() ? -change : change;
+        if (Math.abs(worsening) <= tolerance || overlap(baseline, current)) {
+            return Verdict.UNCHANGED;
+        }
+        return worsening > 0 ? Verdict.REGRESSED : Verdict.IMPROVED;
+    }
+
+    private static boolean overlap(BenchmarkBaseline.Entry baseline, BenchmarkBaseline.Entry current) {
+        if (Double.isNaN(baseline.getScoreLower()) || Double.isNaN(baseline.getScoreUpper())
+                || Double.isNaN(current.getScoreLower()) || Double.isNaN(current.getScoreUpper())) {
+            return false;
+        }
+        return current.getScoreLower() <= baseline.getScoreUpper() && baseline.getScoreLower() <= current.getScoreUpper();
+    }
+
+    private static double relativeChange(double baseline, double current) {
+        return (current - baseline) / baseline;
+    }
+
+    static String report(List<Comparison> comparisons) {
+        final StringBuilder res = new StringBuilder();
+        final int keyWidth = comparisons.stream().mapToInt(comparison -> comparison.key.length()).max().orElse(9);
+        final String format = "%-" + keyWidth + "s  %-22s  %-22s  %8s  %-25s  %s%n";
+        res.append(String.format(format, "Benchmark", "Baseline", "Current", "Change", "p99 baseline -> current", "Verdict"));
+        final int[] verdicts = new int[Verdict.values().length];
+        for (Comparison comparison : comparisons) {
+            verdicts[comparison.verdict.ordinal()]++;
+            final boolean compared = comparison.baseline != null && comparison.current != null;
+            res.append(String.format(format,
+                    comparison.key,
+                    score(comparison.baseline),
+                    score(comparison.current),
+                    compared ? String.format("%+.1f%%", 100 * relativeChange(comparison.baseline.getScore(), comparison.current.getScore())) : "",
+                    compared && !Double.isNaN(comparison.baseline.getP99()) && !Double.isNaN(comparison.current.getP99())
+                            ? String.format("%.3f -> %.3f (%+.1f%%)", comparison.baseline.getP99(), comparison.current.getP99(),
+                            100 * relativeChange(comparison.baseline.getP99(), comparison.current.getP99()))
+                            : "",
+                    comparison.verdict));
+        }
+        res.append('\n');
+        for (Verdict verdict : Verdict.values()) {
+            res.append(String.format("%s: %d  ", verdict, verdicts[verdict.ordinal()]));
+        }
+        return res.append('\n').toString();
+    }
+
+    private static String score(BenchmarkBaseline.Entry entry) {
+        if (entry == null) {
+            return "";
+        }
+        if (Double.isNaN(entry.getScoreLower()) || Double.isNaN(entry.getScoreUpper())) {
+            return String.format("%.3f %s", entry.getScore(), entry.getUnit());
+        }
+        return String.format("%.3f ± %.3f %s", entry.getScore(), (entry.getScoreUpper() - entry.getScoreLower()) / 2, entry.getUnit());
+    }
+
+    /**
+     * A benchmark of the current run and/or of the baseline, with the verdict of their comparison
+     */
+    public static final class Comparison {
+        private final String key;
+        private final BenchmarkBaseline.Entry baseline;
+        private final BenchmarkBaseline.Entry current;
+        private final Verdict verdict;
+
+        Comparison(String key, BenchmarkBaseline.Entry baseline, BenchmarkBaseline.Entry current, Verdict verdict) {
+            this.key = key;
+            this.baseline = baseline;
+            this.current = current;
+            this.verdict = verdict;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The baseline result, null when the benchmark is {@link Verdict#NEW}
+         */
+        public BenchmarkBaseline.Entry getBaseline() {
+            return baseline;
+        }
+
+        /**
+         * @return The current result, null when the benchmark is {@link Verdict#MISSING}
+         */
+        public BenchmarkBaseline.Entry getCurrent() {
+            return current;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+    }
+}
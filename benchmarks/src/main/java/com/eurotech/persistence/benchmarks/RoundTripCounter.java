@@ -0,0 +1,60 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.persistence.transactions.jpa.SqlStatementProfiler;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+import java.util.Map;
+
+/**
+ * Counts the database round trips (SQL calls, transaction begins, commits and rollbacks) of the current thread.
+ * Statements are counted by an EclipseLink profiler and transaction boundaries by a session event listener, both registered through
+ * {@link #register(Map)}: EclipseLink instantiates them, so the counts are static.
+ */
+public class RoundTripCounter extends SessionProfilerAdapter {
+    private static final ThreadLocal<long[]> ROUND_TRIPS = ThreadLocal.withInitial(() -> new long[1]);
+
+    static Map<String, Object> register(Map<String, Object> properties) {
+        properties.put(PersistenceUnitProperties.PROFILER, RoundTripCounter.class.getName());
+        properties.put(PersistenceUnitProperties.SESSION_EVENT_LISTENER_CLASS, TransactionListener.class.getName());
+        return properties;
+    }
+
+    /**
+     * @return The round trips of the current thread since the previous invocation
+     */
+    static long take() {
+        final long[] roundTrips = ROUND_TRIPS.get();
+        final long res = roundTrips[0];
+        roundTrips[0] = 0;
+        return res;
+    }
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (SessionProfiler.StatementExecute.equals(operationName) && !SqlStatementProfiler.isClosingStatement()) {
+            ROUND_TRIPS.get()[0]++;
+        }
+    }
+
+    public static class TransactionListener extends SessionEventAdapter {
+        @Override
+        public void postBeginTransaction(SessionEvent event) {
+            ROUND_TRIPS.get()[0]++;
+        }
+
+        @Override
+        public void postCommitTransaction(SessionEvent event) {
+            ROUND_TRIPS.get()[0]++;
+        }
+
+        @Override
+        public void postRollbackTransaction(SessionEvent event) {
+            ROUND_TRIPS.get()[0]++;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.eurotech.persistence.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Compares the legacy and the {@link com.eurotech.persistence.transactions.TxManager} stacks: first counts the database round trips
+ * of each operation, then runs {@link StackComparisonBenchmark} (throughput, latency percentiles, allocation rate through the GC profiler)
+ * for each thread count given as argument (default 1, 4, 16), writing JSON results to stack-comparison-t&lt;threads&gt;.json
+ */
+public final class StackComparison {
+    private static final int ROUND_TRIP_SAMPLES = 100;
+
+    private StackComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        printRoundTrips();
+        final int[] threadCounts = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : new int[]{1, 4, 16};
+        for (int threads : threadCounts) {
+            new Runner(new OptionsBuilder()
+                    .include(StackComparisonBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(String.format("stack-comparison-t%d.json", threads))
+                    .build())
+                    .run();
+        }
+    }
+
+    private static void printRoundTrips() {
+        System.out.printf("%-12s %10s %10s %10s %10s%n", "round trips", "create", "find", "update", "delete");
+        for (CrudStack.Kind kind : CrudStack.Kind.values()) {
+            final CrudStack stack = kind.create(RoundTripCounter.register(BenchmarkDatabase.inMemoryProperties()));
+            final Long id = stack.create("Created").getId();
+            System.out.printf("%-12s %10.1f %10.1f %10.1f %10.1f%n", kind,
+                    roundTrips(() -> stack.create("Created")),
+                    roundTrips(() -> stack.find(id)),
+                    roundTrips(() -> stack.update(id, "Updated " + System.nanoTime())),
+                    roundTrips(() -> stack.delete(stack.create("Created").getId())) - roundTrips(() -> stack.create("Created")));
+        }
+    }
+
+    private static double roundTrips(Supplier<?> operation) {
+        RoundTripCounter.take();
+        for (int i = 0; i < ROUND_TRIP_SAMPLES; i++) {
+            operation.get();
+        }
+        return (double) RoundTripCounter.take() / ROUND_TRIP_SAMPLES;
+    }
+}
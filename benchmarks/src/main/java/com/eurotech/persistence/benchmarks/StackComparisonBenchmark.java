@@ -0,0 +1,85 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.demos.transactions.NonVersionedEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create, find, update and delete through the legacy and the {@link com.eurotech.persistence.transactions.TxManager} stacks.
+ * Each thread works on its own entities, so that the comparison measures the stacks rather than contention.
+ * Run through {@link StackComparison}, for several thread counts and with round trips and allocations reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class StackComparisonBenchmark {
+    @Param
+    public CrudStack.Kind stack;
+
+    private CrudStack crudStack;
+
+    @Setup
+    public void setUp() {
+        crudStack = stack.create(RoundTripCounter.register(BenchmarkDatabase.inMemoryProperties()));
+    }
+
+    @Benchmark
+    public NonVersionedEntity create() {
+        return crudStack.create("Created");
+    }
+
+    @Benchmark
+    public Optional<NonVersionedEntity> find(ThreadEntity threadEntity) {
+        return crudStack.find(threadEntity.id);
+    }
+
+    @Benchmark
+    public NonVersionedEntity update(ThreadEntity threadEntity) {
+        return crudStack.update(threadEntity.id, "Updated " + threadEntity.updates++);
+    }
+
+    @Benchmark
+    public NonVersionedEntity delete(ToDelete toDelete) {
+        return crudStack.delete(toDelete.id);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadEntity {
+        private Long id;
+        private long updates;
+
+        @Setup
+        public void create(StackComparisonBenchmark benchmark) {
+            id = benchmark.create().getId();
+        }
+    }
+
+    /**
+     * A fresh entity for each invocation of {@link #delete(ToDelete)}, created outside the measurement
+     */
+    @State(Scope.Thread)
+    public static class ToDelete {
+        private Long id;
+
+        @Setup(Level.Invocation)
+        public void create(StackComparisonBenchmark benchmark) {
+            id = benchmark.create().getId();
+        }
+    }
+}
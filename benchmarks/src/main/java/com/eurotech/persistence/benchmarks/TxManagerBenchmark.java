@@ -0,0 +1,78 @@
+package com.eurotech.persistence.benchmarks;
+
+import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.TxManagerImpl;
+import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link TxManagerImpl#execute(TxManager.TxConsumer, java.util.function.BiConsumer[])}: alone, with a JPA context
+ * whose {@link javax.persistence.EntityManager} is never requested, and with an empty database transaction
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TxManagerBenchmark {
+    private TxManager noOpTxManager;
+    private TxManager jpaTxManager;
+
+    @Setup
+    public void setUp() {
+        noOpTxManager = new TxManagerImpl(NoOpTxContext::new, 1);
+        jpaTxManager = BenchmarkDatabase.createTxManager();
+    }
+
+    @Benchmark
+    public Object executeNoOpContext() {
+        return noOpTxManager.execute(tx -> tx);
+    }
+
+    @Benchmark
+    public Object executeWithoutEntityManager() {
+        return jpaTxManager.execute(tx -> tx);
+    }
+
+    @Benchmark
+    public Object executeEmptyTransaction() {
+        return jpaTxManager.execute(JpaAwareTxContext::extractEntityManager);
+    }
+
+    private static class NoOpTxContext implements TxContext {
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void rollback() {
+        }
+
+        @Override
+        public RuntimeException convertPersistenceException(Exception e) {
+            return new RuntimeException(e);
+        }
+
+        @Override
+        public boolean isRecoverableException(Exception ex) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.eurotech.persistence.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws ranks in [0, n) with probability proportional to 1 / (rank + 1)^exponent: rank 0 is the hottest. An exponent of 0
+ * gives a uniform distribution, around 1 the usual "few hot keys" skew.
+ */
+class ZipfianGenerator {
+    private final double[] cumulativeProbabilities;
+
+    ZipfianGenerator(int n, double exponent) {
+        cumulativeProbabilities = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulativeProbabilities[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulativeProbabilities[rank] /= sum;
+        }
+    }
+
+    int next() {
+        final int index = Arrays.binarySearch(cumulativeProbabilities, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulativeProbabilities.length - 1);
+    }
+}
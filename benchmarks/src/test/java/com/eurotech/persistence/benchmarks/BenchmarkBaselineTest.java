@@ -0,0 +1,88 @@
+package com.eurotech.persistence.benchmarks;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class BenchmarkBaselineTest {
+
+    // Trimmed down JMH output: a sample time result with percentiles, and a single iteration one without confidence interval
+    private static final String JMH_RESULT = "[\n"
+            + "  {\"jmhVersion\":\"1.36\",\"benchmark\":\"com.eurotech.persistence.benchmarks.TxManagerBenchmark.readOnly\",\"mode\":\"sample\","
+            + "   \"threads\":4,\"forks\":1,\"params\":{\"stack\":\"TX_MANAGER\",\"entities\":\"100\"},"
+            + "   \"primaryMetric\":{\"score\":0.25,\"scoreError\":0.01,\"scoreConfidence\":[0.24,0.26],"
+            + "     \"scorePercentiles\":{\"0.0\":0.1,\"50.0\":0.2,\"99.0\":1.5,\"100.0\":3.0},\"scoreUnit\":\"ms/op\"}},\n"
+            + "  {\"jmhVersion\":\"1.36\",\"benchmark\":\"com.eurotech.persistence.benchmarks.TxManagerBenchmark.emptyTransaction\","
+            + "   \"mode\":\"thrpt\",\"threads\":1,\"forks\":1,"
+            + "   \"primaryMetric\":{\"score\":120.0,\"scoreError\":\"NaN\",\"scoreConfidence\":[\"NaN\",\"NaN\"],"
+            + "     \"scorePercentiles\":{\"0.0\":120.0,\"99.0\":120.0,\"100.0\":120.0},\"scoreUnit\":\"ops/ms\"}}\n"
+            + "]\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void readsJmhResult() throws IOException {
+        final BenchmarkBaseline baseline = BenchmarkBaseline.fromJmhResult(write("jmh-result.json", JMH_RESULT));
+        final List<BenchmarkBaseline.Entry> entries = List.copyOf(baseline.getEntries().values());
+        Assertions.assertEquals(2, entries.size());
+
+        final BenchmarkBaseline.Entry sample = entries.get(0);
+        Assertions.assertEquals("TxManagerBenchmark.readOnly sample t4 {entities=100, stack=TX_MANAGER}", sample.getKey());
+        Assertions.assertFalse(sample.isHigherBetter());
+        Assertions.assertEquals(0.25, sample.getScore());
+        Assertions.assertEquals(0.24, sample.getScoreLower());
+        Assertions.assertEquals(0.26, sample.getScoreUpper());
+        Assertions.assertEquals(1.5, sample.getP99());
+        Assertions.assertEquals("ms/op", sample.getUnit());
+
+        final BenchmarkBaseline.Entry throughput = entries.get(1);
+        Assertions.assertEquals("TxManagerBenchmark.emptyTransaction thrpt t1", throughput.getKey());
+        Assertions.assertTrue(throughput.isHigherBetter());
+        Assertions.assertTrue(Double.isNaN(throughput.getScoreLower()));
+        Assertions.assertTrue(Double.isNaN(throughput.getScoreUpper()));
+        // Only sample time benchmarks have a meaningful p99
+        Assertions.assertTrue(Double.isNaN(throughput.getP99()));
+    }
+
+    @Test
+    public void writtenBaselineReadsBack() throws IOException {
+        final BenchmarkBaseline recorded = BenchmarkBaseline.fromJmhResult(write("jmh-result.json", JMH_RESULT));
+        final Path file = directory.resolve("baselines").resolve("benchmarks.json");
+        recorded.write(file);
+
+        final BenchmarkBaseline read = BenchmarkBaseline.read(file);
+        Assertions.assertEquals(recorded.getRecorded(), read.getRecorded());
+        Assertions.assertEquals(List.copyOf(recorded.getEntries().keySet()), List.copyOf(read.getEntries().keySet()));
+        for (Map.Entry<String, BenchmarkBaseline.Entry> entry : recorded.getEntries().entrySet()) {
+            final BenchmarkBaseline.Entry expected = entry.getValue();
+            final BenchmarkBaseline.Entry actual = read.getEntries().get(entry.getKey());
+            Assertions.assertEquals(expected.getScore(), actual.getScore());
+            Assertions.assertEquals(expected.getScoreLower(), actual.getScoreLower());
+            Assertions.assertEquals(expected.getScoreUpper(), actual.getScoreUpper());
+            Assertions.assertEquals(expected.getP99(), actual.getP99());
+            Assertions.assertEquals(expected.getUnit(), actual.getUnit());
+        }
+        // A baseline compared to the run it was recorded from has no changes
+        for (RegressionGate.Comparison comparison : new RegressionGate(0.1, 0.2).compare(read, recorded)) {
+            Assertions.assertEquals(RegressionGate.Verdict.UNCHANGED, comparison.getVerdict(), comparison.getKey());
+        }
+    }
+
+    @Test
+    public void rejectsUnknownFormatVersion() throws IOException {
+        final Path file = write("benchmarks.json", "{\"version\":2,\"recorded\":\"2022-01-01T00:00:00Z\",\"benchmarks\":[]}");
+        Assertions.assertThrows(IOException.class, () -> BenchmarkBaseline.read(file));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+package com.eurotech.persistence.benchmarks;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonTest {
+
+    @Test
+    public void parsesNestedValues() {
+        final Object parsed = Json.parse(" {\"benchmark\" : \"a.B.c\", \"threads\":4, \"params\":{}, \"confidence\":[1.5, -2e3, 0],"
+                + " \"ok\":true, \"failed\":false, \"missing\":null, \"empty\":[ ]}\n");
+        final Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("benchmark", "a.B.c");
+        expected.put("threads", 4.0);
+        expected.put("params", Collections.emptyMap());
+        expected.put("confidence", Arrays.asList(1.5, -2000.0, 0.0));
+        expected.put("ok", true);
+        expected.put("failed", false);
+        expected.put("missing", null);
+        expected.put("empty", Collections.emptyList());
+        Assertions.assertEquals(expected, parsed);
+        Assertions.assertEquals(List.copyOf(expected.keySet()), List.copyOf(((Map<?, ?>) parsed).keySet()));
+    }
+
+    @Test
+    public void parsesEscapes() {
+        Assertions.assertEquals("quote\" backslash\\ slash/ \b\f\n\r\t \u00e9\u20ac",
+                Json.parse("\"quote\\\" backslash\\\\ slash\\/ \\b\\f\\n\\r\\t \\u00e9\\u20AC\""));
+    }
+
+    @Test
+    public void readsJmhNaNAsNumber() {
+        final Map<?, ?> parsed = (Map<?, ?>) Json.parse("{\"score\":12.5,\"scoreError\":\"NaN\",\"scoreConfidence\":[\"NaN\",\"NaN\"]}");
+        Assertions.assertEquals(12.5, Json.number(parsed.get("score")));
+        Assertions.assertTrue(Double.isNaN(Json.number(parsed.get("scoreError"))));
+        Assertions.assertTrue(Double.isNaN(Json.number(((List<?>) parsed.get("scoreConfidence")).get(0))));
+        Assertions.assertTrue(Double.isNaN(Json.number(null)));
+    }
+
+    @Test
+    public void writtenValuesParseBack() {
+        final Map<String, Object> value = new LinkedHashMap<>();
+        value.put("version", 1);
+        value.put("name", "tab\t \"quoted\" \u0001");
+        value.put("score", 0.125);
+        value.put("p99", Double.NaN);
+        value.put("params", Collections.singletonMap("stack", "TX_MANAGER"));
+        value.put("values", Arrays.asList(1.0, null, true));
+        value.put("empty", Collections.emptyList());
+
+        final Map<?, ?> parsed = (Map<?, ?>) Json.parse(Json.write(value));
+        Assertions.assertEquals(1.0, parsed.get("version"));
+        Assertions.assertEquals(value.get("name"), parsed.get("name"));
+        Assertions.assertEquals(0.125, parsed.get("score"));
+        Assertions.assertEquals("NaN", parsed.get("p99"));
+        Assertions.assertTrue(Double.isNaN(Json.number(parsed.get("p99"))));
+        Assertions.assertEquals(value.get("params"), parsed.get("params"));
+        Assertions.assertEquals(value.get("values"), parsed.get("values"));
+        Assertions.assertEquals(value.get("empty"), parsed.get("empty"));
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        for (String malformed : Arrays.asList("", "{", "[1,]", "{\"a\" 1}", "{1:2}", "\"unterminated", "\"\\u12\"", "tru", "nul",
+                "1.2.3", "-", "[1] 2", "{} x", "@")) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Json.parse(malformed), malformed);
+        }
+    }
+
+    @Test
+    public void rejectsUnwritableValues() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Json.write(new Object()));
+    }
+}
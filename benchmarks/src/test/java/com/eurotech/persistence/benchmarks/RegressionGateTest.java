@@ -0,0 +1,152 @@
+package com.eurotech.persistence.benchmarks;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class RegressionGateTest {
+
+    private static final String BENCHMARK = "com.eurotech.persistence.benchmarks.TxManagerBenchmark.emptyTransaction";
+    private final RegressionGate gate = new RegressionGate(0.10, 0.20);
+
+    @Test
+    public void throughputDropBeyondToleranceRegresses() {
+        Assertions.assertEquals(RegressionGate.Verdict.REGRESSED, verdict(
+                throughput(100, 98, 102),
+                throughput(80, 78, 82)));
+    }
+
+    @Test
+    public void throughputRiseBeyondToleranceImproves() {
+        Assertions.assertEquals(RegressionGate.Verdict.IMPROVED, verdict(
+                throughput(100, 98, 102),
+                throughput(120, 118, 122)));
+    }
+
+    @Test
+    public void timeGrowthBeyondToleranceRegresses() {
+        Assertions.assertEquals(RegressionGate.Verdict.REGRESSED, verdict(
+                averageTime(1.0, 0.98, 1.02),
+                averageTime(1.2, 1.18, 1.22)));
+        Assertions.assertEquals(RegressionGate.Verdict.IMPROVED, verdict(
+                averageTime(1.0, 0.98, 1.02),
+                averageTime(0.8, 0.78, 0.82)));
+    }
+
+    @Test
+    public void overlappingIntervalsAreUnchanged() {
+        // Noisy runs: the change is beyond the tolerance, but not significant
+        Assertions.assertEquals(RegressionGate.Verdict.UNCHANGED, verdict(
+                throughput(100, 70, 130),
+                throughput(80, 55, 105)));
+    }
+
+    @Test
+    public void changeWithinToleranceIsUnchanged() {
+        // Significant, but too small to matter
+        Assertions.assertEquals(RegressionGate.Verdict.UNCHANGED, verdict(
+                throughput(100, 99.5, 100.5),
+                throughput(95, 94.5, 95.5)));
+    }
+
+    @Test
+    public void missingIntervalsLeaveTheToleranceAlone() {
+        // Single iteration runs: JMH writes no confidence interval
+        Assertions.assertEquals(RegressionGate.Verdict.REGRESSED, verdict(
+                throughput(100, Double.NaN, Double.NaN),
+                throughput(80, 78, 82)));
+        Assertions.assertEquals(RegressionGate.Verdict.REGRESSED, verdict(
+                throughput(100, 98, 102),
+                throughput(80, Double.NaN, Double.NaN)));
+        Assertions.assertEquals(RegressionGate.Verdict.UNCHANGED, verdict(
+                throughput(100, Double.NaN, Double.NaN),
+                throughput(95, Double.NaN, Double.NaN)));
+    }
+
+    @Test
+    public void p99GrowthBeyondToleranceRegresses() {
+        // Same score, longer tail
+        Assertions.assertEquals(RegressionGate.Verdict.REGRESSED, verdict(
+                sampleTime(1.0, 0.98, 1.02, 5.0),
+                sampleTime(1.0, 0.98, 1.02, 6.5)));
+        Assertions.assertEquals(RegressionGate.Verdict.UNCHANGED, verdict(
+                sampleTime(1.0, 0.98, 1.02, 5.0),
+                sampleTime(1.0, 0.98, 1.02, 5.5)));
+    }
+
+    @Test
+    public void missingP99IsIgnored() {
+        Assertions.assertEquals(RegressionGate.Verdict.UNCHANGED, verdict(
+                sampleTime(1.0, 0.98, 1.02, Double.NaN),
+                sampleTime(1.0, 0.98, 1.02, 50.0)));
+    }
+
+    @Test
+    public void newAndMissingBenchmarksAreReported() {
+        final BenchmarkBaseline.Entry kept = throughput(100, 98, 102);
+        final BenchmarkBaseline.Entry removed = entry(BENCHMARK, "avgt", Collections.singletonMap("stack", "LEGACY"), 1, 0.9, 1.1, Double.NaN, "ms/op");
+        final BenchmarkBaseline.Entry added = entry(BENCHMARK, "avgt", Collections.singletonMap("stack", "TX_MANAGER"), 1, 0.9, 1.1, Double.NaN, "ms/op");
+
+        final List<RegressionGate.Comparison> comparisons = gate.compare(baseline(kept, removed), baseline(kept, added));
+        Assertions.assertEquals(List.of(kept.getKey(), added.getKey(), removed.getKey()),
+                comparisons.stream().map(RegressionGate.Comparison::getKey).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(RegressionGate.Verdict.UNCHANGED, RegressionGate.Verdict.NEW, RegressionGate.Verdict.MISSING),
+                comparisons.stream().map(RegressionGate.Comparison::getVerdict).collect(Collectors.toList()));
+        Assertions.assertNull(comparisons.get(1).getBaseline());
+        Assertions.assertNull(comparisons.get(2).getCurrent());
+    }
+
+    @Test
+    public void unitChangeIsNew() {
+        // Scores in different units cannot be compared
+        Assertions.assertEquals(RegressionGate.Verdict.NEW, verdict(
+                throughput(100, 98, 102),
+                entry(BENCHMARK, "thrpt", Collections.emptyMap(), 100_000, 98_000, 102_000, Double.NaN, "ops/s")));
+    }
+
+    @Test
+    public void reportListsEveryVerdict() {
+        final String report = RegressionGate.report(gate.compare(baseline(throughput(100, 98, 102)), baseline(throughput(80, 78, 82))));
+        Assertions.assertTrue(report.contains("TxManagerBenchmark.emptyTransaction thrpt t1"));
+        Assertions.assertTrue(report.contains("-20.0%"));
+        Assertions.assertTrue(report.contains("REGRESSED: 1"));
+        Assertions.assertTrue(report.contains("UNCHANGED: 0"));
+    }
+
+    private RegressionGate.Verdict verdict(BenchmarkBaseline.Entry baseline, BenchmarkBaseline.Entry current) {
+        final List<RegressionGate.Comparison> comparisons = gate.compare(baseline(baseline), baseline(current));
+        Assertions.assertEquals(1, comparisons.size());
+        return comparisons.get(0).getVerdict();
+    }
+
+    private static BenchmarkBaseline baseline(BenchmarkBaseline.Entry... entries) {
+        final Map<String, BenchmarkBaseline.Entry> byKey = new LinkedHashMap<>();
+        for (BenchmarkBaseline.Entry entry : entries) {
+            byKey.put(entry.getKey(), entry);
+        }
+        return new BenchmarkBaseline(Instant.now(), byKey);
+    }
+
+    private static BenchmarkBaseline.Entry throughput(double score, double lower, double upper) {
+        return entry(BENCHMARK, "thrpt", Collections.emptyMap(), score, lower, upper, Double.NaN, "ops/ms");
+    }
+
+    private static BenchmarkBaseline.Entry averageTime(double score, double lower, double upper) {
+        return entry(BENCHMARK, "avgt", Collections.emptyMap(), score, lower, upper, Double.NaN, "ms/op");
+    }
+
+    private static BenchmarkBaseline.Entry sampleTime(double score, double lower, double upper, double p99) {
+        return entry(BENCHMARK, "sample", Collections.emptyMap(), score, lower, upper, p99, "ms/op");
+    }
+
+    private static BenchmarkBaseline.Entry entry(String benchmark, String mode, Map<String, String> params, double score, double lower, double upper,
+                                                 double p99, String unit) {
+        return new BenchmarkBaseline.Entry(benchmark, mode, 1, params, score, lower, upper, p99, unit);
+    }
+}
@@ -0,0 +1,133 @@
+package com.eurotech.persistence.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.LockModeType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the {@link LockModeType} used to read entities of a given type, based on the observed rate of optimistic conflicts.
+ * <p>
+ * Reads start optimistic. The conflict rate is tracked as an exponentially weighted moving average of update outcomes: once it rises
+ * above pessimisticThreshold reads switch to the pessimistic lock mode, and they go back to optimistic only once it falls below
+ * optimisticThreshold (hysteresis). Pessimistic reads preventing conflicts altogether, the rate cannot be measured through them: while
+ * pessimistic, one read every probeInterval is still executed optimistically, in order to keep measuring contention.
+ * <p>
+ * Selecting the lock mode only reads atomics, as it happens on every read. Mode switches are logged, and exported by
+ * {@link com.eurotech.persistence.transactions.metrics.TransactionMetrics#addAdaptiveLockMode(AdaptiveLockMode)}.
+ */
+public class AdaptiveLockMode {
+    private static final Map<Class<?>, AdaptiveLockMode> BY_ENTITY_CLASS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final LockModeType optimisticLockMode;
+    private final LockModeType pessimisticLockMode;
+    private final double pessimisticThreshold;
+    private final double optimisticThreshold;
+    private final double smoothing;
+    private final int probeInterval;
+
+    // Bits of the double
+    private final AtomicLong conflictRate = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final AtomicBoolean pessimistic = new AtomicBoolean();
+    private final AtomicLong operations = new AtomicLong();
+    private final LongAdder switchesToPessimistic = new LongAdder();
+    private final LongAdder switchesToOptimistic = new LongAdder();
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * @return The lock mode, with default settings, shared by all the repositories of the entity class: contention observed by one of them
+     * drives the reads of all the others
+     */
+    public static AdaptiveLockMode forEntityClass(Class<?> entityClass) {
+        return BY_ENTITY_CLASS.computeIfAbsent(entityClass, clazz -> new AdaptiveLockMode(clazz.getSimpleName()));
+    }
+
+    public AdaptiveLockMode(String name) {
+        this(name, LockModeType.NONE, LockModeType.PESSIMISTIC_WRITE, 0.2, 0.05, 0.1, 10);
+    }
+
+    /**
+     * @param name                 Used for reporting, usually the name of the entity class
+     * @param optimisticLockMode   Lock mode used under low contention (NONE still enforces version checks on versioned entities)
+     * @param pessimisticLockMode  Lock mode used under high contention
+     * @param pessimisticThreshold Conflict rate above which reads switch to pessimistic
+     * @param optimisticThreshold  Conflict rate below which reads switch back to optimistic, must be lower than pessimisticThreshold
+     * @param smoothing            Weight of each new outcome in the conflict rate (0-1]
+     * @param probeInterval        While pessimistic, one operation every probeInterval is executed optimistically
+     */
+    public AdaptiveLockMode(String name,
+                            LockModeType optimisticLockMode,
+                            LockModeType pessimisticLockMode,
+                            double pessimisticThreshold,
+                            double optimisticThreshold,
+                            double smoothing,
+                            int probeInterval) {
+        if (optimisticThreshold >= pessimisticThreshold) {
+            throw new IllegalArgumentException("optimisticThreshold must be lower than pessimisticThreshold");
+        }
+        this.name = name;
+        this.optimisticLockMode = optimisticLockMode;
+        this.pessimisticLockMode = pessimisticLockMode;
+        this.pessimisticThreshold = pessimisticThreshold;
+        this.optimisticThreshold = optimisticThreshold;
+        this.smoothing = smoothing;
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * @return The lock mode to be used for the next read
+     */
+    public LockModeType select() {
+        if (pessimistic.get() && operations.incrementAndGet() % probeInterval != 0) {
+            return pessimisticLockMode;
+        }
+        return optimisticLockMode;
+    }
+
+    /**
+     * @param lockModeType The lock mode used reading the entity, as returned by {@link #select()}
+     * @param conflict     Whether the update failed because of an optimistic conflict
+     */
+    public void recordOutcome(LockModeType lockModeType, boolean conflict) {
+        if (lockModeType != optimisticLockMode) {
+            // Pessimistic reads tell nothing about the optimistic conflict rate
+            return;
+        }
+        final double rate = Double.longBitsToDouble(conflictRate.updateAndGet(bits ->
+                Double.doubleToRawLongBits(Double.longBitsToDouble(bits) * (1 - smoothing) + (conflict ? smoothing : 0))));
+        // Only the thread flipping the mode reports the switch
+        if (rate > pessimisticThreshold && pessimistic.compareAndSet(false, true)) {
+            switchesToPessimistic.increment();
+            logger.info("{}: conflict rate {}, switching reads to {}", name, String.format("%.3f", rate), pessimisticLockMode);
+        } else if (rate < optimisticThreshold && pessimistic.compareAndSet(true, false)) {
+            switchesToOptimistic.increment();
+            logger.info("{}: conflict rate {}, switching reads to {}", name, String.format("%.3f", rate), optimisticLockMode);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getConflictRate() {
+        return Double.longBitsToDouble(conflictRate.get());
+    }
+
+    public boolean isPessimistic() {
+        return pessimistic.get();
+    }
+
+    public long getSwitchesToPessimistic() {
+        return switchesToPessimistic.sum();
+    }
+
+    public long getSwitchesToOptimistic() {
+        return switchesToOptimistic.sum();
+    }
+}
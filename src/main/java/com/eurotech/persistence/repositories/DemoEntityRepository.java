@@ -2,31 +2,59 @@ package com.eurotech.persistence.repositories;
 
 import com.eurotech.demos.transactions.DemoEntity;
 import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.jfr.LockAcquisitionEvent;
 import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
 
 import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
 import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class DemoEntityRepository<E extends DemoEntity> {
     private static final String SQL_ERROR_CODE_CONSTRAINT_VIOLATION = "23505";
+    private static final String HINT_LOCK_TIMEOUT = "javax.persistence.lock.timeout";
+    private static final String HINT_QUERY_TIMEOUT = "javax.persistence.query.timeout";
+    private static final int LOCK_ALL_CHUNK_SIZE = 500;
 
     private final Class<E> clazz;
+    private final AdaptiveLockMode adaptiveLockMode;
 
     public DemoEntityRepository(Class<E> clazz) {
+        this(clazz, AdaptiveLockMode.forEntityClass(clazz));
+    }
+
+    /**
+     * @param adaptiveLockMode Selects the lock mode for {@link #find(TxContext, Long)} and {@link #update(TxContext, DemoEntity)}
+     */
+    public DemoEntityRepository(Class<E> clazz, AdaptiveLockMode adaptiveLockMode) {
         this.clazz = clazz;
+        this.adaptiveLockMode = adaptiveLockMode;
     }
 
     public E create(TxContext tx, E entity) {
         final EntityManager em = JpaAwareTxContext.extractEntityManager(tx);
         try {
             em.persist(entity);
-            em.flush();
-            em.refresh(entity);
+            if (!JpaAwareTxContext.deferWrite(tx, entity, describe("create", entity))) {
+                em.flush();
+                em.refresh(entity);
+            }
+            JpaAwareTxContext.notifyWrite(tx);
             return entity;
         } catch (EntityExistsException e) {
             // this will be intercepted by the calling method, that will decide whether to retry or not
@@ -50,21 +78,157 @@ public class DemoEntityRepository<E extends DemoEntity> {
 
     public Optional<E> find(TxContext txContext, Long entityId, LockModeType lockModeType) {
         final javax.persistence.EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
-        return doFind(em, entityId, lockModeType);
+        return doFind(em, entityId, lockModeType, hints(txContext, lockModeType, JpaAwareTxContext.extractLockTimeout(txContext)));
+    }
+
+    /**
+     * @param lockTimeout Maximum time to wait for pessimistic locks, overrides the transaction's lock timeout
+     */
+    public Optional<E> find(TxContext txContext, Long entityId, LockModeType lockModeType, Duration lockTimeout) {
+        final javax.persistence.EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
+        return doFind(em, entityId, lockModeType, hints(txContext, lockModeType, Optional.of(lockTimeout)));
     }
 
-    protected Optional<E> doFind(EntityManager em, Long entityId, LockModeType lockModeType) {
-        return Optional.ofNullable(em.find(clazz, entityId, lockModeType));
+    /**
+     * Finds the entity using the lock mode currently selected by the {@link AdaptiveLockMode}
+     */
+    public Optional<E> find(TxContext txContext, Long entityId) {
+        return find(txContext, entityId, adaptiveLockMode.select());
+    }
+
+    /**
+     * Locks all the given entities, with one query per chunk of {@value #LOCK_ALL_CHUNK_SIZE} ids, always proceeding in ascending id order.
+     * As long as transactions acquire their locks only through this method, they all lock rows in the same order and cannot deadlock.
+     * As {@link #findPage(TxContext, Long, int)}, only entities of exactly the repository's class are returned.
+     *
+     * @return The locked entities sorted by id, ids not found (or of a subclass) are skipped
+     */
+    public List<E> lockAll(TxContext txContext, Collection<Long> entityIds, LockModeType lockModeType) {
+        final EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
+        final List<Long> sortedIds = entityIds.stream().distinct().sorted().collect(Collectors.toList());
+        final List<E> res = new ArrayList<>(sortedIds.size());
+        for (int from = 0; from < sortedIds.size(); from += LOCK_ALL_CHUNK_SIZE) {
+            // Hints computed for each chunk, as the time left before the deadline shrinks
+            final Map<String, Object> hints = hints(txContext, lockModeType, JpaAwareTxContext.extractLockTimeout(txContext));
+            final TypedQuery<E> query = em.createQuery("SELECT e FROM " + clazz.getSimpleName() + " e WHERE TYPE(e) = " + clazz.getSimpleName()
+                            + " AND e.id IN :ids", clazz)
+                    .setParameter("ids", sortedIds.subList(from, Math.min(from + LOCK_ALL_CHUNK_SIZE, sortedIds.size())))
+                    .setLockMode(lockModeType);
+            hints.forEach(query::setHint);
+            final List<E> chunk = new ArrayList<>(lockingRead(query, lockModeType, Math.min(LOCK_ALL_CHUNK_SIZE, sortedIds.size() - from)));
+            // Cannot be ordered in the query, as updatable (FOR UPDATE) cursors do not allow ORDER BY on some databases
+            chunk.sort(Comparator.comparing(DemoEntity::getId));
+            res.addAll(chunk);
+        }
+        return res;
+    }
+
+    private List<E> lockingRead(TypedQuery<E> query, LockModeType lockModeType, int entities) {
+        if (!isPessimistic(lockModeType)) {
+            return query.getResultList();
+        }
+        final LockAcquisitionEvent lockEvent = new LockAcquisitionEvent();
+        lockEvent.begin();
+        boolean acquired = false;
+        try {
+            final List<E> res = query.getResultList();
+            acquired = true;
+            return res;
+        } finally {
+            commitLockEvent(lockEvent, lockModeType, entities, acquired);
+        }
+    }
+
+    /**
+     * Finds all the given entities, with one query per chunk of ids
+     *
+     * @return The entities found, sorted by id, ids not found (or of a subclass) are skipped
+     */
+    public List<E> findAll(TxContext txContext, Collection<Long> entityIds) {
+        return lockAll(txContext, entityIds, LockModeType.NONE);
+    }
+
+    /**
+     * Keyset pagination over all entities, in ascending id order. Only entities of exactly the repository's class are returned,
+     * not the ones of its subclasses
+     *
+     * @param afterId The last id of the previous page, null for the first page
+     */
+    public List<E> findPage(TxContext txContext, Long afterId, int pageSize) {
+        final EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
+        final TypedQuery<E> query = em.createQuery("SELECT e FROM " + clazz.getSimpleName() + " e WHERE TYPE(e) = " + clazz.getSimpleName()
+                        + " AND e.id > :afterId ORDER BY e.id", clazz)
+                .setParameter("afterId", afterId == null ? Long.MIN_VALUE : afterId)
+                .setMaxResults(pageSize);
+        hints(txContext, LockModeType.NONE, Optional.empty()).forEach(query::setHint);
+        return query.getResultList();
+    }
+
+    protected Optional<E> doFind(EntityManager em, Long entityId, LockModeType lockModeType, Map<String, Object> hints) {
+        if (!isPessimistic(lockModeType)) {
+            return Optional.ofNullable(em.find(clazz, entityId, lockModeType, hints));
+        }
+        final LockAcquisitionEvent lockEvent = new LockAcquisitionEvent();
+        lockEvent.begin();
+        boolean acquired = false;
+        try {
+            final Optional<E> res = Optional.ofNullable(em.find(clazz, entityId, lockModeType, hints));
+            acquired = true;
+            return res;
+        } finally {
+            commitLockEvent(lockEvent, lockModeType, 1, acquired);
+        }
+    }
+
+    private void commitLockEvent(LockAcquisitionEvent lockEvent, LockModeType lockModeType, int entities, boolean acquired) {
+        lockEvent.end();
+        if (lockEvent.shouldCommit()) {
+            lockEvent.entityClass = clazz.getName();
+            lockEvent.lockMode = lockModeType.name();
+            lockEvent.entities = entities;
+            lockEvent.acquired = acquired;
+            lockEvent.commit();
+        }
+    }
+
+    private static boolean isPessimistic(LockModeType lockModeType) {
+        return lockModeType == LockModeType.PESSIMISTIC_READ
+                || lockModeType == LockModeType.PESSIMISTIC_WRITE
+                || lockModeType == LockModeType.PESSIMISTIC_FORCE_INCREMENT;
+    }
+
+    /**
+     * @param lockTimeout Applied to pessimistic reads only
+     * @return The hints bounding the statement by the transaction's deadline, and the wait for pessimistic locks by the lock timeout
+     */
+    private static Map<String, Object> hints(TxContext txContext, LockModeType lockModeType, Optional<Duration> lockTimeout) {
+        final Optional<Duration> statementTimeout = JpaAwareTxContext.extractStatementTimeout(txContext);
+        final Optional<Duration> lockWait = isPessimistic(lockModeType) ? lockTimeout : Optional.empty();
+        if (!lockWait.isPresent() && !statementTimeout.isPresent()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Object> hints = new HashMap<>();
+        lockWait.ifPresent(timeout -> hints.put(HINT_LOCK_TIMEOUT, timeout.toMillis()));
+        // For platforms without a lock-wait clause, the query timeout is what bounds the wait
+        Stream.of(lockWait, statementTimeout)
+                .flatMap(timeout -> timeout.map(Stream::of).orElseGet(Stream::empty))
+                .min(Comparator.naturalOrder())
+                .ifPresent(timeout -> hints.put(HINT_QUERY_TIMEOUT, timeout.toMillis()));
+        return hints;
     }
 
     public E delete(TxContext txContext, E entityToDelete) {
         final EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
-        return doDelete(em, entityToDelete);
+        final E deleted = doDelete(txContext, em, entityToDelete);
+        JpaAwareTxContext.notifyWrite(txContext);
+        return deleted;
     }
 
-    protected E doDelete(EntityManager em, E entityToDelete) {
+    protected E doDelete(TxContext txContext, EntityManager em, E entityToDelete) {
         em.remove(entityToDelete);
-        em.flush();
+        if (!JpaAwareTxContext.deferWrite(txContext, entityToDelete, describe("delete", entityToDelete))) {
+            em.flush();
+        }
         // Returning deleted entity
         return entityToDelete;
     }
@@ -86,21 +250,65 @@ public class DemoEntityRepository<E extends DemoEntity> {
     public E update(TxContext txContext, E updatedEntity, LockModeType readLockModeType) {
         final javax.persistence.EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
         // Checking existence
-        return doFind(em, updatedEntity.getId(), readLockModeType)
+        final E updated = doFind(em, updatedEntity.getId(), readLockModeType, hints(txContext, readLockModeType, JpaAwareTxContext.extractLockTimeout(txContext)))
                 // Updating if present
-                .map(ce -> doUpdate(em, ce, updatedEntity))
+                .map(ce -> doUpdate(txContext, em, ce, updatedEntity))
                 .orElseThrow(() -> new EntityNotFoundException(clazz.getSimpleName()));
+        JpaAwareTxContext.notifyWrite(txContext);
+        return updated;
+    }
+
+    /**
+     * Updates the entity reading it with the lock mode currently selected by the {@link AdaptiveLockMode}, and reports
+     * optimistic conflicts back to it (conflicts only surfacing at commit, as with deferred flushes, are not observed)
+     */
+    public E update(TxContext txContext, E updatedEntity) {
+        final EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
+        // An entity already read within this transaction keeps the lock mode it has been read with:
+        // reading it again with a stronger lock mode would refresh it, discarding pending changes
+        final boolean alreadyRead = em.contains(updatedEntity);
+        final LockModeType readLockModeType = alreadyRead ? em.getLockMode(updatedEntity) : adaptiveLockMode.select();
+        try {
+            final E updated = alreadyRead
+                    ? update(txContext, updatedEntity, updatedEntity)
+                    : update(txContext, updatedEntity, readLockModeType);
+            adaptiveLockMode.recordOutcome(readLockModeType, false);
+            return updated;
+        } catch (OptimisticLockException e) {
+            adaptiveLockMode.recordOutcome(readLockModeType, true);
+            throw e;
+        }
+    }
+
+    public AdaptiveLockMode getAdaptiveLockMode() {
+        return adaptiveLockMode;
     }
 
     public E update(TxContext txContext, E currentEntity, E updatedEntity) {
         final javax.persistence.EntityManager em = JpaAwareTxContext.extractEntityManager(txContext);
-        return doUpdate(em, currentEntity, updatedEntity);
+        final E updated = doUpdate(txContext, em, currentEntity, updatedEntity);
+        JpaAwareTxContext.notifyWrite(txContext);
+        return updated;
     }
 
-    protected E doUpdate(javax.persistence.EntityManager em, E currentEntity, E updatedEntity) {
-        em.merge(updatedEntity);
+    protected E doUpdate(TxContext txContext, javax.persistence.EntityManager em, E currentEntity, E updatedEntity) {
+        final E mergedEntity;
+        try {
+            mergedEntity = em.merge(updatedEntity);
+        } catch (OptimisticLockException e) {
+            // Raised by EclipseLink for stale entities without telling which one: attached, so that the conflict can be attributed
+            throw e.getEntity() != null ? e : new OptimisticLockException(e.getMessage(), e, updatedEntity);
+        }
+        if (JpaAwareTxContext.deferWrite(txContext, mergedEntity, describe("update", mergedEntity))) {
+            // Changes are merged, but will reach the database (and bump counters/versions) only when flushed
+            return currentEntity;
+        }
         em.flush();
         em.refresh(currentEntity);
         return currentEntity;
     }
+
+    private String describe(String operation, E entity) {
+        return String.format("%s %s [id=%s]", operation, clazz.getSimpleName(), entity.getId());
+    }
 }
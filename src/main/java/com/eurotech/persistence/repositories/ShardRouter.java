@@ -0,0 +1,31 @@
+package com.eurotech.persistence.repositories;
+
+/**
+ * Maps entity ids to the index of the shard owning them
+ */
+@FunctionalInterface
+public interface ShardRouter {
+    int shardFor(Long entityId);
+
+    /**
+     * Shard i owns ids in [i * rangeSize, (i + 1) * rangeSize): a shard generating ids with a sequence starting at the beginning
+     * of its range (e.g. a table generator with the matching initial value, in a mapping file of the shard's persistence unit) creates entities it owns
+     */
+    static ShardRouter byRange(long rangeSize, int shards) {
+        return entityId -> {
+            final long shard = entityId / rangeSize;
+            if (entityId < 0 || shard >= shards) {
+                throw new IllegalArgumentException(String.format("Id %d is outside of the ranges of all %d shards", entityId, shards));
+            }
+            return (int) shard;
+        };
+    }
+
+    /**
+     * Spreads ids evenly across shards. Suitable for ids assigned outside the shards (e.g. migrated data): database-generated ids
+     * would need each shard's generator to produce only ids hashing to the shard itself
+     */
+    static ShardRouter byHash(int shards) {
+        return entityId -> Math.floorMod(Long.hashCode(entityId), shards);
+    }
+}
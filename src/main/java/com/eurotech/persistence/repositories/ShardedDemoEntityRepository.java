@@ -0,0 +1,147 @@
+package com.eurotech.persistence.repositories;
+
+import com.eurotech.demos.transactions.DemoEntity;
+import com.eurotech.persistence.transactions.TxManager;
+
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Spreads entities over multiple shards (each one a persistence unit with its own {@link TxManager}), routing single-entity operations
+ * by id through a {@link ShardRouter}. Multi-entity lookups and scans are scattered to the involved shards in parallel, and their results gathered.
+ * <p>
+ * Each operation runs in its own transaction on a single shard: there is no cross-shard transaction.
+ */
+public class ShardedDemoEntityRepository<E extends DemoEntity> {
+    private final DemoEntityRepository<E> repository;
+    private final List<TxManager> shards;
+    private final ShardRouter shardRouter;
+    private final Executor executor;
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * @param shards   The {@link TxManager}s of the shards, in the order used by the shardRouter
+     * @param executor Runs the per-shard parts of scatter-gather operations, should allow for as many concurrent tasks as shards
+     */
+    public ShardedDemoEntityRepository(DemoEntityRepository<E> repository, List<TxManager> shards, ShardRouter shardRouter, Executor executor) {
+        this.repository = repository;
+        this.shards = shards;
+        this.shardRouter = shardRouter;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the entity on the next shard in round-robin order. Each shard must generate only ids it owns (e.g. a sequence per shard,
+     * starting from the beginning of its range, configured in the shard's persistence unit): an id owned by another shard means
+     * a misconfigured or exhausted sequence, and the creation is rolled back.
+     */
+    public E create(E entity) {
+        final int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+        return shards.get(shard).execute(tx -> {
+            final E created = repository.create(tx, entity);
+            final int owner = shardRouter.shardFor(created.getId());
+            if (owner != shard) {
+                throw new IllegalStateException(String.format("Shard %d generated id %d, owned by shard %d", shard, created.getId(), owner));
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Executes the given operations in a transaction on the shard owning the entity
+     */
+    public <R> R execute(Long entityId, TxManager.TxConsumer<R> transactionConsumer) {
+        return shards.get(shardRouter.shardFor(entityId)).execute(transactionConsumer);
+    }
+
+    public Optional<E> find(Long entityId, LockModeType lockModeType) {
+        return execute(entityId, tx -> repository.find(tx, entityId, lockModeType));
+    }
+
+    public E update(E updatedEntity, LockModeType readLockModeType) {
+        return execute(updatedEntity.getId(), tx -> repository.update(tx, updatedEntity, readLockModeType));
+    }
+
+    public Optional<E> delete(Long entityId) {
+        return execute(entityId, tx -> repository.find(tx, entityId, LockModeType.NONE)
+                .map(entity -> repository.delete(tx, entity)));
+    }
+
+    /**
+     * Looks up the given entities, querying the shards owning them in parallel
+     *
+     * @return The entities found, sorted by id
+     */
+    public List<E> findAll(Collection<Long> entityIds) {
+        final Map<Integer, List<Long>> idsByShard = entityIds.stream()
+                .distinct()
+                .collect(Collectors.groupingBy(shardRouter::shardFor));
+        final List<E> res = gather(idsByShard.entrySet().stream()
+                .map(shardIds -> scatter(() -> shards.get(shardIds.getKey()).execute(tx -> repository.findAll(tx, shardIds.getValue()))))
+                .collect(Collectors.toList()))
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toCollection(ArrayList::new));
+        res.sort(Comparator.comparing(DemoEntity::getId));
+        return res;
+    }
+
+    /**
+     * Scans all the entities of all shards in parallel, each shard paging through its entities in ascending id order,
+     * a page per transaction. The consumer is invoked concurrently by different shards, and needs to be thread safe.
+     *
+     * @return The number of entities scanned
+     */
+    public long forEach(int pageSize, Consumer<? super E> consumer) {
+        return gather(IntStream.range(0, shards.size())
+                .mapToObj(shard -> scatter(() -> scanShard(shards.get(shard), pageSize, consumer)))
+                .collect(Collectors.toList()))
+                .stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    private long scanShard(TxManager shard, int pageSize, Consumer<? super E> consumer) {
+        long scanned = 0;
+        Long lastId = null;
+        while (true) {
+            final Long afterId = lastId;
+            final List<E> page = shard.execute(tx -> repository.findPage(tx, afterId, pageSize));
+            page.forEach(consumer);
+            scanned += page.size();
+            if (page.size() < pageSize) {
+                return scanned;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private <R> CompletableFuture<R> scatter(Supplier<R> shardOperation) {
+        return CompletableFuture.supplyAsync(shardOperation, executor);
+    }
+
+    private static <R> List<R> gather(List<CompletableFuture<R>> shardOperations) {
+        try {
+            CompletableFuture.allOf(shardOperations.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return shardOperations.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+}
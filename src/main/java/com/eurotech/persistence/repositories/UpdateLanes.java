@@ -0,0 +1,181 @@
+package com.eurotech.persistence.repositories;
+
+import com.eurotech.demos.transactions.DemoEntity;
+import com.eurotech.persistence.transactions.TxManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Single-writer lanes in front of {@link DemoEntityRepository#update(com.eurotech.persistence.transactions.TxContext, DemoEntity, DemoEntity)}:
+ * entity ids are hashed to a fixed set of lanes, each one a single thread applying the mutations submitted for its ids.
+ * Updates to the same entity never run concurrently within this process, and the mutations queued for the same entity
+ * are applied in a single transaction, resulting in a single write.
+ * <p>
+ * Mutations run on the lane's thread, and must not block.
+ */
+public class UpdateLanes<E extends DemoEntity> implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final long POLL_MILLIS = 100;
+
+    private final TxManager txManager;
+    private final DemoEntityRepository<E> repository;
+    private final int maxBatchSize;
+    private final ShardRouter laneRouter;
+    private final List<Lane> lanes;
+    private volatile boolean closed;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public UpdateLanes(TxManager txManager, DemoEntityRepository<E> repository, int lanes) {
+        this(txManager, repository, lanes, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param lanes        Number of lanes (threads), bounding the concurrent update transactions
+     * @param maxBatchSize Maximum number of mutations taken from a lane's queue at once
+     */
+    public UpdateLanes(TxManager txManager, DemoEntityRepository<E> repository, int lanes, int maxBatchSize) {
+        this.txManager = txManager;
+        this.repository = repository;
+        this.maxBatchSize = maxBatchSize;
+        this.laneRouter = ShardRouter.byHash(lanes);
+        this.lanes = IntStream.range(0, lanes).mapToObj(Lane::new).collect(Collectors.toList());
+        this.lanes.forEach(Thread::start);
+    }
+
+    /**
+     * Queues a mutation of the entity, to be applied by the entity's lane
+     *
+     * @return The updated entity, completed exceptionally with {@link EntityNotFoundException} if the entity does not exist,
+     * with the exception (or error) thrown by the mutation, or with the failure of the update transaction
+     */
+    public CompletableFuture<E> update(Long entityId, Consumer<E> mutation) {
+        final Mutation<E> queued = new Mutation<>(entityId, mutation);
+        if (closed) {
+            queued.result.completeExceptionally(new IllegalStateException("Update lanes closed"));
+            return queued.result;
+        }
+        final Lane lane = lanes.get(laneRouter.shardFor(entityId));
+        lane.queue.add(queued);
+        // The lane might have stopped in the meantime, after cancelling what was queued: whoever removes the mutation completes it
+        if (lane.stopped && lane.queue.remove(queued)) {
+            queued.result.completeExceptionally(new IllegalStateException("Update lanes closed"));
+        }
+        return queued.result;
+    }
+
+    public int getQueuedMutations() {
+        return lanes.stream().mapToInt(lane -> lane.queue.size()).sum();
+    }
+
+    /**
+     * Stops the lanes once their current batches are applied, mutations still queued are cancelled.
+     * If interrupted, returns without waiting for the lanes to stop
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            for (Lane lane : lanes) {
+                lane.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Catches errors too: they would otherwise stop the lane, leaving its queued mutations pending forever
+    private void apply(Long entityId, List<Mutation<E>> mutations) {
+        try {
+            final E updated = applyInOneTransaction(entityId, mutations);
+            mutations.forEach(mutation -> mutation.result.complete(updated));
+        } catch (Throwable e) {
+            if (mutations.size() == 1) {
+                mutations.get(0).result.completeExceptionally(e);
+                return;
+            }
+            // Isolating the failing mutations: the others are applied anyway
+            logger.warn("Batch of {} mutations of entity {} failed, applying them one by one", mutations.size(), entityId, e);
+            for (Mutation<E> mutation : mutations) {
+                try {
+                    mutation.result.complete(applyInOneTransaction(entityId, List.of(mutation)));
+                } catch (Throwable mutationFailure) {
+                    mutation.result.completeExceptionally(mutationFailure);
+                }
+            }
+        }
+    }
+
+    private E applyInOneTransaction(Long entityId, List<Mutation<E>> mutations) {
+        return txManager.execute(tx -> {
+            // No other thread of this process updates the entity, optimistic reads conflict only with other processes
+            final E entity = repository.find(tx, entityId, LockModeType.NONE)
+                    .orElseThrow(() -> new EntityNotFoundException(Long.toString(entityId)));
+            mutations.forEach(mutation -> mutation.mutation.accept(entity));
+            return repository.update(tx, entity, entity);
+        });
+    }
+
+    private class Lane extends Thread {
+        private final BlockingQueue<Mutation<E>> queue = new LinkedBlockingQueue<>();
+        // Set before cancelling the mutations left in the queue
+        private volatile boolean stopped;
+
+        private Lane(int index) {
+            super("update-lane-" + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            final List<Mutation<E>> batch = new ArrayList<>(maxBatchSize);
+            try {
+                while (!closed) {
+                    final Mutation<E> first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    // Mutations of the same entity, in submission order
+                    final Map<Long, List<Mutation<E>>> byEntity = batch.stream()
+                            .collect(Collectors.groupingBy(mutation -> mutation.entityId, LinkedHashMap::new, Collectors.toList()));
+                    byEntity.forEach(UpdateLanes.this::apply);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Also when the lane dies unexpectedly: the mutations of the current batch that are still pending are cancelled too
+                stopped = true;
+                queue.drainTo(batch);
+                batch.forEach(mutation -> mutation.result.completeExceptionally(new CancellationException("Update lanes closed")));
+            }
+        }
+    }
+
+    private static class Mutation<E> {
+        private final Long entityId;
+        private final Consumer<E> mutation;
+        private final CompletableFuture<E> result = new CompletableFuture<>();
+
+        private Mutation(Long entityId, Consumer<E> mutation) {
+            this.entityId = entityId;
+            this.mutation = mutation;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link TxManager#executeAll(Iterable, BiFunction, BulkOptions)}: items are split in chunks, each chunk is processed
+ * in its own transaction on a work-stealing pool of parallelism threads (see {@link BulkOptions#getParallelism()}). At most one chunk per thread is in flight, so that items are read from
+ * the {@link Iterable} only as chunks complete. When a chunk fails, its items are processed again one transaction each,
+ * in order to isolate the failing ones without losing the others.
+ */
+class BulkExecutor<T, R> {
+    private final TxManager txManager;
+    private final BiFunction<TxContext, T, R> itemConsumer;
+    private final BulkOptions options;
+    private final ConcurrentLinkedQueue<Outcome<T, R>> outcomes = new ConcurrentLinkedQueue<>();
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    BulkExecutor(TxManager txManager, BiFunction<TxContext, T, R> itemConsumer, BulkOptions options) {
+        this.txManager = txManager;
+        this.itemConsumer = itemConsumer;
+        this.options = options;
+    }
+
+    BulkResult<T, R> executeAll(Iterable<T> items) {
+        final int parallelism = options.getParallelism();
+        final ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+        final Semaphore inFlight = new Semaphore(parallelism);
+        try {
+            final List<CompletableFuture<Void>> chunks = new ArrayList<>();
+            List<Indexed<T>> chunk = new ArrayList<>(options.getChunkSize());
+            long index = 0;
+            for (T item : items) {
+                chunk.add(new Indexed<>(index++, item));
+                if (chunk.size() == options.getChunkSize()) {
+                    chunks.add(submit(pool, inFlight, chunk));
+                    chunk = new ArrayList<>(options.getChunkSize());
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(submit(pool, inFlight, chunk));
+            }
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (InterruptedException e) {
+            // Chunks already submitted complete anyway, the pool being shut down gracefully
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a chunk to complete", e);
+        } finally {
+            pool.shutdown();
+        }
+        final List<Outcome<T, R>> sortedOutcomes = new ArrayList<>(outcomes);
+        if (options.isOrdered()) {
+            sortedOutcomes.sort(Comparator.comparingLong(outcome -> outcome.index));
+        }
+        return new BulkResult<>(
+                sortedOutcomes.stream().filter(outcome -> outcome.failure == null).map(outcome -> new BulkResult.ItemResult<>(outcome.index, outcome.item, outcome.result)).collect(Collectors.toList()),
+                sortedOutcomes.stream().filter(outcome -> outcome.failure != null).map(outcome -> new BulkResult.ItemFailure<>(outcome.index, outcome.item, outcome.failure)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Waits for a chunk in flight to complete, if there are already as many as threads
+     */
+    private CompletableFuture<Void> submit(ExecutorService pool, Semaphore inFlight, List<Indexed<T>> chunk) throws InterruptedException {
+        inFlight.acquire();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                processChunk(chunk);
+            } finally {
+                inFlight.release();
+            }
+        }, pool);
+    }
+
+    private void processChunk(List<Indexed<T>> chunk) {
+        try {
+            final List<R> results = txManager.execute(tx -> chunk.stream()
+                    .map(indexed -> itemConsumer.apply(tx, indexed.item))
+                    .collect(Collectors.toList()));
+            for (int i = 0; i < chunk.size(); i++) {
+                outcomes.add(new Outcome<>(chunk.get(i), results.get(i), null));
+            }
+        } catch (RuntimeException chunkFailure) {
+            if (chunk.size() == 1) {
+                outcomes.add(new Outcome<>(chunk.get(0), null, chunkFailure));
+                return;
+            }
+            logger.warn("Chunk of {} items failed, processing them one by one", chunk.size(), chunkFailure);
+            for (Indexed<T> indexed : chunk) {
+                try {
+                    outcomes.add(new Outcome<>(indexed, txManager.execute(tx -> itemConsumer.apply(tx, indexed.item)), null));
+                } catch (RuntimeException itemFailure) {
+                    outcomes.add(new Outcome<>(indexed, null, itemFailure));
+                }
+            }
+        }
+    }
+
+    private static class Indexed<T> {
+        final long index;
+        final T item;
+
+        Indexed(long index, T item) {
+            this.index = index;
+            this.item = item;
+        }
+    }
+
+    private static class Outcome<T, R> {
+        final long index;
+        final T item;
+        final R result;
+        final RuntimeException failure;
+
+        Outcome(Indexed<T> indexed, R result, RuntimeException failure) {
+            this.index = indexed.index;
+            this.item = indexed.item;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import com.eurotech.persistence.transactions.jdbc.PooledDataSource;
+
+import java.util.Optional;
+
+/**
+ * Options for {@link TxManager#executeAll(Iterable, java.util.function.BiFunction, BulkOptions)}
+ */
+public class BulkOptions {
+    private int chunkSize = 100;
+    private int parallelism = 4;
+    private boolean ordered = true;
+    private Optional<PooledDataSource> connectionPool = Optional.empty();
+
+    public static BulkOptions defaults() {
+        return new BulkOptions();
+    }
+
+    private BulkOptions() {
+    }
+
+    /**
+     * @param chunkSize Number of items processed in each transaction (default 100)
+     */
+    public BulkOptions chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param parallelism Number of transactions running concurrently (default 4), should not exceed the size of the connection pool
+     */
+    public BulkOptions parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param connectionPool The pool the transactions take their connections from: the parallelism is capped to its maximum size,
+     *                       as transactions beyond it would only wait for a connection
+     */
+    public BulkOptions connectionPool(PooledDataSource connectionPool) {
+        this.connectionPool = Optional.of(connectionPool);
+        return this;
+    }
+
+    /**
+     * @param ordered Whether results and failures are reported in input order (default), or in completion order
+     */
+    public BulkOptions ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return The parallelism, capped to the maximum size of the connection pool if any
+     */
+    public int getParallelism() {
+        return connectionPool.map(pool -> Math.min(parallelism, pool.getOptions().getMaxSize())).orElse(parallelism);
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of {@link TxManager#executeAll(Iterable, java.util.function.BiFunction, BulkOptions)}
+ *
+ * @param <T> The type of the items
+ * @param <R> The type of the values returned for each item
+ */
+public class BulkResult<T, R> {
+    private final List<ItemResult<T, R>> itemResults;
+    private final List<ItemFailure<T>> failures;
+
+    public BulkResult(List<ItemResult<T, R>> itemResults, List<ItemFailure<T>> failures) {
+        this.itemResults = itemResults;
+        this.failures = failures;
+    }
+
+    /**
+     * @return The values returned for the items processed successfully. Failed items being left out, use {@link #getItemResults()}
+     * to tell which item each value belongs to
+     */
+    public List<R> getResults() {
+        return itemResults.stream().map(ItemResult::getResult).collect(Collectors.toList());
+    }
+
+    /**
+     * @return The items processed successfully, with the values returned for them
+     */
+    public List<ItemResult<T, R>> getItemResults() {
+        return itemResults;
+    }
+
+    public List<ItemFailure<T>> getFailures() {
+        return failures;
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public static class ItemResult<T, R> {
+        private final long index;
+        private final T item;
+        private final R result;
+
+        public ItemResult(long index, T item, R result) {
+            this.index = index;
+            this.item = item;
+            this.result = result;
+        }
+
+        /**
+         * @return The position of the item among the items processed
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public R getResult() {
+            return result;
+        }
+    }
+
+    public static class ItemFailure<T> {
+        private final long index;
+        private final T item;
+        private final RuntimeException exception;
+
+        public ItemFailure(long index, T item, RuntimeException exception) {
+            this.index = index;
+            this.item = item;
+            this.exception = exception;
+        }
+
+        /**
+         * @return The position of the item among the items processed
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        public RuntimeException getException() {
+            return exception;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts lock conflicts per key (e.g. "VersionedEntity#42") in fixed memory, to find the keys worth sharding, caching or routing
+ * to single-writer handling. Counts are estimated by a count-min sketch (never underestimated, overestimated by at most
+ * a fraction of the total conflicts inversely proportional to the width), and the hottest keys are kept in a top-K min-heap.
+ * Each row of the sketch hashes the key with its own random seed, so that keys colliding in one row are unlikely to collide in the others.
+ * <p>
+ * Counts roll over time: the sketch is made of two windows, the current one and the previous one, so the reported counts cover
+ * the last one to two windows. Conflicts are rare compared to transactions, so recording simply takes a lock.
+ */
+public class ContentionTracker {
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_WIDTH = 1024;
+    public static final int DEFAULT_TOP_K = 20;
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+    private final int depth;
+    private final int width;
+    private final int topK;
+    private final long windowNanos;
+    private final long[] seeds;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[][] current;
+    private long[][] previous;
+    private long currentTotal;
+    private long previousTotal;
+    private long windowStart = System.nanoTime();
+    // Min-heap of at most topK keys on their estimated count, indexed by key
+    private final HeapEntry[] hottest;
+    private int hottestSize;
+    private final Map<String, HeapEntry> hottestByKey = new HashMap<>();
+
+    public ContentionTracker() {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH, DEFAULT_TOP_K, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param depth  Rows of the sketch: the probability of an estimate exceeding its error bound decreases exponentially with them
+     * @param width  Counters per row: the error bound is about 2.7 / width of the conflicts in the window
+     * @param topK   Number of hottest keys tracked
+     * @param window Duration of each of the two windows conflicts are counted over
+     */
+    public ContentionTracker(int depth, int width, int topK, Duration window) {
+        this.depth = depth;
+        this.width = width;
+        this.topK = topK;
+        this.windowNanos = window.toNanos();
+        this.seeds = ThreadLocalRandom.current().longs(depth).toArray();
+        this.hottest = new HeapEntry[topK];
+        this.current = new long[depth][width];
+        this.previous = new long[depth][width];
+    }
+
+    public void record(String key) {
+        lock.lock();
+        try {
+            roll();
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                final int column = column(key, row);
+                estimate = Math.min(estimate, ++current[row][column] + previous[row][column]);
+            }
+            currentTotal++;
+            final HeapEntry tracked = hottestByKey.get(key);
+            if (tracked != null) {
+                // Estimates only grow within a window
+                tracked.count = estimate;
+                siftDown(tracked.position);
+            } else if (hottestSize < topK) {
+                hottest[hottestSize] = new HeapEntry(key, estimate, hottestSize);
+                hottestByKey.put(key, hottest[hottestSize]);
+                siftUp(hottestSize++);
+            } else if (topK > 0 && estimate > hottest[0].count) {
+                hottestByKey.remove(hottest[0].key);
+                hottest[0] = new HeapEntry(key, estimate, 0);
+                hottestByKey.put(key, hottest[0]);
+                siftDown(0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The estimated conflicts of the key over the last one to two windows
+     */
+    public long estimate(String key) {
+        lock.lock();
+        try {
+            roll();
+            return estimateLocked(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long estimateLocked(String key) {
+        long res = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            final int column = column(key, row);
+            res = Math.min(res, current[row][column] + previous[row][column]);
+        }
+        return res;
+    }
+
+    /**
+     * @return The conflicts recorded over the last one to two windows, whatever the key
+     */
+    public long getTotal() {
+        lock.lock();
+        try {
+            roll();
+            return currentTotal + previousTotal;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Up to topK keys with their estimated conflicts, hottest first
+     */
+    public List<HotKey> getHottestKeys() {
+        lock.lock();
+        try {
+            roll();
+            final List<HotKey> res = new ArrayList<>(hottestSize);
+            for (int i = 0; i < hottestSize; i++) {
+                res.add(new HotKey(hottest[i].key, hottest[i].count));
+            }
+            res.sort(Comparator.comparingLong(HotKey::getConflicts).reversed().thenComparing(HotKey::getKey));
+            return res;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String report() {
+        final List<HotKey> hottestKeys = getHottestKeys();
+        final long total = getTotal();
+        final StringBuilder res = new StringBuilder(String.format("%d lock conflicts over the last %d to %d s, hottest keys:%n",
+                total, Duration.ofNanos(windowNanos).getSeconds(), Duration.ofNanos(2 * windowNanos).getSeconds()));
+        hottestKeys.forEach(hotKey -> res.append(String.format("%10d %6.1f%%  %s%n",
+                hotKey.conflicts, total == 0 ? 0 : 100.0 * hotKey.conflicts / total, hotKey.key)));
+        return res.toString();
+    }
+
+    // Starts a new window when the current one is over, forgetting the previous one
+    private void roll() {
+        final long elapsed = System.nanoTime() - windowStart;
+        if (elapsed < windowNanos) {
+            return;
+        }
+        final long[][] recycled = previous;
+        if (elapsed < 2 * windowNanos) {
+            previous = current;
+            previousTotal = currentTotal;
+            current = recycled;
+            windowStart += windowNanos;
+        } else {
+            clear(previous);
+            previousTotal = 0;
+            windowStart = System.nanoTime();
+        }
+        clear(current);
+        currentTotal = 0;
+        // Estimates of the hottest keys shrink with the window that has been dropped: rebuilding the heap
+        int kept = 0;
+        for (int i = 0; i < hottestSize; i++) {
+            final HeapEntry entry = hottest[i];
+            entry.count = estimateLocked(entry.key);
+            if (entry.count == 0) {
+                hottestByKey.remove(entry.key);
+            } else {
+                entry.position = kept;
+                hottest[kept++] = entry;
+            }
+        }
+        Arrays.fill(hottest, kept, hottestSize, null);
+        hottestSize = kept;
+        for (int i = hottestSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftUp(int position) {
+        final HeapEntry entry = hottest[position];
+        while (position > 0) {
+            final int parent = (position - 1) / 2;
+            if (hottest[parent].count <= entry.count) {
+                break;
+            }
+            place(hottest[parent], position);
+            position = parent;
+        }
+        place(entry, position);
+    }
+
+    private void siftDown(int position) {
+        final HeapEntry entry = hottest[position];
+        while (2 * position + 1 < hottestSize) {
+            int child = 2 * position + 1;
+            if (child + 1 < hottestSize && hottest[child + 1].count < hottest[child].count) {
+                child++;
+            }
+            if (entry.count <= hottest[child].count) {
+                break;
+            }
+            place(hottest[child], position);
+            position = child;
+        }
+        place(entry, position);
+    }
+
+    private void place(HeapEntry entry, int position) {
+        hottest[position] = entry;
+        entry.position = position;
+    }
+
+    private static void clear(long[][] sketch) {
+        for (long[] row : sketch) {
+            Arrays.fill(row, 0);
+        }
+    }
+
+    // Seeded FNV-1a over the key's chars, then the murmur3 finalizer to spread the bits
+    private int column(String key, int row) {
+        long h = seeds[row];
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return Math.floorMod(h ^ (h >>> 33), width);
+    }
+
+    private static final class HeapEntry {
+        private final String key;
+        private long count;
+        private int position;
+
+        private HeapEntry(String key, long count, int position) {
+            this.key = key;
+            this.count = count;
+            this.position = position;
+        }
+    }
+
+    public static final class HotKey {
+        private final String key;
+        private final long conflicts;
+
+        HotKey(String key, long conflicts) {
+            this.key = key;
+            this.conflicts = conflicts;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The estimated conflicts over the last one to two windows
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + conflicts;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only, line based {@link RecoveryLog}. Every record is synced to disk before the corresponding commit step proceeds.
+ */
+public class FileRecoveryLog implements RecoveryLog {
+    private static final String PREPARED = "PREPARED";
+    private static final String COMMITTED = "COMMITTED";
+    private static final String COMMIT_FAILED = "COMMIT_FAILED";
+    private static final String COMPLETED = "COMPLETED";
+
+    private final Path file;
+    // Not a monitor: a virtual thread blocking on the disk sync while holding a monitor would pin its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public FileRecoveryLog(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void prepared(String transactionId, List<String> units) {
+        append(transactionId, PREPARED, String.join(",", units));
+    }
+
+    @Override
+    public void committed(String transactionId, String unit) {
+        append(transactionId, COMMITTED, unit);
+    }
+
+    @Override
+    public void commitFailed(String transactionId, String unit, Exception cause) {
+        append(transactionId, COMMIT_FAILED, unit);
+    }
+
+    @Override
+    public void completed(String transactionId) {
+        append(transactionId, COMPLETED, "");
+    }
+
+    private void append(String transactionId, String state, String details) {
+        final String line = String.join(" ", transactionId, state, details).trim() + System.lineSeparator();
+        lock.lock();
+        try {
+            Files.write(file, line.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The transactions prepared but never completed, with the units they have been committed on
+     */
+    public Map<String, List<String>> readIncomplete() {
+        final Map<String, List<String>> incomplete = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            if (!Files.exists(file)) {
+                return incomplete;
+            }
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                final List<String> fields = Arrays.asList(line.split(" "));
+                final String transactionId = fields.get(0);
+                switch (fields.get(1)) {
+                    case PREPARED:
+                        incomplete.put(transactionId, new ArrayList<>());
+                        break;
+                    case COMMITTED:
+                        incomplete.computeIfPresent(transactionId, (id, committed) -> {
+                            committed.add(fields.get(2));
+                            return committed;
+                        });
+                        break;
+                    case COMPLETED:
+                        incomplete.remove(transactionId);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        return incomplete;
+    }
+}
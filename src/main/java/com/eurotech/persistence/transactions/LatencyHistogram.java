@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-memory, thread-safe latency histogram: buckets double in width from 1 µs up to ~16.8 s ({@value #BUCKETS} bounded buckets),
+ * plus one for anything slower. Percentiles are therefore approximated by the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram {
+    public static final int BUCKETS = 25;
+    private static final long FIRST_BOUND_NANOS = 1_000;
+
+    // Last one counts latencies beyond the last bound
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    private static int bucket(long nanos) {
+        final long firstBounds = (nanos + FIRST_BOUND_NANOS - 1) / FIRST_BOUND_NANOS;
+        if (firstBounds <= 1) {
+            return 0;
+        }
+        return Math.min(BUCKETS, 64 - Long.numberOfLeadingZeros(firstBounds - 1));
+    }
+
+    /**
+     * @return The inclusive upper bound of the bucket, {@link Long#MAX_VALUE} for the last one
+     */
+    public static long getBucketUpperBoundNanos(int bucket) {
+        return bucket >= BUCKETS ? Long.MAX_VALUE : FIRST_BOUND_NANOS << bucket;
+    }
+
+    /**
+     * @return The count of each bucket ({@value #BUCKETS} + 1 of them), not cumulative. Taken bucket by bucket while recording goes on,
+     * so it may not add up exactly to {@link #getCount()}
+     */
+    public long[] getBucketCounts() {
+        final long[] res = new long[BUCKETS + 1];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = counts.get(i);
+        }
+        return res;
+    }
+
+    /**
+     * @return The count of a single bucket, not cumulative: unlike {@link #getBucketCounts()}, allocates nothing
+     */
+    public long getBucketCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getCount() {
+        long res = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            res += counts.get(i);
+        }
+        return res;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) getTotalNanos() / count;
+    }
+
+    /**
+     * @param percentile In [0, 100]
+     * @return The upper bound of the bucket holding the percentile (capped by the maximum recorded), 0 if nothing has been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        final long[] bucketCounts = getBucketCounts();
+        long count = 0;
+        for (long bucketCount : bucketCounts) {
+            count += bucketCount;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long cumulative = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulative += bucketCounts[i];
+            if (cumulative >= rank) {
+                return Math.min(getBucketUpperBoundNanos(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
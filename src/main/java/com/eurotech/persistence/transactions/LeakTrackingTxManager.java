@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link TxManager} tracking the contexts handed out by {@link #getSupplier()} with a {@link TxContextLeakDetector}.
+ * Transactions run by {@link #execute(TxConsumer, BiConsumer[])} always close their context, and are left alone.
+ */
+public class LeakTrackingTxManager implements TxManager {
+    private final TxManager delegate;
+    private final TxContextLeakDetector leakDetector;
+    private final Supplier<TxContext> txContextSupplier;
+
+    public LeakTrackingTxManager(TxManager delegate, TxContextLeakDetector leakDetector) {
+        this.delegate = delegate;
+        this.leakDetector = leakDetector;
+        this.txContextSupplier = leakDetector.track(delegate.getSupplier());
+    }
+
+    @Override
+    public <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        return delegate.execute(transactionConsumer, afterCommitConsumers);
+    }
+
+    @Override
+    public <R> R execute(Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        return delegate.execute(timeout, transactionConsumer, afterCommitConsumers);
+    }
+
+    @Override
+    public <R> R executeReadOnly(TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return delegate.executeReadOnly(transactionConsumer);
+    }
+
+    @Override
+    public <R> R executeReadOnly(Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return delegate.executeReadOnly(timeout, transactionConsumer);
+    }
+
+    @Override
+    public Supplier<TxContext> getSupplier() {
+        return txContextSupplier;
+    }
+
+    public TxContextLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+}
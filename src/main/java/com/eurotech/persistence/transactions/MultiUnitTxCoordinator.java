@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Coordinates one business operation spanning several persistence units, each with its own {@link TxManager},
+ * so that its latency is close to the slowest unit rather than to the sum of all of them.
+ * <p>
+ * Best-effort two-phase commit: first the operations of all units are executed in parallel, each one followed by
+ * {@link TxContext#prepare()}; if any of them fails, all units are rolled back (and the whole operation retried, if the failure is recoverable).
+ * Then all units are committed in parallel. A commit can still fail at this point, leaving the operation committed on some units only:
+ * the commit phase is tracked in a {@link RecoveryLog}, and a {@link PartialCommitException} is thrown.
+ */
+public class MultiUnitTxCoordinator {
+    private final Executor executor;
+    private final RecoveryLog recoveryLog;
+    private final int maxAttempts;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * @param executor    Runs the per-unit operations and commits, should allow for as many concurrent tasks as units
+     * @param recoveryLog Tracks the progress of commits
+     * @param maxAttempts Number of attempts for operations failing with recoverable exceptions before commit
+     */
+    public MultiUnitTxCoordinator(Executor executor, RecoveryLog recoveryLog, int maxAttempts) {
+        this.executor = executor;
+        this.recoveryLog = recoveryLog;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * The operations to be executed on a single persistence unit
+     *
+     * @param <R> The type of the value returned by the operations
+     */
+    public static class Unit<R> {
+        private final String name;
+        private final TxManager txManager;
+        private final TxManager.TxConsumer<R> transactionConsumer;
+
+        private Unit(String name, TxManager txManager, TxManager.TxConsumer<R> transactionConsumer) {
+            this.name = name;
+            this.txManager = txManager;
+            this.transactionConsumer = transactionConsumer;
+        }
+
+        /**
+         * @param name Identifies the unit in the {@link RecoveryLog}
+         */
+        public static <R> Unit<R> of(String name, TxManager txManager, TxManager.TxConsumer<R> transactionConsumer) {
+            return new Unit<>(name, txManager, transactionConsumer);
+        }
+    }
+
+    /**
+     * @return The values returned by the units' operations, in the same order as the units
+     */
+    public List<Object> execute(List<Unit<?>> units) {
+        int retry = 0;
+        while (true) {
+            final List<TxContext> txContexts = new ArrayList<>();
+            try {
+                // Inside the try, so that the contexts already obtained are closed if a later one cannot be
+                for (Unit<?> unit : units) {
+                    txContexts.add(unit.txManager.getSupplier().get());
+                }
+                final List<CompletableFuture<Object>> executions = new ArrayList<>();
+                for (int i = 0; i < units.size(); i++) {
+                    final Unit<?> unit = units.get(i);
+                    final TxContext txContext = txContexts.get(i);
+                    executions.add(runAsync(() -> {
+                        final Object res = unit.transactionConsumer.execute(txContext);
+                        txContext.prepare();
+                        return res;
+                    }));
+                }
+                final List<Exception> executionFailures = awaitFailures(executions);
+                if (!executionFailures.isEmpty()) {
+                    txContexts.forEach(TxContext::rollback);
+                    final Exception failure = executionFailures.get(0);
+                    final TxContext failedTxContext = txContexts.get(indexOfFailure(executions));
+                    if (!failedTxContext.isRecoverableException(failure) || ++retry >= maxAttempts) {
+                        throw failedTxContext.convertPersistenceException(failure);
+                    }
+                    logger.warn("Recoverable exception, retrying", failure);
+                    continue;
+                }
+                final List<Object> results = executions.stream().map(CompletableFuture::join).collect(Collectors.toList());
+                commitAll(units, txContexts);
+                return results;
+            } finally {
+                txContexts.forEach(txContext -> {
+                    try {
+                        txContext.close();
+                    } catch (IOException e) {
+                        logger.warn("Error closing transaction context", e);
+                    }
+                });
+            }
+        }
+    }
+
+    private void commitAll(List<Unit<?>> units, List<TxContext> txContexts) {
+        final String transactionId = UUID.randomUUID().toString();
+        final List<String> unitNames = units.stream().map(unit -> unit.name).collect(Collectors.toList());
+        recoveryLog.prepared(transactionId, unitNames);
+        final List<CompletableFuture<Object>> commits = new ArrayList<>();
+        for (int i = 0; i < units.size(); i++) {
+            final String unitName = unitNames.get(i);
+            final TxContext txContext = txContexts.get(i);
+            commits.add(runAsync(() -> {
+                try {
+                    txContext.commit();
+                } catch (RuntimeException e) {
+                    recoveryLog.commitFailed(transactionId, unitName, e);
+                    txContext.rollback();
+                    throw e;
+                }
+                recoveryLog.committed(transactionId, unitName);
+                return null;
+            }));
+        }
+        final List<Exception> commitFailures = awaitFailures(commits);
+        final List<String> committed = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        for (int i = 0; i < commits.size(); i++) {
+            (commits.get(i).isCompletedExceptionally() ? failed : committed).add(unitNames.get(i));
+        }
+        if (committed.isEmpty() || failed.isEmpty()) {
+            // Either way, all units are consistent
+            recoveryLog.completed(transactionId);
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+        final Exception failure = commitFailures.get(0);
+        if (committed.isEmpty()) {
+            throw txContexts.get(indexOfFailure(commits)).convertPersistenceException(failure);
+        }
+        logger.error("Transaction {} committed on {}, failed on {}: needs recovery", transactionId, committed, failed);
+        throw new PartialCommitException(transactionId, committed, failed, failure);
+    }
+
+    private CompletableFuture<Object> runAsync(Supplier<Object> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * Waits for all the given tasks to complete (successfully or not)
+     *
+     * @return the failures, in the same order as the tasks
+     */
+    private static List<Exception> awaitFailures(List<CompletableFuture<Object>> tasks) {
+        final List<Exception> failures = new ArrayList<>();
+        for (CompletableFuture<Object> task : tasks) {
+            final Throwable failure = task.handle((res, t) -> t).join();
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                failures.add(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+            }
+        }
+        return failures;
+    }
+
+    private static int indexOfFailure(List<CompletableFuture<Object>> tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).isCompletedExceptionally()) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No failed task");
+    }
+}
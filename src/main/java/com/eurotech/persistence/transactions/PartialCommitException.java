@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.List;
+
+/**
+ * Thrown by {@link MultiUnitTxCoordinator} when the transaction has been committed on some units only. The transaction is left
+ * incomplete in the {@link RecoveryLog}.
+ */
+public class PartialCommitException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String transactionId;
+    private final List<String> committedUnits;
+    private final List<String> failedUnits;
+
+    public PartialCommitException(String transactionId, List<String> committedUnits, List<String> failedUnits, Throwable cause) {
+        super(String.format("Transaction %s committed on %s, failed on %s", transactionId, committedUnits, failedUnits), cause);
+        this.transactionId = transactionId;
+        this.committedUnits = committedUnits;
+        this.failedUnits = failedUnits;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public List<String> getCommittedUnits() {
+        return committedUnits;
+    }
+
+    public List<String> getFailedUnits() {
+        return failedUnits;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExecutorService} running at most a number of tasks at a time on a delegate executor: each task waits for a permit on the thread
+ * it has been given by the delegate, so submitting never blocks. Meant for delegates creating a (virtual) thread per task,
+ * where the permits, rather than the threads, cap the concurrent transactions and hence the connections in use.
+ * <p>
+ * A task interrupted while waiting for its permit does not run: if submitted through {@link #submit(Runnable)} and alike, its future is cancelled.
+ * Tasks still waiting for their permit are returned by {@link #shutdownNow()}, as the ones not started yet by the delegate.
+ */
+public class PermitBoundedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    // Whoever removes a task from here, either the task itself once given a permit or shutdownNow(), decides whether it runs
+    private final Set<PermitTask> waiting = ConcurrentHashMap.newKeySet();
+
+    public PermitBoundedExecutorService(ExecutorService delegate, int maxConcurrentTasks) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrentTasks, true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(new PermitTask(command));
+    }
+
+    /**
+     * @return Number of tasks started and waiting for a permit
+     */
+    public int getWaitingTasks() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final List<Runnable> res = new ArrayList<>();
+        // Before the delegate interrupts them
+        for (PermitTask task : waiting) {
+            if (waiting.remove(task)) {
+                res.add(task.command);
+            }
+        }
+        for (Runnable notStarted : delegate.shutdownNow()) {
+            res.add(notStarted instanceof PermitTask ? ((PermitTask) notStarted).command : notStarted);
+        }
+        return res;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private class PermitTask implements Runnable {
+        private final Runnable command;
+
+        private PermitTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            waiting.add(this);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!waiting.remove(this)) {
+                    // Returned by shutdownNow()
+                    return;
+                }
+                if (command instanceof Future) {
+                    ((Future<?>) command).cancel(false);
+                    return;
+                }
+                throw new RejectedExecutionException("Interrupted while waiting for a permit", e);
+            }
+            try {
+                if (waiting.remove(this)) {
+                    command.run();
+                }
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
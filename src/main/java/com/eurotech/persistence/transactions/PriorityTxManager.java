@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link TxManager} limiting the concurrent transactions to a number of permits (normally the size of the connection pool),
+ * and granting the permits freed to the waiting transactions by weighted fair queueing over their {@link TxPriority}:
+ * when all priorities are waiting, each one gets a share of the permits proportional to its weight.
+ * <p>
+ * As a starvation guard, a transaction waiting longer than maxWait is granted the next permit regardless of its priority.
+ */
+public class PriorityTxManager implements TxManager {
+    private final TxManager delegate;
+    private final Map<TxPriority, Integer> weights;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<TxPriority, Queue<Waiter>> queues = new EnumMap<>(TxPriority.class);
+    // Stride scheduling: each grant advances the priority's pass by 1/weight, the waiting priority with the lowest pass is served first
+    private final Map<TxPriority, Double> passes = new EnumMap<>(TxPriority.class);
+    private final Map<TxPriority, AtomicLong> starvationGrants = new EnumMap<>(TxPriority.class);
+    private int availablePermits;
+
+    public PriorityTxManager(TxManager delegate, int permits) {
+        this(delegate, permits, Duration.ofSeconds(5));
+    }
+
+    public PriorityTxManager(TxManager delegate, int permits, Duration maxWait) {
+        this(delegate, permits, maxWait, defaultWeights());
+    }
+
+    /**
+     * @param permits Maximum number of concurrent transactions
+     * @param maxWait Waiting time after which a transaction is served before any other priority
+     * @param weights Relative share of the permits for each priority, when contended
+     */
+    public PriorityTxManager(TxManager delegate, int permits, Duration maxWait, Map<TxPriority, Integer> weights) {
+        this.delegate = delegate;
+        this.availablePermits = permits;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.weights = new EnumMap<>(weights);
+        for (TxPriority priority : TxPriority.values()) {
+            if (this.weights.getOrDefault(priority, 0) < 1) {
+                throw new IllegalArgumentException("Missing or non-positive weight for " + priority);
+            }
+            queues.put(priority, new ArrayDeque<>());
+            passes.put(priority, 0d);
+            starvationGrants.put(priority, new AtomicLong());
+        }
+    }
+
+    private static Map<TxPriority, Integer> defaultWeights() {
+        final Map<TxPriority, Integer> res = new EnumMap<>(TxPriority.class);
+        Arrays.stream(TxPriority.values()).forEach(priority -> res.put(priority, priority.getDefaultWeight()));
+        return res;
+    }
+
+    /**
+     * Executes the transaction with {@link TxPriority#INTERACTIVE} priority
+     */
+    @Override
+    public <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        return execute(TxPriority.INTERACTIVE, transactionConsumer, afterCommitConsumers);
+    }
+
+    /**
+     * Executes the transaction once granted a permit, holding it through all the attempts
+     */
+    public <R> R execute(TxPriority priority, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        acquire(priority, Optional.empty());
+        try {
+            return delegate.execute(transactionConsumer, afterCommitConsumers);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes the transaction with {@link TxPriority#INTERACTIVE} priority
+     */
+    @Override
+    public <R> R execute(Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        return execute(TxPriority.INTERACTIVE, timeout, transactionConsumer, afterCommitConsumers);
+    }
+
+    /**
+     * Executes the transaction once granted a permit, the time spent waiting for the permit counts towards the timeout
+     *
+     * @throws TxTimeoutException if no permit is granted within the timeout, or the transaction does not complete in the time left
+     */
+    public <R> R execute(TxPriority priority, Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        final Instant deadline = Instant.now().plus(timeout);
+        acquire(priority, Optional.of(deadline));
+        try {
+            return delegate.execute(Duration.between(Instant.now(), deadline), transactionConsumer, afterCommitConsumers);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes the read-only transaction with {@link TxPriority#INTERACTIVE} priority
+     */
+    @Override
+    public <R> R executeReadOnly(TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return executeReadOnly(TxPriority.INTERACTIVE, transactionConsumer);
+    }
+
+    /**
+     * Executes the read-only transaction once granted a permit, holding it through all the attempts
+     */
+    public <R> R executeReadOnly(TxPriority priority, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        acquire(priority, Optional.empty());
+        try {
+            return delegate.executeReadOnly(transactionConsumer);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Executes the read-only transaction with {@link TxPriority#INTERACTIVE} priority
+     */
+    @Override
+    public <R> R executeReadOnly(Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return executeReadOnly(TxPriority.INTERACTIVE, timeout, transactionConsumer);
+    }
+
+    /**
+     * Executes the read-only transaction once granted a permit, the time spent waiting for the permit counts towards the timeout
+     *
+     * @throws TxTimeoutException if no permit is granted within the timeout, or the transaction does not complete in the time left
+     */
+    public <R> R executeReadOnly(TxPriority priority, Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        final Instant deadline = Instant.now().plus(timeout);
+        acquire(priority, Optional.of(deadline));
+        try {
+            return delegate.executeReadOnly(Duration.between(Instant.now(), deadline), transactionConsumer);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return A view executing all the transactions with the given priority, e.g. for passing a bulk job a {@link TxManager}
+     */
+    public TxManager withPriority(TxPriority priority) {
+        return new TxManager() {
+            @Override
+            public <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+                return PriorityTxManager.this.execute(priority, transactionConsumer, afterCommitConsumers);
+            }
+
+            @Override
+            public <R> R execute(Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+                return PriorityTxManager.this.execute(priority, timeout, transactionConsumer, afterCommitConsumers);
+            }
+
+            @Override
+            public <R> R executeReadOnly(TxConsumer<R> transactionConsumer) throws RuntimeException {
+                return PriorityTxManager.this.executeReadOnly(priority, transactionConsumer);
+            }
+
+            @Override
+            public <R> R executeReadOnly(Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+                return PriorityTxManager.this.executeReadOnly(priority, timeout, transactionConsumer);
+            }
+
+            @Override
+            public Supplier<TxContext> getSupplier() {
+                return PriorityTxManager.this.getSupplier();
+            }
+        };
+    }
+
+    /**
+     * @return The delegate's supplier: hand-managed transactions are not scheduled
+     */
+    @Override
+    public Supplier<TxContext> getSupplier() {
+        return delegate.getSupplier();
+    }
+
+    public int getWaiting(TxPriority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return How many times a transaction of the given priority has been served by the starvation guard
+     */
+    public long getStarvationGrants(TxPriority priority) {
+        return starvationGrants.get(priority).get();
+    }
+
+    private void acquire(TxPriority priority, Optional<Instant> deadline) {
+        lock.lock();
+        try {
+            if (availablePermits > 0 && queues.values().stream().allMatch(Queue::isEmpty)) {
+                availablePermits--;
+                return;
+            }
+            final Queue<Waiter> queue = queues.get(priority);
+            if (queue.isEmpty()) {
+                // A priority that has been idle does not get to catch up on the grants it did not ask for
+                passes.put(priority, Math.max(passes.get(priority), minPassOfWaiting()));
+            }
+            final Waiter waiter = new Waiter(lock.newCondition());
+            queue.add(waiter);
+            dispatch();
+            while (!waiter.granted) {
+                try {
+                    if (!deadline.isPresent()) {
+                        waiter.condition.await();
+                    } else if (waiter.condition.awaitNanos(Duration.between(Instant.now(), deadline.get()).toNanos()) <= 0 && !waiter.granted) {
+                        queue.remove(waiter);
+                        throw new TxTimeoutException(deadline.get());
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        availablePermits++;
+                        dispatch();
+                    } else {
+                        queue.remove(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a transaction permit", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            availablePermits++;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (availablePermits > 0) {
+            final TxPriority next = nextPriority();
+            if (next == null) {
+                return;
+            }
+            final Waiter waiter = queues.get(next).poll();
+            passes.put(next, passes.get(next) + 1d / weights.get(next));
+            availablePermits--;
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private TxPriority nextPriority() {
+        final long now = System.nanoTime();
+        TxPriority starving = null;
+        TxPriority lowestPass = null;
+        for (TxPriority priority : TxPriority.values()) {
+            final Waiter head = queues.get(priority).peek();
+            if (head == null) {
+                continue;
+            }
+            if (now - head.since > maxWaitNanos && (starving == null || head.since < queues.get(starving).peek().since)) {
+                starving = priority;
+            }
+            if (lowestPass == null || passes.get(priority) < passes.get(lowestPass)) {
+                lowestPass = priority;
+            }
+        }
+        if (starving != null && starving != lowestPass) {
+            starvationGrants.get(starving).incrementAndGet();
+            return starving;
+        }
+        return lowestPass;
+    }
+
+    private double minPassOfWaiting() {
+        return Arrays.stream(TxPriority.values())
+                .filter(priority -> !queues.get(priority).isEmpty())
+                .mapToDouble(passes::get)
+                .min()
+                .orElse(passes.values().stream().mapToDouble(Double::doubleValue).max().orElse(0));
+    }
+
+    private static class Waiter {
+        private final Condition condition;
+        private final long since = System.nanoTime();
+        private boolean granted;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
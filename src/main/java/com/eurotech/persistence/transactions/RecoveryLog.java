@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.List;
+
+/**
+ * Records the progress of the commit phase of {@link MultiUnitTxCoordinator} transactions: a transaction logged as prepared
+ * and never completed has been committed only on some units, and needs to be recovered (e.g. compensated) by hand
+ */
+public interface RecoveryLog {
+
+    void prepared(String transactionId, List<String> units);
+
+    void committed(String transactionId, String unit);
+
+    void commitFailed(String transactionId, String unit, Exception cause);
+
+    void completed(String transactionId);
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link TxManager} routing read-only transactions to a replica, and everything else to the primary.
+ * <p>
+ * Replicas lag behind the primary: in order to let callers read their own writes, for readYourWritesWindow after
+ * a thread's last write its read-only transactions are still routed to the primary.
+ */
+public class RoutingTxManager implements TxManager {
+    private final TxManager primary;
+    private final TxManager replica;
+    private final long readYourWritesWindowNanos;
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+    /**
+     * @param primary               Used for all the transactions executed through {@link #execute(TxConsumer, BiConsumer[])}
+     * @param replica               Used for the transactions executed through {@link #executeReadOnly(TxConsumer)}
+     * @param readYourWritesWindow  How long after a write the same thread keeps reading from the primary
+     */
+    public RoutingTxManager(TxManager primary, TxManager replica, Duration readYourWritesWindow) {
+        this.primary = primary;
+        this.replica = replica;
+        this.readYourWritesWindowNanos = readYourWritesWindow.toNanos();
+    }
+
+    @Override
+    public <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        try {
+            return primary.execute(transactionConsumer, afterCommitConsumers);
+        } finally {
+            // Even failed transactions might have been committed (e.g. a failure in the last phase of the commit)
+            lastWrite.set(System.nanoTime());
+        }
+    }
+
+    @Override
+    public <R> R execute(Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        try {
+            return primary.execute(timeout, transactionConsumer, afterCommitConsumers);
+        } finally {
+            lastWrite.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * Executes a transaction that must not write, on the replica unless the current thread wrote recently.
+     * The transaction is rolled back, so that changes done within it are never persisted, on either side.
+     */
+    @Override
+    public <R> R executeReadOnly(TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return (isPinnedToPrimary() ? primary : replica).executeReadOnly(transactionConsumer);
+    }
+
+    @Override
+    public <R> R executeReadOnly(Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return (isPinnedToPrimary() ? primary : replica).executeReadOnly(timeout, transactionConsumer);
+    }
+
+    private boolean isPinnedToPrimary() {
+        final Long lastWriteNanos = lastWrite.get();
+        if (lastWriteNanos == null) {
+            return false;
+        }
+        if (System.nanoTime() - lastWriteNanos < readYourWritesWindowNanos) {
+            return true;
+        }
+        lastWrite.remove();
+        return false;
+    }
+
+    /**
+     * @return The primary's supplier: hand-managed transactions cannot be known to be read-only
+     */
+    @Override
+    public Supplier<TxContext> getSupplier() {
+        return primary.getSupplier();
+    }
+}
@@ -14,11 +14,27 @@ package com.eurotech.persistence.transactions;
 
 
 import java.io.Closeable;
+import java.time.Instant;
+import java.util.Optional;
 
 /**
  * Represents the in-flight transaction, most likely handled by a {@link TxManager}
  */
 public interface TxContext extends Closeable {
+    /**
+     * Sends pending changes to the database without committing them, so that failures (constraint violations, optimistic conflicts)
+     * surface before commit. Invoked by coordinators committing several transactions together, see {@link MultiUnitTxCoordinator}
+     */
+    default void prepare() {
+    }
+
+    /**
+     * Sets the instant by which the transaction must complete: contexts supporting it bound the time each statement may take,
+     * and fail statements issued past the deadline with {@link TxTimeoutException}. Set by {@link TxManager#execute(java.time.Duration, TxManager.TxConsumer, java.util.function.BiConsumer[])}
+     */
+    default void setDeadline(Instant deadline) {
+    }
+
     /**
      * Commit the current transaction. In most cases, this should be invoked only by  the {@link TxManager}
      */
@@ -35,6 +51,14 @@ public interface TxContext extends Closeable {
     RuntimeException convertPersistenceException(Exception e);
 
     boolean isRecoverableException(Exception ex);
+
+    /**
+     * @return For a lock conflict (optimistic or pessimistic), the key of the contended entity as "EntityClass#id", where it can be told
+     * from the exception. Fed by the {@link TxManager} to its {@link ContentionTracker}
+     */
+    default Optional<String> getContendedKey(Exception ex) {
+        return Optional.empty();
+    }
 }
 
 
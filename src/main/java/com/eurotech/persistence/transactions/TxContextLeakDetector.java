@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Detects the {@link TxContext}s handed out for manual management (see {@link TxManager#getSupplier()}) and never closed, which
+ * otherwise silently hold their {@link javax.persistence.EntityManager} and connection.
+ * <p>
+ * One context every samplingInterval is tracked: its acquisition site is recorded, and it is handed out behind a proxy implementing
+ * the same interfaces (so casts to the implementation class fail on tracked contexts). Once the proxy is garbage collected,
+ * a {@link Cleaner} reports it as leaked if it has not been closed, and by default rolls back and closes it.
+ * The contexts not sampled are handed out as they are, at the cost of a counter increment.
+ */
+public class TxContextLeakDetector {
+    public static final int DEFAULT_SAMPLING_INTERVAL = 100;
+    private static final int MAX_RECENT_LEAKS = 100;
+    private static final int MAX_REPORTED_FRAMES = 8;
+    // A single daemon thread shared by all detectors
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Map<Class<?>, Class<?>[]> INTERFACES = new ConcurrentHashMap<>();
+
+    private final int samplingInterval;
+    private final boolean closeLeaked;
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final Set<Acquisition> open = ConcurrentHashMap.newKeySet();
+    private final LongAdder tracked = new LongAdder();
+    private final LongAdder leaked = new LongAdder();
+    private final Deque<Acquisition> recentLeaks = new ArrayDeque<>();
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public TxContextLeakDetector() {
+        this(DEFAULT_SAMPLING_INTERVAL);
+    }
+
+    public TxContextLeakDetector(int samplingInterval) {
+        this(samplingInterval, true);
+    }
+
+    /**
+     * @param samplingInterval One context every samplingInterval is tracked: 1 tracks them all
+     * @param closeLeaked      Whether leaked contexts are rolled back and closed once detected, releasing their connection
+     */
+    public TxContextLeakDetector(int samplingInterval, boolean closeLeaked) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be positive: " + samplingInterval);
+        }
+        this.samplingInterval = samplingInterval;
+        this.closeLeaked = closeLeaked;
+    }
+
+    public Supplier<TxContext> track(Supplier<TxContext> txContextSupplier) {
+        return () -> track(txContextSupplier.get());
+    }
+
+    /**
+     * @return The context itself, or a tracked proxy of it if sampled
+     */
+    public TxContext track(TxContext txContext) {
+        if (acquisitions.getAndIncrement() % samplingInterval != 0) {
+            return txContext;
+        }
+        final Acquisition acquisition = new Acquisition(txContext);
+        final TxContext proxy = (TxContext) Proxy.newProxyInstance(txContext.getClass().getClassLoader(),
+                INTERFACES.computeIfAbsent(txContext.getClass(), TxContextLeakDetector::interfaces), acquisition);
+        open.add(acquisition);
+        tracked.increment();
+        // The action must not reach the proxy, or the proxy would never become unreachable: the acquisition is reached from it, not the other way round
+        CLEANER.register(proxy, acquisition::collected);
+        return proxy;
+    }
+
+    private static Class<?>[] interfaces(Class<?> clazz) {
+        final Set<Class<?>> res = new LinkedHashSet<>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            res.addAll(Arrays.asList(c.getInterfaces()));
+        }
+        return res.toArray(new Class<?>[0]);
+    }
+
+    public long getTrackedCount() {
+        return tracked.sum();
+    }
+
+    public long getLeakedCount() {
+        return leaked.sum();
+    }
+
+    /**
+     * @return The most recent leaks detected, newest first
+     */
+    public List<Acquisition> getRecentLeaks() {
+        synchronized (recentLeaks) {
+            return new ArrayList<>(recentLeaks);
+        }
+    }
+
+    /**
+     * @return The tracked contexts still open (not closed, nor collected yet) acquired longer than minAge ago, oldest first:
+     * leaks to be, or long transactions
+     */
+    public List<Acquisition> getOpen(Duration minAge) {
+        return open.stream()
+                .filter(acquisition -> acquisition.getAge().compareTo(minAge) >= 0)
+                .sorted((a, b) -> a.acquiredAt.compareTo(b.acquiredAt))
+                .collect(Collectors.toList());
+    }
+
+    public String report(Duration minAge) {
+        final StringBuilder res = new StringBuilder(String.format("%d contexts tracked out of %d acquired, %d leaked%n",
+                getTrackedCount(), acquisitions.get(), getLeakedCount()));
+        getRecentLeaks().forEach(acquisition -> res.append("Leaked: ").append(acquisition).append('\n'));
+        getOpen(minAge).forEach(acquisition -> res.append("Open: ").append(acquisition).append('\n'));
+        return res.toString();
+    }
+
+    /**
+     * A tracked context: where and when it has been acquired
+     */
+    public final class Acquisition implements InvocationHandler {
+        private final TxContext txContext;
+        private final Instant acquiredAt = Instant.now();
+        private final String threadName = Thread.currentThread().getName();
+        private final Throwable site = new Throwable("TxContext acquired here");
+        private volatile boolean closed = false;
+        private volatile Instant leakedAt;
+
+        private Acquisition(TxContext txContext) {
+            this.txContext = txContext;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    if (method.getParameterCount() == 1) {
+                        return proxy == args[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (method.getParameterCount() == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "close":
+                    if (method.getParameterCount() == 0) {
+                        closed = true;
+                        open.remove(this);
+                    }
+                    break;
+                default:
+            }
+            try {
+                return method.invoke(txContext, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void collected() {
+            if (closed) {
+                return;
+            }
+            leakedAt = Instant.now();
+            open.remove(this);
+            leaked.increment();
+            synchronized (recentLeaks) {
+                recentLeaks.addFirst(this);
+                if (recentLeaks.size() > MAX_RECENT_LEAKS) {
+                    recentLeaks.removeLast();
+                }
+            }
+            logger.error("TxContext acquired {} ago by thread {} has never been closed{}", getAge(), threadName, closeLeaked ? ", closing it" : "", site);
+            if (closeLeaked) {
+                try {
+                    txContext.rollback();
+                    txContext.close();
+                } catch (Exception e) {
+                    logger.warn("Failed to close the leaked TxContext", e);
+                }
+            }
+        }
+
+        public Instant getAcquiredAt() {
+            return acquiredAt;
+        }
+
+        /**
+         * @return How long the context has been open, up to its leak detection for leaked contexts
+         */
+        public Duration getAge() {
+            final Instant end = leakedAt;
+            return Duration.between(acquiredAt, end == null ? Instant.now() : end);
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        /**
+         * @return The stack of the acquisition, from the caller of the supplier
+         */
+        public StackTraceElement[] getSite() {
+            final StackTraceElement[] frames = site.getStackTrace();
+            int first = 0;
+            while (first < frames.length - 1 && isDetectorFrame(frames[first])) {
+                first++;
+            }
+            return Arrays.copyOfRange(frames, first, frames.length);
+        }
+
+        private boolean isDetectorFrame(StackTraceElement frame) {
+            return frame.getClassName().startsWith(TxContextLeakDetector.class.getName())
+                    || frame.getClassName().startsWith(LeakTrackingTxManager.class.getName());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("acquired %s ago by thread %s at %s", getAge(), threadName, Arrays.stream(getSite())
+                    .limit(MAX_REPORTED_FRAMES)
+                    .map(StackTraceElement::toString)
+                    .collect(Collectors.joining(" <- ")));
+        }
+    }
+}
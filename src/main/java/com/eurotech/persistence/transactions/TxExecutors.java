@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for running transactions, e.g. one per request. The number of concurrent transactions is capped, so that threads
+ * do not outnumber the connections available to them.
+ * <p>
+ * This is the implementation for JDKs without virtual threads: on JDK 21+ the multi-release jar provides one
+ * running each transaction on its own virtual thread.
+ */
+public final class TxExecutors {
+
+    private TxExecutors() {
+    }
+
+    /**
+     * @return Whether {@link #newTransactionExecutor(int)} runs transactions on virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return false;
+    }
+
+    /**
+     * @param maxConcurrentTransactions Normally the size of the connection pool
+     * @return An executor running at most maxConcurrentTransactions tasks at a time, on virtual threads when supported
+     */
+    public static ExecutorService newTransactionExecutor(int maxConcurrentTransactions) {
+        return newPlatformTransactionExecutor(maxConcurrentTransactions);
+    }
+
+    /**
+     * @return An executor running at most maxConcurrentTransactions tasks at a time, on as many platform threads
+     */
+    public static ExecutorService newPlatformTransactionExecutor(int maxConcurrentTransactions) {
+        return Executors.newFixedThreadPool(maxConcurrentTransactions);
+    }
+}
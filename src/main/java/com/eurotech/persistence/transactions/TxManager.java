@@ -13,7 +13,11 @@
 package com.eurotech.persistence.transactions;
 
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 
 /**
@@ -31,12 +35,73 @@ public interface TxManager {
      */
     <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException;
 
+    /**
+     * As {@link #execute(TxConsumer, BiConsumer[])}, but the transaction must complete within the given timeout: statements are issued
+     * with query and lock timeouts bounded by the time left, and no further attempt is made when the time left would not be enough.
+     *
+     * The default implementation only sets the deadline on the context of each attempt, see {@link TxContext#setDeadline(Instant)}:
+     * attempts are not stopped once the time is over.
+     *
+     * @throws TxTimeoutException if the transaction could not complete in time (and has been rolled back)
+     */
+    default <R> R execute(Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+        return execute(withDeadline(Instant.now().plus(timeout), transactionConsumer), afterCommitConsumers);
+    }
+
+    /**
+     * Executes a transaction that must not write: it is rolled back instead of committed, so that changes done within it are never persisted.
+     * Implementations may route it differently, e.g. to a read replica.
+     * <p>
+     * The default implementation runs the transaction once, in a context obtained from {@link #getSupplier()}
+     */
+    default <R> R executeReadOnly(TxConsumer<R> transactionConsumer) throws RuntimeException {
+        try (TxContext txContext = getSupplier().get()) {
+            try {
+                return transactionConsumer.execute(txContext);
+            } finally {
+                txContext.rollback();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * As {@link #executeReadOnly(TxConsumer)}, but the transaction must complete within the given timeout,
+     * as for {@link #execute(Duration, TxConsumer, BiConsumer[])}
+     */
+    default <R> R executeReadOnly(Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return executeReadOnly(withDeadline(Instant.now().plus(timeout), transactionConsumer));
+    }
+
+    /**
+     * Executes the same operations over many independent items: items are split in chunks, each chunk processed in its own transaction,
+     * with chunks running in parallel. Failures of single items are reported, without stopping the processing of the others.
+     *
+     * @param items        The items to be processed
+     * @param itemConsumer The operations to be executed for each item, within the transaction of its chunk
+     * @param options      Chunk size, parallelism and ordering of the results
+     * @param <T>          The type of the items
+     * @param <R>          The type of the value returned for each item
+     * @return the results of the items processed successfully, and the failures of the others
+     */
+    default <T, R> BulkResult<T, R> executeAll(Iterable<T> items, BiFunction<TxContext, T, R> itemConsumer, BulkOptions options) {
+        return new BulkExecutor<>(this, itemConsumer, options).executeAll(items);
+    }
+
     /**
      * @return A {@link Supplier} for a {@link TxContext}. Method provided only to support legacy implementations,
      * use {@link #execute(TxConsumer, BiConsumer[])} whenever possible
      */
     Supplier<TxContext> getSupplier();
 
+    private static <R> TxConsumer<R> withDeadline(Instant deadline, TxConsumer<R> transactionConsumer) {
+        return txContext -> {
+            txContext.setDeadline(deadline);
+            return transactionConsumer.execute(txContext);
+        };
+    }
+
     /**
      * This interface is provided only in order to supported the checked exception {@link RuntimeException},
      * otherwise it could have been a simple {@link java.util.function.Function}
@@ -12,36 +12,132 @@
  *******************************************************************************/
 package com.eurotech.persistence.transactions;
 
+import com.eurotech.persistence.transactions.jfr.TransactionCommitEvent;
+import com.eurotech.persistence.transactions.jfr.TransactionEvent;
+import com.eurotech.persistence.transactions.jfr.TransactionRetryEvent;
+import com.eurotech.persistence.transactions.metrics.TransactionMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 public class TxManagerImpl implements TxManager {
 
     public TxManagerImpl(Supplier<TxContext> txContextSupplier, Integer maxInsertAttempts) {
+        this(txContextSupplier, maxInsertAttempts, Optional.empty(), Optional.empty());
+    }
+
+    /**
+     * @param contentionTracker Counts the lock conflicts failing transaction attempts, per contended entity
+     */
+    public TxManagerImpl(Supplier<TxContext> txContextSupplier, Integer maxInsertAttempts, ContentionTracker contentionTracker) {
+        this(txContextSupplier, maxInsertAttempts, Optional.of(contentionTracker), Optional.empty());
+    }
+
+    /**
+     * @param contentionTracker Counts the lock conflicts failing transaction attempts, per contended entity
+     * @param metrics           Counts the transactions, and times their phases
+     */
+    public TxManagerImpl(Supplier<TxContext> txContextSupplier, Integer maxInsertAttempts, Optional<ContentionTracker> contentionTracker, Optional<TransactionMetrics> metrics) {
         this.txContextSupplier = txContextSupplier;
         this.maxInsertAttempts = maxInsertAttempts;
+        this.contentionTracker = contentionTracker;
+        this.metrics = metrics;
     }
 
     @Override
     public <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... additionalTxConsumers)
             throws RuntimeException {
+        return doExecute(Optional.empty(), false, transactionConsumer, additionalTxConsumers);
+    }
+
+    @Override
+    public <R> R execute(Duration timeout, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... additionalTxConsumers)
+            throws RuntimeException {
+        return doExecute(Optional.of(Instant.now().plus(timeout)), false, transactionConsumer, additionalTxConsumers);
+    }
+
+    /**
+     * As {@link #execute(TxConsumer, BiConsumer[])}, retries included, but the transaction is rolled back instead of committed
+     */
+    @Override
+    public <R> R executeReadOnly(TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return doExecute(Optional.empty(), true, transactionConsumer);
+    }
+
+    @Override
+    public <R> R executeReadOnly(Duration timeout, TxConsumer<R> transactionConsumer) throws RuntimeException {
+        return doExecute(Optional.of(Instant.now().plus(timeout)), true, transactionConsumer);
+    }
+
+    private <R> R doExecute(Optional<Instant> deadline, boolean readOnly, TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... additionalTxConsumers)
+            throws RuntimeException {
         int retry = 0;
-        final TxContext txContext = txContextSupplier.get();
+        final long start = System.nanoTime();
+        final TransactionEvent transactionEvent = new TransactionEvent();
+        transactionEvent.begin();
+        TxContext txContext = null;
         try {
+            metrics.ifPresent(TransactionMetrics::transactionStarted);
+            txContext = txContextSupplier.get();
+            deadline.ifPresent(txContext::setDeadline);
             while (true) {
+                final Instant attemptStart = Instant.now();
+                final TransactionRetryEvent retryEvent = new TransactionRetryEvent();
+                retryEvent.begin();
                 try {
-                    final R res = transactionConsumer.execute(txContext);
-                    Arrays.stream(additionalTxConsumers)
-                            .forEach(additionalTxConsumer -> additionalTxConsumer.accept(txContext, res));
-                    txContext.commit();
+                    final long attemptStartNanos = System.nanoTime();
+                    final R res;
+                    try {
+                        res = transactionConsumer.execute(txContext);
+                        for (BiConsumer<TxContext, R> additionalTxConsumer : additionalTxConsumers) {
+                            additionalTxConsumer.accept(txContext, res);
+                        }
+                    } finally {
+                        recordPhase(TransactionMetrics.Phase.EXECUTE, attemptStartNanos);
+                    }
+                    if (readOnly) {
+                        final long rollbackStartNanos = System.nanoTime();
+                        try {
+                            txContext.rollback();
+                        } finally {
+                            recordPhase(TransactionMetrics.Phase.ROLLBACK, rollbackStartNanos);
+                        }
+                        transactionEvent.outcome = TransactionEvent.ROLLED_BACK;
+                        return res;
+                    }
+                    final long commitStartNanos = System.nanoTime();
+                    try {
+                        commit(txContext, retry + 1);
+                    } finally {
+                        recordPhase(TransactionMetrics.Phase.COMMIT, commitStartNanos);
+                    }
+                    transactionEvent.outcome = TransactionEvent.COMMITTED;
                     return res;
                 } catch (Exception ex) {
+                    final long rollbackStartNanos = System.nanoTime();
                     txContext.rollback();
+                    recordPhase(TransactionMetrics.Phase.ROLLBACK, rollbackStartNanos);
+                    metrics.ifPresent(TransactionMetrics::aborted);
+                    if (contentionTracker.isPresent()) {
+                        recordContention(contentionTracker.get(), txContext, ex);
+                    }
+                    transactionEvent.exceptionClass = ex.getClass().getName();
+                    if (ex instanceof TxTimeoutException) {
+                        transactionEvent.outcome = TransactionEvent.TIMED_OUT;
+                        throw (TxTimeoutException) ex;
+                    }
+                    final Instant now = Instant.now();
+                    if (deadline.isPresent() && !now.isBefore(deadline.get())) {
+                        // Whatever the failure, most likely caused by the statement timeouts
+                        transactionEvent.outcome = TransactionEvent.TIMED_OUT;
+                        throw new TxTimeoutException(deadline.get(), ex);
+                    }
                     if (!txContext.isRecoverableException(ex)) {
                         throw txContext.convertPersistenceException(ex);
                     }
@@ -49,20 +145,91 @@ public class TxManagerImpl implements TxManager {
                         logger.error("Recoverable exception, but retry attempts exceeded, failing", ex);
                         throw txContext.convertPersistenceException(ex);
                     }
+                    if (deadline.isPresent() && now.plus(Duration.between(attemptStart, now)).isAfter(deadline.get())) {
+                        logger.error("Recoverable exception, but another attempt would not complete in time, failing", ex);
+                        transactionEvent.outcome = TransactionEvent.TIMED_OUT;
+                        throw new TxTimeoutException(deadline.get(), ex);
+                    }
                     logger.warn("Recoverable exception, retrying", ex);
+                    metrics.ifPresent(TransactionMetrics::retried);
+                    retryEvent.end();
+                    if (retryEvent.shouldCommit()) {
+                        retryEvent.attempt = retry;
+                        retryEvent.exceptionClass = ex.getClass().getName();
+                        retryEvent.rootCauseClass = rootCause(ex).getClass().getName();
+                        retryEvent.commit();
+                    }
                 }
             }
         } finally {
             try {
-                txContext.close();
+                if (txContext != null) {
+                    txContext.close();
+                }
             } catch (IOException e) {
                 throw new RuntimeException(e);
+            } finally {
+                if (metrics.isPresent()) {
+                    metrics.get().transactionEnded(TransactionMetrics.Outcome.valueOf(Optional.ofNullable(transactionEvent.outcome).orElse(TransactionEvent.FAILED)),
+                            System.nanoTime() - start);
+                }
+                transactionEvent.end();
+                if (transactionEvent.shouldCommit()) {
+                    if (transactionEvent.outcome == null) {
+                        transactionEvent.outcome = TransactionEvent.FAILED;
+                    } else if (transactionEvent.outcome.equals(TransactionEvent.COMMITTED) || transactionEvent.outcome.equals(TransactionEvent.ROLLED_BACK)) {
+                        // Left by a retried attempt
+                        transactionEvent.exceptionClass = null;
+                    }
+                    transactionEvent.retries = retry;
+                    transactionEvent.commit();
+                }
+            }
+        }
+    }
+
+    private void recordPhase(TransactionMetrics.Phase phase, long startNanos) {
+        if (metrics.isPresent()) {
+            metrics.get().phaseCompleted(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    // Never masks the failure being handled
+    private void recordContention(ContentionTracker tracker, TxContext txContext, Exception ex) {
+        try {
+            txContext.getContendedKey(ex).ifPresent(tracker::record);
+        } catch (RuntimeException e) {
+            logger.debug("Could not tell the contended entity", e);
+        }
+    }
+
+    private static void commit(TxContext txContext, int attempt) {
+        final TransactionCommitEvent commitEvent = new TransactionCommitEvent();
+        commitEvent.begin();
+        try {
+            txContext.commit();
+            commitEvent.succeeded = true;
+        } finally {
+            commitEvent.end();
+            if (commitEvent.shouldCommit()) {
+                commitEvent.attempt = attempt;
+                commitEvent.commit();
             }
         }
     }
 
+    private static Throwable rootCause(Throwable throwable) {
+        Throwable res = throwable;
+        while (res.getCause() != null && res.getCause() != res) {
+            res = res.getCause();
+        }
+        return res;
+    }
+
     private final Supplier<TxContext> txContextSupplier;
     private final int maxInsertAttempts;
+    private final Optional<ContentionTracker> contentionTracker;
+    private final Optional<TransactionMetrics> metrics;
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -70,4 +237,12 @@ public class TxManagerImpl implements TxManager {
     public Supplier<TxContext> getSupplier() {
         return txContextSupplier;
     }
+
+    public Optional<ContentionTracker> getContentionTracker() {
+        return contentionTracker;
+    }
+
+    public Optional<TransactionMetrics> getMetrics() {
+        return metrics;
+    }
 }
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+/**
+ * Priority of a transaction executed through a {@link PriorityTxManager}
+ */
+public enum TxPriority {
+    /**
+     * User-facing work, waiting for the result
+     */
+    INTERACTIVE(4),
+    /**
+     * Background work (imports, maintenance jobs), yielding to interactive work
+     */
+    BATCH(1);
+
+    private final int defaultWeight;
+
+    TxPriority(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * @return The share of the connections granted to the priority when all priorities are waiting, relative to the others
+     */
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+}
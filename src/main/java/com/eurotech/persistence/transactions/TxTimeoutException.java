@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.time.Instant;
+
+/**
+ * Thrown when a transaction executed through {@link TxManager#execute(java.time.Duration, TxManager.TxConsumer, java.util.function.BiConsumer[])}
+ * cannot complete by its deadline. The transaction has been rolled back.
+ */
+public class TxTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Instant deadline;
+
+    public TxTimeoutException(Instant deadline) {
+        this(deadline, null);
+    }
+
+    public TxTimeoutException(Instant deadline, Throwable cause) {
+        super("Transaction deadline " + deadline + " exceeded", cause);
+        this.deadline = deadline;
+    }
+
+    public Instant getDeadline() {
+        return deadline;
+    }
+}
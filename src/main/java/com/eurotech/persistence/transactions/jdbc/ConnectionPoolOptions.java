@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jdbc;
+
+import java.time.Duration;
+
+/**
+ * Options for {@link PooledDataSource}
+ */
+public class ConnectionPoolOptions {
+    private int minSize = 2;
+    private int maxSize = 10;
+    private Duration acquisitionTimeout = Duration.ofSeconds(30);
+    private Duration validationInterval = Duration.ofSeconds(30);
+    private Duration validationTimeout = Duration.ofSeconds(5);
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    private int statementCacheSize = 50;
+
+    public static ConnectionPoolOptions defaults() {
+        return new ConnectionPoolOptions();
+    }
+
+    private ConnectionPoolOptions() {
+    }
+
+    /**
+     * @param minSize Connections opened upfront, and kept open however long idle (default 2)
+     */
+    public ConnectionPoolOptions minSize(int minSize) {
+        if (minSize < 0) {
+            throw new IllegalArgumentException("minSize must not be negative");
+        }
+        this.minSize = minSize;
+        return this;
+    }
+
+    /**
+     * @param maxSize Maximum number of connections, idle or in use (default 10)
+     */
+    public ConnectionPoolOptions maxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * @param acquisitionTimeout How long to wait for a connection when all are in use, before failing (default 30 s)
+     */
+    public ConnectionPoolOptions acquisitionTimeout(Duration acquisitionTimeout) {
+        this.acquisitionTimeout = acquisitionTimeout;
+        return this;
+    }
+
+    /**
+     * @param validationInterval Idle connections are validated (see {@link java.sql.Connection#isValid(int)}) before being handed out when
+     *                           idle for longer than this (default 30 s): {@link Duration#ZERO} validates them at every acquisition
+     */
+    public ConnectionPoolOptions validationInterval(Duration validationInterval) {
+        this.validationInterval = validationInterval;
+        return this;
+    }
+
+    /**
+     * @param validationTimeout How long a validation may take before the connection is considered broken (default 5 s)
+     */
+    public ConnectionPoolOptions validationTimeout(Duration validationTimeout) {
+        this.validationTimeout = validationTimeout;
+        return this;
+    }
+
+    /**
+     * @param idleTimeout Connections beyond the minimum size idle for longer than this are closed (default 10 min)
+     */
+    public ConnectionPoolOptions idleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    /**
+     * @param statementCacheSize Prepared statements kept open by each connection for reuse, least recently used ones closed first
+     *                           (default 50): 0 disables the cache
+     */
+    public ConnectionPoolOptions statementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        }
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getAcquisitionTimeout() {
+        return acquisitionTimeout;
+    }
+
+    public Duration getValidationInterval() {
+        return validationInterval;
+    }
+
+    public Duration getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+}
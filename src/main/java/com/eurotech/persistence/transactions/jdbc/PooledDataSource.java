@@ -0,0 +1,603 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jdbc;
+
+import com.eurotech.persistence.transactions.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of JDBC connections, with a cache of prepared statements for each connection. Meant to be handed to JPA as the
+ * non-JTA data source (see {@link org.eclipse.persistence.config.PersistenceUnitProperties#NON_JTA_DATASOURCE}), EclipseLink
+ * then acquiring a connection for each transaction (or read outside of one) and closing it afterwards.
+ * <p>
+ * Waiting connections are served in arrival order, idle connections most recently used first (so that those beyond the
+ * minimum size become idle long enough to be closed). Acquisition times, including waits, are recorded for metrics.
+ * <p>
+ * Connections and statements are handed out behind proxies returning them to the pool and cache when closed. Statements prepared
+ * with anything but the SQL alone are not cached. Statements left open are closed with their connection, whose settings (isolation,
+ * read-only, catalog, schema and holdability) are restored when it goes back to the pool.
+ */
+public class PooledDataSource implements DataSource, Closeable {
+    // Statement settings reset when the statement goes back to the cache: statements changed otherwise are closed instead
+    private static final Set<String> RESETTABLE_SETTINGS = new HashSet<>(Arrays.asList("setQueryTimeout", "setMaxRows", "setFetchSize"));
+    private static final Set<String> OTHER_SETTINGS = new HashSet<>(Arrays.asList("setMaxFieldSize", "setLargeMaxRows", "setEscapeProcessing",
+            "setCursorName", "setFetchDirection", "setPoolable", "closeOnCompletion"));
+    // Connection settings restored when the connection goes back to the pool
+    private static final Set<String> CONNECTION_SETTINGS = new HashSet<>(Arrays.asList("setTransactionIsolation", "setReadOnly", "setCatalog",
+            "setSchema", "setHoldability"));
+    private static final Set<String> STATEMENT_FACTORIES = new HashSet<>(Arrays.asList("createStatement", "prepareStatement", "prepareCall"));
+    // SQL state class of connection exceptions: the connection is not given back to the pool
+    private static final String CONNECTION_EXCEPTION_CLASS = "08";
+
+    private final String url;
+    private final Properties connectionProperties = new Properties();
+    private final ConnectionPoolOptions options;
+    private final Semaphore permits;
+    // Most recently used first
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LatencyHistogram acquisitionTime = new LatencyHistogram();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquisitionTimeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+    private volatile PrintWriter logWriter;
+    private volatile int loginTimeout;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public PooledDataSource(String url, String user, String password) {
+        this(url, user, password, ConnectionPoolOptions.defaults());
+    }
+
+    /**
+     * Opens the minimum number of connections right away: failures are logged, and retried by the idle connection eviction
+     */
+    public PooledDataSource(String url, String user, String password, ConnectionPoolOptions options) {
+        if (options.getMinSize() > options.getMaxSize()) {
+            throw new IllegalArgumentException("minSize must not exceed maxSize");
+        }
+        this.url = url;
+        if (user != null) {
+            connectionProperties.setProperty("user", user);
+        }
+        if (password != null) {
+            connectionProperties.setProperty("password", password);
+        }
+        this.options = options;
+        this.permits = new Semaphore(options.getMaxSize(), true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long evictionPeriodMillis = Math.max(1000, Math.min(30_000, options.getIdleTimeout().toMillis() / 2));
+        evictor.scheduleWithFixedDelay(this::evictIdle, evictionPeriodMillis, evictionPeriodMillis, TimeUnit.MILLISECONDS);
+        fill();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool closed");
+        }
+        final long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(options.getAcquisitionTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                acquisitionTime.record(System.nanoTime() - start);
+                acquisitionTimeouts.increment();
+                throw new SQLTransientConnectionException(String.format("No connection available within %s, %d in use",
+                        options.getAcquisitionTimeout(), getActiveCount()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            final PooledConnection pooledConnection = borrow();
+            acquisitionTime.record(System.nanoTime() - start);
+            acquisitions.increment();
+            return pooledConnection.handle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        final long validationIntervalNanos = options.getValidationInterval().toNanos();
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idle.pollFirst()) != null) {
+            if (System.nanoTime() - pooledConnection.lastUsedNanos < validationIntervalNanos || pooledConnection.isValid()) {
+                return pooledConnection;
+            }
+            validationFailures.increment();
+            logger.warn("Discarding a connection failing validation");
+            pooledConnection.closePhysical();
+        }
+        return newConnection();
+    }
+
+    private PooledConnection newConnection() throws SQLException {
+        final Connection physical = DriverManager.getConnection(url, connectionProperties);
+        final PooledConnection res;
+        try {
+            res = new PooledConnection(physical);
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(physical);
+            throw e;
+        }
+        open.incrementAndGet();
+        created.increment();
+        return res;
+    }
+
+    private void fill() {
+        while (!closed && open.get() < options.getMinSize()) {
+            try {
+                idle.offerLast(newConnection());
+            } catch (SQLException e) {
+                logger.warn("Failed to open the minimum number of connections", e);
+                return;
+            }
+        }
+    }
+
+    // Closes the connections idle for too long, oldest first, down to the minimum size, then opens any missing to reach it
+    private void evictIdle() {
+        final long now = System.nanoTime();
+        final long idleTimeoutNanos = options.getIdleTimeout().toNanos();
+        final Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && open.get() > options.getMinSize()) {
+            final PooledConnection pooledConnection = oldestFirst.next();
+            // Not removed if just borrowed
+            if (now - pooledConnection.lastUsedNanos > idleTimeoutNanos && idle.removeLastOccurrence(pooledConnection)) {
+                pooledConnection.closePhysical();
+                evicted.increment();
+            }
+        }
+        fill();
+    }
+
+    /**
+     * Closes the idle connections, the ones in use being closed once returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idle.pollFirst()) != null) {
+            pooledConnection.closePhysical();
+        }
+    }
+
+    public ConnectionPoolOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return The connections handed out and not returned yet
+     */
+    public int getActiveCount() {
+        return options.getMaxSize() - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return The threads waiting for a connection (an estimate)
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * @return The time taken to hand out connections (or to fail doing so), waits for a connection to be returned included
+     */
+    public LatencyHistogram getAcquisitionTime() {
+        return acquisitionTime;
+    }
+
+    public long getAcquisitionCount() {
+        return acquisitions.sum();
+    }
+
+    public long getAcquisitionTimeoutCount() {
+        return acquisitionTimeouts.sum();
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.sum();
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    /**
+     * Pooled connections all use the credentials of the pool: asking for those (as JPA does with the user and password of the persistence unit)
+     * is the same as {@link #getConnection()}, asking for others is not supported
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (Objects.equals(username, connectionProperties.getProperty("user")) && Objects.equals(password, connectionProperties.getProperty("password"))) {
+            return getConnection();
+        }
+        throw new SQLFeatureNotSupportedException("Pooled connections all use the credentials of the pool");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("Logging through slf4j");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A physical connection, with its statement cache. Used by a single thread at a time: the one it is handed out to, or the evictor while idle
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final Map<String, PreparedStatement> statements;
+        private final int transactionIsolation;
+        private final boolean readOnly;
+        private final String catalog;
+        private final String schema;
+        private final int holdability;
+        // Settings changed by the current user of the connection
+        private final Set<String> changedSettings = new HashSet<>();
+        private long lastUsedNanos = System.nanoTime();
+        private boolean broken = false;
+
+        PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.transactionIsolation = physical.getTransactionIsolation();
+            this.readOnly = physical.isReadOnly();
+            this.catalog = physical.getCatalog();
+            this.schema = physical.getSchema();
+            this.holdability = physical.getHoldability();
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > options.getStatementCacheSize()) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        boolean isValid() {
+            try {
+                return physical.isValid((int) Math.max(1, options.getValidationTimeout().getSeconds()));
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        Connection handle() {
+            broken = false;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new ConnectionHandle());
+        }
+
+        private void release() {
+            try {
+                if (!broken && !physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (!broken) {
+                    restoreSettings();
+                }
+                physical.clearWarnings();
+            } catch (SQLException e) {
+                broken = true;
+            }
+            lastUsedNanos = System.nanoTime();
+            if (broken || closed) {
+                closePhysical();
+            } else {
+                idle.offerFirst(this);
+            }
+            permits.release();
+        }
+
+        // Outside of a transaction, as some settings (e.g. read-only) cannot be changed within one
+        private void restoreSettings() throws SQLException {
+            for (String setting : changedSettings) {
+                switch (setting) {
+                    case "setTransactionIsolation":
+                        physical.setTransactionIsolation(transactionIsolation);
+                        break;
+                    case "setReadOnly":
+                        physical.setReadOnly(readOnly);
+                        break;
+                    case "setCatalog":
+                        physical.setCatalog(catalog);
+                        break;
+                    case "setSchema":
+                        physical.setSchema(schema);
+                        break;
+                    case "setHoldability":
+                        physical.setHoldability(holdability);
+                        break;
+                    default:
+                }
+            }
+            changedSettings.clear();
+        }
+
+        void closePhysical() {
+            statements.values().forEach(PooledDataSource::closeQuietly);
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                logger.debug("Failed to close a connection", e);
+            }
+            open.decrementAndGet();
+        }
+
+        private PreparedStatement prepareStatement(String sql, Connection handle, ConnectionHandle connectionHandle) throws SQLException {
+            PreparedStatement statement = statements.remove(sql);
+            if (statement == null) {
+                statementCacheMisses.increment();
+                statement = physical.prepareStatement(sql);
+            } else {
+                statementCacheHits.increment();
+            }
+            final PreparedStatement res = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandle(sql, statement, handle, connectionHandle));
+            connectionHandle.openStatements.add(res);
+            return res;
+        }
+
+        private void returnStatement(String sql, PreparedStatement statement, boolean reset, boolean cacheable, boolean handleClosed) {
+            if (!cacheable || handleClosed || broken) {
+                closeQuietly(statement);
+                return;
+            }
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                if (reset) {
+                    statement.setQueryTimeout(0);
+                    statement.setMaxRows(0);
+                    statement.setFetchSize(0);
+                }
+            } catch (SQLException e) {
+                closeQuietly(statement);
+                return;
+            }
+            final PreparedStatement previous = statements.put(sql, statement);
+            if (previous != null) {
+                // The same SQL prepared twice at once
+                closeQuietly(previous);
+            }
+        }
+
+        private class ConnectionHandle implements InvocationHandler {
+            // Statements handed out through this handle and not closed yet (the ones not cached possibly closed already)
+            private final Set<Statement> openStatements = Collections.newSetFromMap(new IdentityHashMap<>());
+            private boolean handleClosed = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Pooled " + physical;
+                    case "close":
+                        if (!handleClosed) {
+                            closeStatements();
+                            handleClosed = true;
+                            release();
+                        }
+                        return null;
+                    case "isClosed":
+                        return handleClosed || physical.isClosed();
+                    default:
+                }
+                if (handleClosed) {
+                    throw new SQLException("Connection already returned to the pool");
+                }
+                try {
+                    if (method.getName().equals("prepareStatement") && method.getParameterCount() == 1 && options.getStatementCacheSize() > 0) {
+                        return prepareStatement((String) args[0], (Connection) proxy, this);
+                    }
+                    final Object res = delegate(physical, method, args);
+                    if (CONNECTION_SETTINGS.contains(method.getName())) {
+                        changedSettings.add(method.getName());
+                    } else if (STATEMENT_FACTORIES.contains(method.getName())) {
+                        openStatements.add((Statement) res);
+                    }
+                    return res;
+                } catch (SQLException e) {
+                    broken |= e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_EXCEPTION_CLASS);
+                    throw e;
+                }
+            }
+
+            // Cached statements go back to the cache, as if closed by the user
+            private void closeStatements() {
+                if (!openStatements.isEmpty()) {
+                    logger.debug("Closing {} statements left open", openStatements.size());
+                    new ArrayList<>(openStatements).forEach(PooledDataSource::closeQuietly);
+                    openStatements.clear();
+                }
+            }
+        }
+
+        private class StatementHandle implements InvocationHandler {
+            private final String sql;
+            private final PreparedStatement statement;
+            private final Connection connectionHandle;
+            private final ConnectionHandle owner;
+            private boolean statementClosed = false;
+            private boolean reset = false;
+            private boolean cacheable = true;
+
+            StatementHandle(String sql, PreparedStatement statement, Connection connectionHandle, ConnectionHandle owner) {
+                this.sql = sql;
+                this.statement = statement;
+                this.connectionHandle = connectionHandle;
+                this.owner = owner;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                final String name = method.getName();
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return statement.toString();
+                    case "close":
+                        if (!statementClosed) {
+                            statementClosed = true;
+                            owner.openStatements.remove(proxy);
+                            returnStatement(sql, statement, reset, cacheable, owner.handleClosed);
+                        }
+                        return null;
+                    case "isClosed":
+                        return statementClosed || owner.handleClosed;
+                    case "getConnection":
+                        return connectionHandle;
+                    default:
+                }
+                if (statementClosed) {
+                    throw new SQLException("Statement already closed");
+                }
+                if (owner.handleClosed) {
+                    throw new SQLException("Connection already returned to the pool");
+                }
+                reset |= RESETTABLE_SETTINGS.contains(name);
+                cacheable &= !OTHER_SETTINGS.contains(name);
+                try {
+                    return delegate(statement, method, args);
+                } catch (SQLException e) {
+                    broken |= e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_EXCEPTION_CLASS);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Closing anyway
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The creation of an {@link javax.persistence.EntityManager} by a transaction context
+ */
+@Name("com.eurotech.persistence.EntityManagerCreation")
+@Label("EntityManager Creation")
+@Category({"Persistence", "Transactions"})
+@Description("Creation of an EntityManager by a transaction context")
+@StackTrace(false)
+public class EntityManagerCreationEvent extends Event {
+    @Label("Persistence Unit")
+    public String persistenceUnit;
+}
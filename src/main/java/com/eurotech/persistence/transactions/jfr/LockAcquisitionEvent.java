@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A pessimistic read of entities, lasting as long as the wait for their locks (plus the read itself)
+ */
+@Name("com.eurotech.persistence.LockAcquisition")
+@Label("Pessimistic Lock Acquisition")
+@Category({"Persistence", "Locks"})
+@Description("Pessimistic read of entities, waiting for their locks")
+@StackTrace(false)
+public class LockAcquisitionEvent extends Event {
+    @Label("Entity")
+    public String entityClass;
+
+    @Label("Lock Mode")
+    public String lockMode;
+
+    @Label("Entities")
+    @Description("Number of entities requested")
+    public int entities;
+
+    @Label("Acquired")
+    @Description("False if the read failed, e.g. on lock timeout or deadlock")
+    public boolean acquired;
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The commit of a transaction attempt, including the flush of the pending changes
+ */
+@Name("com.eurotech.persistence.TransactionCommit")
+@Label("Transaction Commit")
+@Category({"Persistence", "Transactions"})
+@Description("Commit of a transaction attempt, flush of pending changes included")
+@StackTrace(false)
+public class TransactionCommitEvent extends Event {
+    @Label("Attempt")
+    public int attempt;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
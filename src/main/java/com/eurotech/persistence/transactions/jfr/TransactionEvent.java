@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A transaction executed by a {@link com.eurotech.persistence.transactions.TxManager}, from begin to commit or failure, retries included
+ */
+@Name("com.eurotech.persistence.Transaction")
+@Label("Transaction")
+@Category({"Persistence", "Transactions"})
+@Description("Transaction executed by a TxManager, retries included")
+@StackTrace(false)
+public class TransactionEvent extends Event {
+    public static final String COMMITTED = "COMMITTED";
+    public static final String FAILED = "FAILED";
+    public static final String TIMED_OUT = "TIMED_OUT";
+    /**
+     * Read-only transaction, completed
+     */
+    public static final String ROLLED_BACK = "ROLLED_BACK";
+
+    @Label("Outcome")
+    @Description("COMMITTED, ROLLED_BACK, FAILED or TIMED_OUT")
+    public String outcome;
+
+    @Label("Retries")
+    @Description("Attempts beyond the first one")
+    public int retries;
+
+    @Label("Exception")
+    @Description("Class of the exception the transaction failed with")
+    public String exceptionClass;
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A transaction attempt failed with a recoverable exception, about to be retried. Spans the failed attempt
+ */
+@Name("com.eurotech.persistence.TransactionRetry")
+@Label("Transaction Retry")
+@Category({"Persistence", "Transactions"})
+@Description("Transaction attempt failed with a recoverable exception, about to be retried")
+public class TransactionRetryEvent extends Event {
+    @Label("Attempt")
+    @Description("The failed attempt, starting from 1")
+    public int attempt;
+
+    @Label("Exception")
+    public String exceptionClass;
+
+    @Label("Root Cause")
+    @Description("Class of the innermost cause of the exception")
+    public String rootCauseClass;
+}
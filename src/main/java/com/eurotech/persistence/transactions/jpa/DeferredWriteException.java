@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jpa;
+
+import javax.persistence.PersistenceException;
+
+/**
+ * Thrown when flushing deferred writes fails, carries the description of the repository operation that queued the failing write.
+ * The original exception is kept as cause, and is what {@link JpaTxContext#isRecoverableException(Exception)} evaluates.
+ */
+public class DeferredWriteException extends PersistenceException {
+    private static final long serialVersionUID = 1L;
+
+    private final String operation;
+
+    public DeferredWriteException(String operation, Throwable cause) {
+        super("Deferred write failed: " + operation, cause);
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+}
@@ -13,8 +13,11 @@
 package com.eurotech.persistence.transactions.jpa;
 
 import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxManager;
 
 import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Optional;
 
 public interface JpaAwareTxContext extends TxContext {
     static EntityManager extractEntityManager(TxContext txContext) {
@@ -24,5 +27,134 @@ public interface JpaAwareTxContext extends TxContext {
         throw new RuntimeException("This repo needs to run within the context of a JPA transaction");
     }
 
+    /**
+     * To be invoked by repositories once a write operation has completed
+     */
+    static void notifyWrite(TxContext txContext) {
+        if (txContext instanceof JpaAwareTxContext) {
+            ((JpaAwareTxContext) txContext).afterWrite();
+        }
+    }
+
+    static Optional<Duration> extractLockTimeout(TxContext txContext) {
+        if (txContext instanceof JpaAwareTxContext) {
+            return ((JpaAwareTxContext) txContext).getLockTimeout();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return The maximum time the next statement of the transaction may take, if bounded by a deadline
+     * @throws com.eurotech.persistence.transactions.TxTimeoutException if the deadline has already passed
+     */
+    static Optional<Duration> extractStatementTimeout(TxContext txContext) {
+        if (txContext instanceof JpaAwareTxContext) {
+            return ((JpaAwareTxContext) txContext).getStatementTimeout();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * To be invoked by repositories before flushing a write: if the context defers flushes, the write is registered and should not be flushed
+     *
+     * @param entity    The managed entity being written
+     * @param operation Description of the operation, used to report failures happening when the write is eventually flushed
+     * @return true if the write has been deferred
+     */
+    static boolean deferWrite(TxContext txContext, Object entity, String operation) {
+        if (txContext instanceof JpaAwareTxContext && ((JpaAwareTxContext) txContext).isFlushDeferred()) {
+            ((JpaAwareTxContext) txContext).registerDeferredWrite(entity, operation);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Executes a step of the transaction from a savepoint, see {@link #executeStep(String, int, TxManager.TxConsumer)}
+     */
+    static <R> R executeStep(TxContext txContext, String name, int maxAttempts, TxManager.TxConsumer<R> step) {
+        if (txContext instanceof JpaAwareTxContext) {
+            return ((JpaAwareTxContext) txContext).executeStep(name, maxAttempts, step);
+        }
+        throw new RuntimeException("Steps need to run within the context of a JPA transaction");
+    }
+
     EntityManager getEntityManager();
+
+    /**
+     * Marks the current point of the transaction, so that the work done afterwards can be rolled back alone.
+     * Pending changes are sent to the database first.
+     */
+    void setSavepoint(String name);
+
+    /**
+     * Rolls back the work done after the savepoint, which stays set, and removes any later savepoint. The transaction stays active
+     *
+     * @throws IllegalStateException if the transaction cannot be resumed, e.g. after a failed flush
+     */
+    void rollbackToSavepoint(String name);
+
+    void releaseSavepoint(String name);
+
+    /**
+     * Executes a step of the transaction from a savepoint: when the step fails with a recoverable exception, only the step
+     * is rolled back and executed again, keeping the work done before it. The step's changes are sent to the database before
+     * it completes, so that conflicts surface within the step rather than at commit.
+     * <p>
+     * Only failures leaving the transaction usable are retried this way, typically conflicts detected by the step itself
+     * (e.g. an update by id and expected version affecting no row). A failure of the persistence provider, such as a failed flush,
+     * marks the whole transaction for rollback: the failure is rethrown, to be handled by the {@link TxManager}, as it is when
+     * the database has rolled back the whole transaction (e.g. a deadlock victim).
+     *
+     * @param maxAttempts Maximum number of executions of the step
+     */
+    default <R> R executeStep(String name, int maxAttempts, TxManager.TxConsumer<R> step) throws RuntimeException {
+        int attempt = 0;
+        setSavepoint(name);
+        while (true) {
+            try {
+                final R res = step.execute(this);
+                prepare();
+                releaseSavepoint(name);
+                return res;
+            } catch (RuntimeException e) {
+                if (!isRecoverableException(e) || ++attempt >= maxAttempts) {
+                    throw e;
+                }
+                try {
+                    rollbackToSavepoint(name);
+                } catch (RuntimeException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    default boolean isFlushDeferred() {
+        return false;
+    }
+
+    default void registerDeferredWrite(Object entity, String operation) {
+    }
+
+    /**
+     * @return The maximum time statements of this transaction should wait for pessimistic locks, if bounded
+     */
+    default Optional<Duration> getLockTimeout() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return The time left before the transaction's deadline, if any
+     */
+    default Optional<Duration> getStatementTimeout() {
+        return Optional.empty();
+    }
+
+    /**
+     * Hook giving the context the chance to keep the persistence context bounded, see {@link JpaTxContext#JpaTxContext(javax.persistence.EntityManagerFactory, int)}
+     */
+    default void afterWrite() {
+    }
 }
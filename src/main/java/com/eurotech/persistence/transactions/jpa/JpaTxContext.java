@@ -12,7 +12,15 @@
  *******************************************************************************/
 package com.eurotech.persistence.transactions.jpa;
 
+import com.eurotech.persistence.repositories.DemoEntityRepository;
 import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxTimeoutException;
+import com.eurotech.persistence.transactions.jfr.EntityManagerCreationEvent;
+import org.eclipse.persistence.exceptions.DatabaseException;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.ObjectLevelModifyQuery;
+import org.eclipse.persistence.queries.ReadObjectQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,25 +29,74 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceException;
 import javax.persistence.PessimisticLockException;
 import javax.persistence.RollbackException;
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class JpaTxContext implements JpaAwareTxContext, TxContext {
+    /**
+     * Value for maxManagedEntities meaning that the persistence context is allowed to grow indefinitely
+     */
+    public static final int UNBOUNDED = 0;
+    private static final int MAX_REPORTED_DEFERRED_WRITES = 10;
+
     public final EntityManagerFactory entityManagerFactory;
+    private final int maxManagedEntities;
+    private final RecoverableSqlErrors recoverableSqlErrors;
     Optional<EntityManager> entityManager = Optional.empty();
+    private int managedEntitiesHighWaterMark = 0;
+    private int flushAndClearCount = 0;
+    private boolean flushDeferred = false;
+    private Optional<Duration> lockTimeout = Optional.empty();
+    private Optional<Instant> deadline = Optional.empty();
+    // Managed entity -> description of the repository operation that changed it, used to map flush failures back
+    private final Map<Object, String> deferredWrites = new IdentityHashMap<>();
+    // In the order they have been set
+    private final LinkedHashMap<String, Savepoint> savepoints = new LinkedHashMap<>();
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     public JpaTxContext(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, UNBOUNDED);
+    }
+
+    /**
+     * @param entityManagerFactory The factory used to lazily create the {@link EntityManager}
+     * @param maxManagedEntities   Maximum number of entities kept managed in the persistence context: once reached, pending changes are flushed
+     *                             and the persistence context is cleared (detaching all entities). Use {@link #UNBOUNDED} to disable.
+     */
+    public JpaTxContext(EntityManagerFactory entityManagerFactory, int maxManagedEntities) {
+        this(entityManagerFactory, maxManagedEntities, RecoverableSqlErrors.forEntityManagerFactory(entityManagerFactory));
+    }
+
+    /**
+     * @param entityManagerFactory The factory used to lazily create the {@link EntityManager}
+     * @param maxManagedEntities   See {@link #JpaTxContext(EntityManagerFactory, int)}
+     * @param recoverableSqlErrors The SQL errors (deadlocks, lock timeouts) after which the transaction can be retried
+     */
+    public JpaTxContext(EntityManagerFactory entityManagerFactory, int maxManagedEntities, RecoverableSqlErrors recoverableSqlErrors) {
         this.entityManagerFactory = entityManagerFactory;
+        this.maxManagedEntities = maxManagedEntities;
+        this.recoverableSqlErrors = recoverableSqlErrors;
     }
 
     @Override
     public EntityManager getEntityManager() {
         this.entityManager = Optional.of(this.entityManager
-                .orElseGet(() -> entityManagerFactory.createEntityManager()));
+                .orElseGet(this::createEntityManager));
         final EntityTransaction tx = entityManager.get().getTransaction();
         if (!tx.isActive()) {
             tx.begin();
@@ -47,13 +104,112 @@ public class JpaTxContext implements JpaAwareTxContext, TxContext {
         return entityManager.get();
     }
 
+    EntityManager createEntityManager() {
+        final EntityManagerCreationEvent event = new EntityManagerCreationEvent();
+        event.begin();
+        final EntityManager res = entityManagerFactory.createEntityManager();
+        event.end();
+        if (event.shouldCommit()) {
+            event.persistenceUnit = JpaHelper.getDatabaseSession(entityManagerFactory).getName();
+            event.commit();
+        }
+        return res;
+    }
+
     @Override
     public void commit() {
-        entityManager.ifPresent(e -> e.getTransaction().commit());
+        entityManager.ifPresent(e -> {
+            if (!deferredWrites.isEmpty()) {
+                // Flushing explicitly, so that failures can be mapped to the operation causing them
+                flush(e);
+            }
+            e.getTransaction().commit();
+        });
+        savepoints.clear();
+    }
+
+    /**
+     * Sets a JDBC savepoint on the transaction's connection, after flushing pending changes
+     */
+    @Override
+    public void setSavepoint(String name) {
+        final EntityManager em = getEntityManager();
+        flush(em);
+        try {
+            savepoints.remove(name);
+            savepoints.put(name, connection(em).setSavepoint(name));
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot set savepoint " + name, e);
+        }
+    }
+
+    /**
+     * Rolls back the database changes done after the savepoint. The persistence context cannot be rolled back to the savepoint,
+     * so it is cleared: all entities become detached, including those read before the savepoint, which should be read again.
+     *
+     * @throws IllegalStateException if the transaction has been marked for rollback, as JPA requires for any failed flush:
+     *                               the transaction cannot be resumed
+     */
+    @Override
+    public void rollbackToSavepoint(String name) {
+        final Savepoint savepoint = savepoint(name);
+        final EntityManager em = getEntityManager();
+        if (em.getTransaction().getRollbackOnly()) {
+            throw new IllegalStateException("Transaction marked for rollback, cannot roll back to savepoint " + name);
+        }
+        try {
+            connection(em).rollback(savepoint);
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot roll back to savepoint " + name, e);
+        }
+        removeSavepointsFrom(name, false);
+        deferredWrites.clear();
+        em.clear();
+    }
+
+    @Override
+    public void releaseSavepoint(String name) {
+        final Savepoint savepoint = savepoint(name);
+        try {
+            connection(getEntityManager()).releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot release savepoint " + name, e);
+        }
+        removeSavepointsFrom(name, true);
+    }
+
+    private Savepoint savepoint(String name) {
+        final Savepoint savepoint = savepoints.get(name);
+        if (savepoint == null) {
+            throw new IllegalArgumentException("Unknown savepoint " + name);
+        }
+        return savepoint;
+    }
+
+    // Savepoints set after the given one are gone with it
+    private void removeSavepointsFrom(String name, boolean inclusive) {
+        final List<String> names = new ArrayList<>(savepoints.keySet());
+        names.subList(names.indexOf(name) + (inclusive ? 0 : 1), names.size()).forEach(savepoints::remove);
+    }
+
+    private static Connection connection(EntityManager em) {
+        // Available while the transaction is active, as EclipseLink holds the same connection until it ends
+        final Connection connection = em.unwrap(Connection.class);
+        if (connection == null) {
+            throw new IllegalStateException("No connection bound to the transaction");
+        }
+        return connection;
+    }
+
+    @Override
+    public void prepare() {
+        entityManager.ifPresent(this::flush);
     }
 
     @Override
     public void rollback() {
+        deferredWrites.clear();
+        savepoints.clear();
         entityManager.ifPresent(entityManager -> {
             final EntityTransaction tx = entityManager.getTransaction();
             if (tx.isActive()) {
@@ -62,11 +218,215 @@ public class JpaTxContext implements JpaAwareTxContext, TxContext {
         });
     }
 
+    @Override
+    public void afterWrite() {
+        entityManager.ifPresent(em -> {
+            final int managedEntities = em.unwrap(UnitOfWorkImpl.class).getCloneMapping().size();
+            managedEntitiesHighWaterMark = Math.max(managedEntitiesHighWaterMark, managedEntities);
+            if (maxManagedEntities != UNBOUNDED && managedEntities >= maxManagedEntities) {
+                // Entities returned so far become detached: further changes to them will not be persisted automatically
+                flush(em);
+                em.clear();
+                flushAndClearCount++;
+            }
+        });
+    }
+
+    /**
+     * When set, repositories do not flush after each write: changes are queued in the persistence context and sent to the database
+     * in a single flush before commit (or earlier, whenever a query needs them), allowing statement batching (see
+     * {@link JpaTxManagerFactory#withBatchWriting(int)}).
+     * Failures at flush time are reported as {@link DeferredWriteException}, naming the operation that caused them. Unique key violations
+     * of flushes including inserts are taken for generated id clashes, and retried as such (see {@link #isRecoverableException(Exception)}).
+     */
+    public void setFlushDeferred(boolean flushDeferred) {
+        this.flushDeferred = flushDeferred;
+    }
+
+    @Override
+    public boolean isFlushDeferred() {
+        return flushDeferred;
+    }
+
+    /**
+     * Bounds the time spent waiting for pessimistic locks by each statement of this transaction, unless a different timeout
+     * is specified for the single query. Applied through the standard lock and query timeout hints: databases ignoring both
+     * (e.g. embedded Derby, which only honours the database-wide derby.locks.waitTimeout property) keep waiting for their own timeout.
+     */
+    public void setLockTimeout(Duration lockTimeout) {
+        this.lockTimeout = Optional.ofNullable(lockTimeout);
+    }
+
+    /**
+     * @return The lock timeout, bounded by the time left before the deadline
+     */
+    @Override
+    public Optional<Duration> getLockTimeout() {
+        final Optional<Duration> statementTimeout = getStatementTimeout();
+        if (!statementTimeout.isPresent()) {
+            return lockTimeout;
+        }
+        return Optional.of(lockTimeout.filter(timeout -> timeout.compareTo(statementTimeout.get()) < 0).orElse(statementTimeout.get()));
+    }
+
+    @Override
+    public void setDeadline(Instant deadline) {
+        this.deadline = Optional.ofNullable(deadline);
+    }
+
+    /**
+     * @throws TxTimeoutException if the deadline has already passed, so that no further statement is issued
+     */
+    @Override
+    public Optional<Duration> getStatementTimeout() {
+        if (!deadline.isPresent()) {
+            return Optional.empty();
+        }
+        final Duration left = Duration.between(Instant.now(), deadline.get());
+        // Timeouts are applied with millisecond granularity, zero meaning no timeout at all
+        if (left.toMillis() < 1) {
+            throw new TxTimeoutException(deadline.get());
+        }
+        return Optional.of(left);
+    }
+
+    @Override
+    public void registerDeferredWrite(Object entity, String operation) {
+        deferredWrites.put(entity, operation);
+    }
+
+    private void flush(EntityManager em) {
+        final UnitOfWorkImpl unitOfWork = em.unwrap(UnitOfWorkImpl.class);
+        final boolean pendingInserts = deferredWrites.keySet().stream().anyMatch(unitOfWork::isCloneNewObject);
+        try {
+            em.flush();
+        } catch (PersistenceException e) {
+            final String operation = failedEntity(e).map(deferredWrites::get).orElseGet(this::describeDeferredWrites);
+            // A generated id clashing surfaces here rather than at persist: reported as for immediate writes, so that the insert is retried
+            final boolean idClash = pendingInserts && DemoEntityRepository.isInsertConstraintViolation(e);
+            throw new DeferredWriteException(operation, idClash ? new EntityExistsException(operation, e) : e);
+        } finally {
+            deferredWrites.clear();
+        }
+    }
+
+    // Batched statements do not report the failing entity: list the candidates instead
+    private String describeDeferredWrites() {
+        final String candidates = deferredWrites.values().stream()
+                .limit(MAX_REPORTED_DEFERRED_WRITES)
+                .collect(Collectors.joining(", "));
+        final int omitted = deferredWrites.size() - MAX_REPORTED_DEFERRED_WRITES;
+        return "one of " + candidates + (omitted > 0 ? String.format(" (and %d more)", omitted) : "");
+    }
+
+    private static Optional<Object> failedEntity(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException && ((OptimisticLockException) t).getEntity() != null) {
+                return Optional.of(((OptimisticLockException) t).getEntity());
+            }
+            if (t instanceof PessimisticLockException && ((PessimisticLockException) t).getEntity() != null) {
+                return Optional.of(((PessimisticLockException) t).getEntity());
+            }
+            if (t instanceof org.eclipse.persistence.exceptions.OptimisticLockException && ((org.eclipse.persistence.exceptions.OptimisticLockException) t).getQuery() != null) {
+                return Optional.ofNullable(((org.eclipse.persistence.exceptions.OptimisticLockException) t).getQuery().getObject());
+            }
+            if (t instanceof DatabaseException && ((DatabaseException) t).getQuery() instanceof ObjectLevelModifyQuery) {
+                return Optional.ofNullable(((ObjectLevelModifyQuery) ((DatabaseException) t).getQuery()).getObject());
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<String> getContendedKey(Exception ex) {
+        boolean lockConflict = false;
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            lockConflict |= isLockExceptionTester.test(t) || t instanceof org.eclipse.persistence.exceptions.OptimisticLockException;
+        }
+        if (!lockConflict) {
+            return Optional.empty();
+        }
+        final Optional<Object> entity = failedEntity(ex);
+        if (entity.isPresent()) {
+            Object id;
+            try {
+                id = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(entity.get());
+            } catch (IllegalArgumentException notAnEntity) {
+                id = null;
+            }
+            return Optional.of(contendedKey(entity.get().getClass(), id));
+        }
+        // Pessimistic locks fail on the read, which tells the entity class and (finding by id) the id
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof DatabaseException && ((DatabaseException) t).getQuery() instanceof ReadObjectQuery) {
+                final ReadObjectQuery query = (ReadObjectQuery) ((DatabaseException) t).getQuery();
+                return Optional.ofNullable(query.getReferenceClass()).map(referenceClass -> contendedKey(referenceClass, query.getSelectionId()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String contendedKey(Class<?> entityClass, Object id) {
+        return entityClass.getSimpleName() + "#" + (id == null ? "?" : id);
+    }
+
+    /**
+     * @return The maximum number of entities observed in the persistence context so far
+     */
+    public int getManagedEntitiesHighWaterMark() {
+        return managedEntitiesHighWaterMark;
+    }
+
+    /**
+     * @return How many times the persistence context has been flushed and cleared because of the maxManagedEntities cap
+     */
+    public int getFlushAndClearCount() {
+        return flushAndClearCount;
+    }
+
     @Override
     public void close() throws IOException {
+        reportPersistenceContextUsage();
         entityManager.ifPresent(entityManager -> entityManager.close());
     }
 
+    /**
+     * Resets this context, keeping the {@link EntityManager} (cleared) for reuse by another context.
+     * An idle {@link EntityManager} holds no connection, as EclipseLink releases it when the transaction ends.
+     *
+     * @return false if the context was returned with a transaction still active (which gets rolled back): its {@link EntityManager} should not be reused
+     */
+    boolean recycle() {
+        reportPersistenceContextUsage();
+        boolean clean = true;
+        if (entityManager.isPresent()) {
+            final EntityManager em = entityManager.get();
+            if (!em.isOpen()) {
+                entityManager = Optional.empty();
+            } else {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                    clean = false;
+                }
+                em.clear();
+            }
+        }
+        flushDeferred = false;
+        lockTimeout = Optional.empty();
+        deadline = Optional.empty();
+        savepoints.clear();
+        deferredWrites.clear();
+        managedEntitiesHighWaterMark = 0;
+        flushAndClearCount = 0;
+        return clean;
+    }
+
+    private void reportPersistenceContextUsage() {
+        if (flushAndClearCount > 0) {
+            logger.debug("Persistence context high water mark: {} managed entities, flushed and cleared {} times", managedEntitiesHighWaterMark, flushAndClearCount);
+        }
+    }
+
     @Override
     public RuntimeException convertPersistenceException(Exception ex) {
         return Optional.ofNullable(ex).map(e -> new RuntimeException(e)).orElse(new RuntimeException("no details"));
@@ -75,7 +435,8 @@ public class JpaTxContext implements JpaAwareTxContext, TxContext {
     private final Predicate isLockExceptionTester = t -> t instanceof OptimisticLockException || t instanceof PessimisticLockException;
 
     @Override
-    public boolean isRecoverableException(Exception e) {
+    public boolean isRecoverableException(Exception ex) {
+        final Throwable e = ex instanceof DeferredWriteException ? ex.getCause() : ex;
         if (e instanceof EntityExistsException) {
 
             /*
@@ -91,6 +452,10 @@ public class JpaTxContext implements JpaAwareTxContext, TxContext {
             logger.warn("Recoverable Lock Exception");
             return true;
         }
+        if (recoverableSqlErrors.isRecoverable(e)) {
+            logger.warn("Recoverable SQL error (deadlock or lock timeout)");
+            return true;
+        }
         return false;
     }
 }
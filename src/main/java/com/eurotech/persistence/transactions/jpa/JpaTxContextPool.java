@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jpa;
+
+import com.eurotech.persistence.transactions.TxContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of the {@link javax.persistence.EntityManager}s of {@link JpaTxContext}s, reused across transactions.
+ * <p>
+ * Each acquisition hands out a new, lightweight context, owning the checkout: closing it returns its {@link javax.persistence.EntityManager}
+ * once, further closes (e.g. by a stale owner, after another caller got the same {@link javax.persistence.EntityManager}) being ignored.
+ * Acquiring never blocks: when no idle {@link javax.persistence.EntityManager} is available the context creates a new one, and those returned
+ * while the pool is full are closed. Returned {@link javax.persistence.EntityManager}s are cleared, and those still holding an active
+ * transaction are rolled back and discarded. Contexts checked out for longer than the leak threshold are reported.
+ */
+public class JpaTxContextPool implements Supplier<TxContext>, Closeable {
+    public static final Duration DEFAULT_LEAK_THRESHOLD = Duration.ofMinutes(1);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int maxManagedEntities;
+    private final RecoverableSqlErrors recoverableSqlErrors;
+    private final Duration leakThreshold;
+    private final BlockingQueue<EntityManager> idle;
+    private final Map<PooledJpaTxContext, Instant> checkedOut = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private volatile Instant nextLeakCheck;
+    private volatile boolean closed = false;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public JpaTxContextPool(EntityManagerFactory entityManagerFactory, int maxManagedEntities, int maxIdle) {
+        this(entityManagerFactory, maxManagedEntities, maxIdle, DEFAULT_LEAK_THRESHOLD);
+    }
+
+    /**
+     * @param entityManagerFactory The factory used to create the pooled {@link EntityManager}s
+     * @param maxManagedEntities   See {@link JpaTxContext#JpaTxContext(EntityManagerFactory, int)}
+     * @param maxIdle              Maximum number of {@link EntityManager}s kept for reuse
+     * @param leakThreshold        How long a context can be checked out before being reported as leaked
+     */
+    public JpaTxContextPool(EntityManagerFactory entityManagerFactory, int maxManagedEntities, int maxIdle, Duration leakThreshold) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.maxManagedEntities = maxManagedEntities;
+        this.recoverableSqlErrors = RecoverableSqlErrors.forEntityManagerFactory(entityManagerFactory);
+        this.leakThreshold = leakThreshold;
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+        this.nextLeakCheck = Instant.now().plus(leakThreshold);
+    }
+
+    @Override
+    public TxContext get() {
+        if (closed) {
+            throw new IllegalStateException("Transaction context pool closed");
+        }
+        final PooledJpaTxContext txContext = new PooledJpaTxContext(Optional.ofNullable(idle.poll()));
+        final Instant now = Instant.now();
+        checkedOut.put(txContext, now);
+        if (now.isAfter(nextLeakCheck)) {
+            nextLeakCheck = now.plus(leakThreshold);
+            detectLeaks(now);
+        }
+        return txContext;
+    }
+
+    private void release(PooledJpaTxContext txContext) {
+        if (checkedOut.remove(txContext) == null) {
+            // Already returned: the entity manager may be in use by another context by now
+            return;
+        }
+        final boolean clean = txContext.recycle();
+        if (!clean) {
+            logger.warn("Transaction context returned with an active transaction, rolled back and discarded");
+        }
+        txContext.entityManager.ifPresent(entityManager -> {
+            if (!clean || closed || !entityManager.isOpen() || !idle.offer(entityManager)) {
+                closeQuietly(entityManager);
+            }
+        });
+        if (closed) {
+            // Racing with close()
+            close();
+        }
+    }
+
+    /**
+     * Closes the idle {@link EntityManager}s, those in use being closed once their context is: the pool hands out no more contexts
+     */
+    @Override
+    public void close() {
+        closed = true;
+        EntityManager entityManager;
+        while ((entityManager = idle.poll()) != null) {
+            closeQuietly(entityManager);
+        }
+    }
+
+    private void closeQuietly(EntityManager entityManager) {
+        try {
+            if (entityManager.isOpen()) {
+                entityManager.close();
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Failed to close a pooled entity manager", e);
+        }
+    }
+
+    private void detectLeaks(Instant now) {
+        checkedOut.forEach((txContext, since) -> {
+            final Duration age = Duration.between(since, now);
+            if (age.compareTo(leakThreshold) > 0) {
+                logger.warn("Transaction context checked out {} ago and not returned yet, possible leak", age);
+            }
+        });
+    }
+
+    /**
+     * @return The {@link EntityManager}s kept for reuse
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getCheckedOutCount() {
+        return checkedOut.size();
+    }
+
+    /**
+     * @return The {@link EntityManager}s created so far, the others having been reused
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    private class PooledJpaTxContext extends JpaTxContext {
+        PooledJpaTxContext(Optional<EntityManager> pooledEntityManager) {
+            super(JpaTxContextPool.this.entityManagerFactory, JpaTxContextPool.this.maxManagedEntities, JpaTxContextPool.this.recoverableSqlErrors);
+            this.entityManager = pooledEntityManager;
+        }
+
+        @Override
+        EntityManager createEntityManager() {
+            created.incrementAndGet();
+            return super.createEntityManager();
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
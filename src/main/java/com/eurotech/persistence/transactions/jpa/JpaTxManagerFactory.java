@@ -13,19 +13,152 @@
 package com.eurotech.persistence.transactions.jpa;
 
 
+import com.eurotech.persistence.transactions.ContentionTracker;
+import com.eurotech.persistence.transactions.LeakTrackingTxManager;
+import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxContextLeakDetector;
 import com.eurotech.persistence.transactions.TxManager;
 import com.eurotech.persistence.transactions.TxManagerImpl;
+import com.eurotech.persistence.transactions.jdbc.PooledDataSource;
+import com.eurotech.persistence.transactions.metrics.TransactionMetrics;
+import org.eclipse.persistence.config.BatchWriting;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
 
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 public class JpaTxManagerFactory {
+    /**
+     * Value for txContextPoolSize disabling the pooling of {@link JpaTxContext}s
+     */
+    public static final int NO_POOLING = 0;
+
     private final int maxInsertAttempts;
+    private final int maxManagedEntities;
+    private final int txContextPoolSize;
+    private Optional<SqlStatementProfiler> statementProfiler = Optional.empty();
+    private Optional<ContentionTracker> contentionTracker = Optional.empty();
+    private Optional<TransactionMetrics> metrics = Optional.empty();
+    private Optional<TxContextLeakDetector> leakDetector = Optional.empty();
+    private Optional<PooledDataSource> connectionPool = Optional.empty();
+    private boolean connectionPoolBound = false;
+    private Optional<Integer> batchWritingSize = Optional.empty();
 
     public JpaTxManagerFactory(int maxInsertAttempts) {
+        this(maxInsertAttempts, JpaTxContext.UNBOUNDED);
+    }
+
+    /**
+     * @param maxInsertAttempts  Number of attempts for transactions failing with recoverable exceptions
+     * @param maxManagedEntities Cap on the entities managed by each transaction, see {@link JpaTxContext#JpaTxContext(javax.persistence.EntityManagerFactory, int)}
+     */
+    public JpaTxManagerFactory(int maxInsertAttempts, int maxManagedEntities) {
+        this(maxInsertAttempts, maxManagedEntities, NO_POOLING);
+    }
+
+    /**
+     * @param maxInsertAttempts  Number of attempts for transactions failing with recoverable exceptions
+     * @param maxManagedEntities Cap on the entities managed by each transaction, see {@link JpaTxContext#JpaTxContext(javax.persistence.EntityManagerFactory, int)}
+     * @param txContextPoolSize  Maximum number of idle transaction contexts kept for reuse by each created {@link TxManager}, see {@link JpaTxContextPool}
+     */
+    public JpaTxManagerFactory(int maxInsertAttempts, int maxManagedEntities, int txContextPoolSize) {
         this.maxInsertAttempts = maxInsertAttempts;
+        this.maxManagedEntities = maxManagedEntities;
+        this.txContextPoolSize = txContextPoolSize;
+    }
+
+    /**
+     * Attaches the profiler to the factories of the {@link TxManager}s created from now on
+     */
+    public JpaTxManagerFactory withStatementProfiler(SqlStatementProfiler statementProfiler) {
+        this.statementProfiler = Optional.of(statementProfiler);
+        return this;
+    }
+
+    /**
+     * Makes the {@link TxManager}s created from now on count their lock conflicts in the tracker, which can be shared among them
+     */
+    public JpaTxManagerFactory withContentionTracker(ContentionTracker contentionTracker) {
+        this.contentionTracker = Optional.of(contentionTracker);
+        return this;
+    }
+
+    /**
+     * Makes the {@link TxManager}s created from now on feed the metrics, which can be shared among them, with their transactions
+     * and their persistence units (see {@link TransactionMetrics#addPersistenceUnit(String, EntityManagerFactory)})
+     */
+    public JpaTxManagerFactory withMetrics(TransactionMetrics metrics) {
+        this.metrics = Optional.of(metrics);
+        return this;
+    }
+
+    /**
+     * Makes the {@link TxManager}s created from now on track the contexts handed out by {@link TxManager#getSupplier()}, see {@link LeakTrackingTxManager}
+     */
+    public JpaTxManagerFactory withLeakDetector(TxContextLeakDetector leakDetector) {
+        this.leakDetector = Optional.of(leakDetector);
+        return this;
+    }
+
+    /**
+     * Makes the next {@link TxManager} created take its connections from the pool (as its non-JTA data source, overriding
+     * the JDBC settings of the persistence unit), also added to the metrics if any. A pool serves a single persistence unit:
+     * creating another {@link TxManager} requires another pool.
+     */
+    public JpaTxManagerFactory withConnectionPool(PooledDataSource connectionPool) {
+        this.connectionPool = Optional.of(connectionPool);
+        this.connectionPoolBound = false;
+        return this;
+    }
+
+    /**
+     * Makes the {@link TxManager}s created from now on send the writes flushed together as JDBC batches of up to batchSize statements.
+     * Meant for deferred-flush transactions (see {@link JpaTxContext#setFlushDeferred(boolean)}): writes flushed one at a time gain nothing.
+     * EclipseLink batches at the session level, shared by all the factories of a persistence unit with the same session name:
+     * pass a distinct {@link PersistenceUnitProperties#SESSION_NAME} to keep other users of the unit unbatched.
+     */
+    public JpaTxManagerFactory withBatchWriting(int batchSize) {
+        this.batchWritingSize = Optional.of(batchSize);
+        return this;
     }
 
     public TxManager create(String persistenceUnitName) {
-        return new TxManagerImpl(() -> new JpaTxContext(Persistence.createEntityManagerFactory(persistenceUnitName)), maxInsertAttempts);
+        return create(persistenceUnitName, Collections.emptyMap());
+    }
+
+    /**
+     * @param properties Override the properties of the persistence unit (e.g. the JDBC url)
+     */
+    public TxManager create(String persistenceUnitName, Map<String, ?> properties) {
+        if (connectionPool.isPresent() && connectionPoolBound) {
+            throw new IllegalStateException("The connection pool already serves a persistence unit: set another one before creating another TxManager");
+        }
+        final Map<String, Object> configOverrides = new HashMap<>(properties);
+        connectionPool.ifPresent(dataSource -> configOverrides.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, dataSource));
+        batchWritingSize.ifPresent(batchSize -> {
+            configOverrides.put(PersistenceUnitProperties.BATCH_WRITING, BatchWriting.JDBC);
+            configOverrides.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, Integer.toString(batchSize));
+        });
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnitName, configOverrides);
+        connectionPoolBound = connectionPool.isPresent();
+        statementProfiler.ifPresent(profiler -> profiler.attach(entityManagerFactory));
+        metrics.ifPresent(txMetrics -> {
+            txMetrics.addPersistenceUnit(persistenceUnitName, entityManagerFactory);
+            connectionPool.ifPresent(dataSource -> txMetrics.addConnectionPool(persistenceUnitName, dataSource));
+        });
+        final Supplier<TxContext> txContextSupplier;
+        if (txContextPoolSize != NO_POOLING) {
+            txContextSupplier = new JpaTxContextPool(entityManagerFactory, maxManagedEntities, txContextPoolSize);
+        } else {
+            final RecoverableSqlErrors recoverableSqlErrors = RecoverableSqlErrors.forEntityManagerFactory(entityManagerFactory);
+            txContextSupplier = () -> new JpaTxContext(entityManagerFactory, maxManagedEntities, recoverableSqlErrors);
+        }
+        final TxManager txManager = new TxManagerImpl(txContextSupplier, maxInsertAttempts, contentionTracker, metrics);
+        return leakDetector.<TxManager>map(detector -> new LeakTrackingTxManager(txManager, detector)).orElse(txManager);
     }
 }
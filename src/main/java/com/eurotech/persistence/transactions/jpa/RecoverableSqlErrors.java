@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jpa;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Per-database table of SQL errors (deadlocks, lock wait timeouts) after which the whole transaction can safely be retried.
+ */
+public class RecoverableSqlErrors {
+    /**
+     * Standard SQLState for serialization failures/deadlocks, used for databases without a specific table
+     */
+    public static final RecoverableSqlErrors GENERIC = new RecoverableSqlErrors("Generic",
+            Set.of("40001"),
+            Collections.emptySet());
+    /**
+     * 40001: deadlock, 40XL1/40XL2: lock wait timeout
+     */
+    public static final RecoverableSqlErrors DERBY = new RecoverableSqlErrors("Derby",
+            Set.of("40001", "40XL1", "40XL2"),
+            Collections.emptySet());
+    /**
+     * 1213 (SQLState 40001): deadlock, 1205 (SQLState 41000 or HY000, depending on the driver): lock wait timeout
+     */
+    public static final RecoverableSqlErrors MYSQL = new RecoverableSqlErrors("MySQL",
+            Set.of("40001", "41000"),
+            Set.of(1205, 1213));
+
+    private final String database;
+    private final Set<String> sqlStates;
+    private final Set<Integer> vendorCodes;
+
+    public RecoverableSqlErrors(String database, Set<String> sqlStates, Set<Integer> vendorCodes) {
+        this.database = database;
+        this.sqlStates = sqlStates;
+        this.vendorCodes = vendorCodes;
+    }
+
+    /**
+     * @param targetDatabase The value of the {@link PersistenceUnitProperties#TARGET_DATABASE} property (either a short name or the platform class)
+     */
+    public static RecoverableSqlErrors forTargetDatabase(String targetDatabase) {
+        if (targetDatabase == null) {
+            return GENERIC;
+        }
+        final String target = targetDatabase.toLowerCase();
+        if (target.contains("derby")) {
+            return DERBY;
+        }
+        if (target.contains("mysql")) {
+            return MYSQL;
+        }
+        return GENERIC;
+    }
+
+    public static RecoverableSqlErrors forEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        return forTargetDatabase((String) entityManagerFactory.getProperties().get(PersistenceUnitProperties.TARGET_DATABASE));
+    }
+
+    /**
+     * @return true if any {@link SQLException} in the causal chain of the given exception is listed as recoverable
+     */
+    public boolean isRecoverable(Throwable exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                final SQLException sqlException = (SQLException) t;
+                // Not all exceptions have a SQL state, and immutable sets reject null lookups
+                final String sqlState = sqlException.getSQLState();
+                if ((sqlState != null && sqlStates.contains(sqlState)) || vendorCodes.contains(sqlException.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+}
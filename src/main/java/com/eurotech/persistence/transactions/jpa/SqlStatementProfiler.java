@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.jpa;
+
+import com.eurotech.persistence.transactions.LatencyHistogram;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Profiles the SQL statements sent by an {@link EntityManagerFactory}, plugged in as its EclipseLink {@link SessionProfiler}
+ * through {@link #attach(EntityManagerFactory)} (or installed on the session by any other mean). Each statement is timed, and attributed to:
+ * <ul>
+ * <li>its shape: the SQL with bind parameter lists collapsed, so that e.g. IN queries with different numbers of ids are counted together</li>
+ * <li>the repository method issuing it: the outermost caller whose class matches the caller filter (by default, classes named *Repository or *DAO)</li>
+ * <li>its enclosing transaction: statements issued by a thread between the end of a unit of work (commit or release) and the next</li>
+ * </ul>
+ * A transaction executing the same SELECT shape from the same method at least nPlusOneThreshold times is flagged as an N+1 suspect.
+ * <p>
+ * Meant for diagnostics rather than for being always on: every statement costs a stack walk.
+ */
+public class SqlStatementProfiler extends SessionProfilerAdapter {
+    public static final int DEFAULT_N_PLUS_ONE_THRESHOLD = 5;
+    public static final int DEFAULT_RECENT_TRANSACTIONS = 100;
+    public static final Predicate<String> DEFAULT_CALLER_FILTER = className -> className.endsWith("Repository") || className.endsWith("DAO");
+    public static final String UNATTRIBUTED = "(unattributed)";
+    private static final String ACCESSOR_PACKAGE = "org.eclipse.persistence.internal.databaseaccess.";
+    private static final String CLOSE_STATEMENT = "closeStatement";
+    private static final int MAX_RECORDED_STATEMENTS = 1000;
+    private static final Pattern BIND_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private final int nPlusOneThreshold;
+    private final int recentTransactions;
+    private final Predicate<String> callerFilter;
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(ThreadState::new);
+    private final AtomicLong transactionIds = new AtomicLong();
+    private final Map<String, LatencyHistogram> byShape = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> byMethod = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> nPlusOneSuspects = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<TransactionProfile> recent = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger recentSize = new AtomicInteger();
+    private final List<Session> profiledSessions = new ArrayList<>();
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public SqlStatementProfiler() {
+        this(DEFAULT_N_PLUS_ONE_THRESHOLD, DEFAULT_RECENT_TRANSACTIONS, DEFAULT_CALLER_FILTER);
+    }
+
+    /**
+     * @param nPlusOneThreshold  Executions of the same SELECT shape, from the same method and within one transaction, flagging an N+1 suspect
+     * @param recentTransactions Number of completed transactions kept, with their statements, for {@link #getRecentTransactions()}
+     * @param callerFilter       Selects, by fully qualified name, the classes whose methods statements are attributed to
+     */
+    public SqlStatementProfiler(int nPlusOneThreshold, int recentTransactions, Predicate<String> callerFilter) {
+        this.nPlusOneThreshold = nPlusOneThreshold;
+        this.recentTransactions = recentTransactions;
+        this.callerFilter = callerFilter;
+    }
+
+    /**
+     * Installs this profiler on the factory's session, together with the session listener delimiting transactions.
+     * To be invoked before the factory creates its first {@link javax.persistence.EntityManager}.
+     */
+    public SqlStatementProfiler attach(EntityManagerFactory entityManagerFactory) {
+        JpaHelper.getDatabaseSession(entityManagerFactory).setProfiler(this);
+        return this;
+    }
+
+    /**
+     * Invoked by EclipseLink when this profiler is installed on a session, whether through {@link #attach(EntityManagerFactory)}
+     * or directly: registers the session listener delimiting transactions
+     */
+    @Override
+    public synchronized void setSession(Session session) {
+        if (session == null || profiledSessions.contains(session)) {
+            return;
+        }
+        profiledSessions.add(session);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                endTransaction();
+            }
+
+            @Override
+            public void postReleaseUnitOfWork(SessionEvent event) {
+                endTransaction();
+            }
+
+            @Override
+            public void postRollbackTransaction(SessionEvent event) {
+                endTransaction();
+            }
+        });
+    }
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (!SessionProfiler.StatementExecute.equals(operationName)) {
+            return;
+        }
+        final ThreadState state = threadState.get();
+        // EclipseLink times the closing of statements as their execution: told apart by the accessor method
+        final String caller = caller();
+        if (caller == null) {
+            state.closingStatement = true;
+            return;
+        }
+        state.caller = caller;
+        state.query = query;
+        state.statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (!SessionProfiler.StatementExecute.equals(operationName)) {
+            return;
+        }
+        final ThreadState state = threadState.get();
+        if (state.closingStatement) {
+            state.closingStatement = false;
+            return;
+        }
+        if (state.caller == null) {
+            return;
+        }
+        final long nanos = System.nanoTime() - state.statementStart;
+        final String shape = shape(state.query);
+        final String caller = state.caller;
+        state.caller = null;
+        state.query = null;
+        byShape.computeIfAbsent(shape, s -> new LatencyHistogram()).record(nanos);
+        byMethod.computeIfAbsent(caller, c -> new LatencyHistogram()).record(nanos);
+        if (state.transaction == null) {
+            state.transaction = new TransactionProfile(transactionIds.incrementAndGet(), Thread.currentThread().getName());
+        }
+        state.transaction.add(new StatementRecord(shape, caller, nanos));
+    }
+
+    /**
+     * EclipseLink times the closing of statements as their execution ({@link SessionProfiler#StatementExecute}): for profilers
+     * counting or timing statements, tells the closing apart by the accessor method on the stack
+     *
+     * @return true if the statement execution being profiled by the current thread is actually its closing
+     */
+    public static boolean isClosingStatement() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(ACCESSOR_PACKAGE))
+                .findFirst()
+                .map(frame -> CLOSE_STATEMENT.equals(frame.getMethodName()))
+                .orElse(false));
+    }
+
+    /**
+     * As {@link #isClosingStatement()}, walking the stack once to attribute the statement as well
+     *
+     * @return The outermost method of a class matching the caller filter, {@link #UNATTRIBUTED} if none, null if the statement is being closed
+     */
+    private String caller() {
+        return STACK_WALKER.walk(frames -> {
+            boolean accessorSeen = false;
+            String res = UNATTRIBUTED;
+            final Iterator<StackWalker.StackFrame> iterator = frames.iterator();
+            while (iterator.hasNext()) {
+                final StackWalker.StackFrame frame = iterator.next();
+                if (!accessorSeen && frame.getClassName().startsWith(ACCESSOR_PACKAGE)) {
+                    if (CLOSE_STATEMENT.equals(frame.getMethodName())) {
+                        return null;
+                    }
+                    accessorSeen = true;
+                } else if (callerFilter.test(frame.getClassName())) {
+                    final String className = frame.getClassName();
+                    res = className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+                }
+            }
+            return res;
+        });
+    }
+
+    static String shape(DatabaseQuery query) {
+        if (query == null) {
+            return UNATTRIBUTED;
+        }
+        String sql = query.getSQLString();
+        if (sql == null && query.getCall() != null) {
+            sql = query.getCall().getSQLString();
+        }
+        if (sql == null) {
+            return query.getClass().getSimpleName() + (query.getReferenceClassName() != null ? " " + query.getReferenceClassName() : "");
+        }
+        return BIND_LIST.matcher(WHITESPACE.matcher(sql.trim()).replaceAll(" ")).replaceAll("?, ...");
+    }
+
+    private void endTransaction() {
+        final ThreadState state = threadState.get();
+        final TransactionProfile transaction = state.transaction;
+        if (transaction == null) {
+            return;
+        }
+        state.transaction = null;
+        transaction.selectsByCallerAndShape.forEach((callerAndShape, count) -> {
+            if (count >= nPlusOneThreshold) {
+                final LongAdder occurrences = nPlusOneSuspects.computeIfAbsent(callerAndShape, key -> new LongAdder());
+                if (occurrences.sum() == 0) {
+                    logger.warn("Possible N+1 select in transaction {}: {} executions of {}", transaction.id, count, callerAndShape);
+                }
+                occurrences.increment();
+                transaction.nPlusOneSuspects.add(callerAndShape);
+            }
+        });
+        transaction.selectsByCallerAndShape.clear();
+        recent.addLast(transaction);
+        if (recentSize.incrementAndGet() > recentTransactions && recent.pollFirst() != null) {
+            recentSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Latency histograms of the statements, by shape
+     */
+    public Map<String, LatencyHistogram> getStatementsByShape() {
+        return Collections.unmodifiableMap(byShape);
+    }
+
+    /**
+     * @return Latency histograms of the statements, by the method issuing them (e.g. "DemoEntityRepository.update")
+     */
+    public Map<String, LatencyHistogram> getStatementsByMethod() {
+        return Collections.unmodifiableMap(byMethod);
+    }
+
+    /**
+     * @return "method: shape" of the suspected N+1 selects -> number of transactions they have been detected in
+     */
+    public Map<String, Long> getNPlusOneSuspects() {
+        return nPlusOneSuspects.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum()));
+    }
+
+    /**
+     * @return The most recently completed transactions, oldest first
+     */
+    public List<TransactionProfile> getRecentTransactions() {
+        return new ArrayList<>(recent);
+    }
+
+    public void reset() {
+        byShape.clear();
+        byMethod.clear();
+        nPlusOneSuspects.clear();
+        recent.clear();
+        recentSize.set(0);
+    }
+
+    /**
+     * @return Statement shapes and methods as tables sorted by total time, followed by the N+1 suspects
+     */
+    public String report() {
+        final StringBuilder res = new StringBuilder();
+        appendTable(res, "Statement shape", byShape);
+        res.append('\n');
+        appendTable(res, "Method", byMethod);
+        final Map<String, Long> suspects = getNPlusOneSuspects();
+        if (!suspects.isEmpty()) {
+            res.append("\nN+1 suspects (transactions)\n");
+            suspects.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(suspect -> res.append(String.format("%8d  %s%n", suspect.getValue(), suspect.getKey())));
+        }
+        return res.toString();
+    }
+
+    private static void appendTable(StringBuilder out, String title, Map<String, LatencyHistogram> histograms) {
+        out.append(String.format("%10s %10s %10s %10s %12s  %s%n", "count", "mean us", "p50 us", "p99 us", "total ms", title));
+        histograms.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LatencyHistogram> e) -> e.getValue().getTotalNanos()).reversed())
+                .forEach(e -> out.append(String.format("%10d %10.1f %10.1f %10.1f %12.1f  %s%n",
+                        e.getValue().getCount(),
+                        e.getValue().getMeanNanos() / 1e3,
+                        e.getValue().getPercentileNanos(50) / 1e3,
+                        e.getValue().getPercentileNanos(99) / 1e3,
+                        e.getValue().getTotalNanos() / 1e6,
+                        e.getKey())));
+    }
+
+    private static class ThreadState {
+        TransactionProfile transaction;
+        boolean closingStatement;
+        String caller;
+        DatabaseQuery query;
+        long statementStart;
+    }
+
+    /**
+     * The statements issued by one transaction, in execution order (only the first {@value #MAX_RECORDED_STATEMENTS} are kept)
+     */
+    public static final class TransactionProfile {
+        private final long id;
+        private final String thread;
+        private final Instant started = Instant.now();
+        private final List<StatementRecord> statements = new ArrayList<>();
+        private final List<String> nPlusOneSuspects = new ArrayList<>();
+        // Only while the transaction is in progress
+        private final Map<String, Integer> selectsByCallerAndShape = new HashMap<>();
+        private int statementCount;
+        private long totalNanos;
+
+        TransactionProfile(long id, String thread) {
+            this.id = id;
+            this.thread = thread;
+        }
+
+        void add(StatementRecord statement) {
+            statementCount++;
+            totalNanos += statement.nanos;
+            if (statements.size() < MAX_RECORDED_STATEMENTS) {
+                statements.add(statement);
+            }
+            if (statement.shape.startsWith("SELECT")) {
+                selectsByCallerAndShape.merge(statement.caller + ": " + statement.shape, 1, Integer::sum);
+            }
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * @return When the first statement was issued
+         */
+        public Instant getStarted() {
+            return started;
+        }
+
+        public List<StatementRecord> getStatements() {
+            return Collections.unmodifiableList(statements);
+        }
+
+        public int getStatementCount() {
+            return statementCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return "method: shape" of the selects flagged as N+1 in this transaction
+         */
+        public List<String> getNPlusOneSuspects() {
+            return Collections.unmodifiableList(nPlusOneSuspects);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder res = new StringBuilder(String.format("Transaction %d on %s: %d statements, %.1f ms%n",
+                    id, thread, statementCount, totalNanos / 1e6));
+            statements.forEach(statement -> res.append("  ").append(statement).append('\n'));
+            return res.toString();
+        }
+    }
+
+    public static final class StatementRecord {
+        private final String shape;
+        private final String caller;
+        private final long nanos;
+
+        StatementRecord(String shape, String caller, long nanos) {
+            this.shape = shape;
+            this.caller = caller;
+            this.nanos = nanos;
+        }
+
+        public String getShape() {
+            return shape;
+        }
+
+        /**
+         * @return The method issuing the statement, {@link #UNATTRIBUTED} if no caller matched the filter
+         */
+        public String getCaller() {
+            return caller;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.1f us  %s  %s", nanos / 1e3, caller, shape);
+        }
+    }
+}
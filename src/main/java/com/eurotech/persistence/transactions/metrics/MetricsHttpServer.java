@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Serves {@link TransactionMetrics} to Prometheus on {@value #PATH}, using the JDK's built-in HTTP server. Scrapes are handled one at
+ * a time by the server's dispatcher thread, encoding into the same buffer, so that they do not compete with transactions for threads or memory.
+ */
+public class MetricsHttpServer implements Closeable {
+    public static final String PATH = "/metrics";
+
+    private final TransactionMetrics metrics;
+    private final HttpServer server;
+    private final PrometheusWriter writer = new PrometheusWriter();
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Starts serving right away
+     *
+     * @param address Where to listen, use port 0 for any free port (see {@link #getAddress()})
+     */
+    public MetricsHttpServer(InetSocketAddress address, TransactionMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(address, 0);
+        server.createContext(PATH, this::handle);
+        server.start();
+        logger.info("Serving transaction metrics on http://{}:{}{}", getAddress().getHostString(), getAddress().getPort(), PATH);
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            writer.reset();
+            metrics.writeTo(writer);
+            exchange.getResponseHeaders().set("Content-Type", PrometheusWriter.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, writer.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                writer.writeTo(body);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to serve the transaction metrics", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.metrics;
+
+import com.eurotech.persistence.transactions.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes samples in the Prometheus text exposition format (version 0.0.4) into a reusable byte buffer: once the buffer has grown
+ * to the size of a scrape, encoding allocates nothing. Names and label values are expected to be ASCII, label values
+ * being escaped by {@link #escape(String)} once, when registered. Not thread safe.
+ */
+final class PrometheusWriter {
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // The "le" label values of the LatencyHistogram buckets, in seconds
+    private static final String[] BUCKET_BOUNDS = new String[LatencyHistogram.BUCKETS + 1];
+
+    static {
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            BUCKET_BOUNDS[i] = BigDecimal.valueOf(LatencyHistogram.getBucketUpperBoundNanos(i), 9).stripTrailingZeros().toPlainString();
+        }
+        BUCKET_BOUNDS[LatencyHistogram.BUCKETS] = "+Inf";
+    }
+
+    private byte[] buffer = new byte[8192];
+    private int size = 0;
+
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the HELP and TYPE lines introducing a metric family
+     */
+    PrometheusWriter family(String name, String type, String help) {
+        return append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    PrometheusWriter sample(String name, long value) {
+        return append(name).append(' ').append(value).append('\n');
+    }
+
+    PrometheusWriter sample(String name, String labelName, String labelValue, long value) {
+        return append(name).append('{').label(labelName, labelValue).append("} ").append(value).append('\n');
+    }
+
+    PrometheusWriter sample(String name, String labelName, String labelValue, String otherLabelName, String otherLabelValue, long value) {
+        return append(name).append('{').label(labelName, labelValue).append(',').label(otherLabelName, otherLabelValue)
+                .append("} ").append(value).append('\n');
+    }
+
+    /**
+     * Writes the cumulative buckets, sum (in seconds) and count of a histogram
+     */
+    PrometheusWriter histogram(String name, String labelName, String labelValue, LatencyHistogram histogram) {
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            cumulative += histogram.getBucketCount(i);
+            append(name).append("_bucket{").label(labelName, labelValue).append(',').label("le", BUCKET_BOUNDS[i])
+                    .append("} ").append(cumulative).append('\n');
+        }
+        append(name).append("_sum{").label(labelName, labelValue).append("} ").appendSeconds(histogram.getTotalNanos()).append('\n');
+        return append(name).append("_count{").label(labelName, labelValue).append("} ").append(cumulative).append('\n');
+    }
+
+    private PrometheusWriter label(String name, String value) {
+        return append(name).append("=\"").append(value).append('"');
+    }
+
+    private PrometheusWriter append(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buffer[size++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    private PrometheusWriter append(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+        return this;
+    }
+
+    private PrometheusWriter append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        final int start = size;
+        do {
+            buffer[size++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Digits have been written least significant first
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            final byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    // Fixed point, avoiding the allocations of Double.toString
+    private PrometheusWriter appendSeconds(long nanos) {
+        append(nanos / NANOS_PER_SECOND).append('.');
+        final long fraction = nanos % NANOS_PER_SECOND;
+        for (long digit = NANOS_PER_SECOND / 10; digit > 0; digit /= 10) {
+            append((char) ('0' + fraction / digit % 10));
+        }
+        return this;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    /**
+     * @return The label value with backslashes, double quotes and line feeds escaped, and non-ASCII characters replaced
+     */
+    static String escape(String labelValue) {
+        final StringBuilder res = new StringBuilder(labelValue.length());
+        for (int i = 0; i < labelValue.length(); i++) {
+            final char c = labelValue.charAt(i);
+            if (c == '\\' || c == '"') {
+                res.append('\\').append(c);
+            } else if (c == '\n') {
+                res.append("\\n");
+            } else {
+                res.append(c < 128 ? c : '_');
+            }
+        }
+        return res.toString();
+    }
+}
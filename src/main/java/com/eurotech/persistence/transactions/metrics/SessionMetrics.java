@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.metrics;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.identitymaps.IdentityMap;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+import org.eclipse.persistence.sessions.server.ConnectionPool;
+import org.eclipse.persistence.sessions.server.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage metrics of the EclipseLink session behind an {@link EntityManagerFactory}: client sessions (one per {@link javax.persistence.EntityManager}
+ * with a transaction) and connection acquisitions, counted through session events, pool occupancy and shared cache entries, read when scraped,
+ * and cache hits and misses, counted through a session profiler if the session has none.
+ */
+class SessionMetrics extends SessionEventAdapter {
+    private static final String READ_POOL = "read";
+
+    private final String persistenceUnit;
+    private final ServerSession session;
+    private final List<String> entityNames = new ArrayList<>();
+    private final List<ClassDescriptor> descriptors = new ArrayList<>();
+    private final LongAdder clientSessionsAcquired = new LongAdder();
+    private final LongAdder clientSessionsReleased = new LongAdder();
+    private final LongAdder connectionsAcquired = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final CacheProfiler cacheProfiler;
+    private volatile boolean cacheProfilerReplaced;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    SessionMetrics(String persistenceUnit, EntityManagerFactory entityManagerFactory) {
+        this.persistenceUnit = PrometheusWriter.escape(persistenceUnit);
+        this.session = (ServerSession) JpaHelper.getServerSession(entityManagerFactory);
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            if (!descriptor.isAggregateDescriptor()) {
+                descriptors.add(descriptor);
+                entityNames.add(PrometheusWriter.escape(descriptor.getJavaClass().getSimpleName()));
+            }
+        }
+        session.getEventManager().addListener(this);
+        // A session has a single profiler: the one already attached (e.g. a SqlStatementProfiler) is left alone
+        cacheProfiler = session.getProfiler() == null ? new CacheProfiler() : null;
+        if (cacheProfiler != null) {
+            session.setProfiler(cacheProfiler);
+        } else {
+            logger.info("Persistence unit {} already profiled by {}: cache hits and misses will not be counted", persistenceUnit, session.getProfiler().getClass().getSimpleName());
+        }
+    }
+
+    ServerSession getSession() {
+        return session;
+    }
+
+    String getPersistenceUnit() {
+        return persistenceUnit;
+    }
+
+    @Override
+    public void postAcquireClientSession(SessionEvent event) {
+        clientSessionsAcquired.increment();
+    }
+
+    @Override
+    public void postReleaseClientSession(SessionEvent event) {
+        clientSessionsReleased.increment();
+    }
+
+    @Override
+    public void postAcquireConnection(SessionEvent event) {
+        connectionsAcquired.increment();
+    }
+
+    long getClientSessionsActive() {
+        return clientSessionsAcquired.sum() - clientSessionsReleased.sum();
+    }
+
+    void writeClientSessions(PrometheusWriter writer) {
+        writer.sample("tx_entity_managers_active", "unit", persistenceUnit, getClientSessionsActive());
+    }
+
+    void writeClientSessionsTotal(PrometheusWriter writer) {
+        writer.sample("tx_entity_managers_total", "unit", persistenceUnit, clientSessionsAcquired.sum());
+    }
+
+    void writeConnectionsAcquired(PrometheusWriter writer) {
+        writer.sample("tx_connection_acquisitions_total", "unit", persistenceUnit, connectionsAcquired.sum());
+    }
+
+    void writePools(PrometheusWriter writer, String name, boolean active) {
+        boolean readPoolShared = false;
+        for (ConnectionPool pool : session.getConnectionPools().values()) {
+            writePool(writer, name, pool.getName(), pool, active);
+            readPoolShared |= pool == session.getReadConnectionPool();
+        }
+        // Named after the default pool, whose settings it copies, unless actually shared with it
+        if (!readPoolShared && session.getReadConnectionPool() != null) {
+            writePool(writer, name, READ_POOL, session.getReadConnectionPool(), active);
+        }
+    }
+
+    private void writePool(PrometheusWriter writer, String name, String poolName, ConnectionPool pool, boolean active) {
+        // Read without locking the pool: a scrape may be off by a connection being acquired or released
+        final long value = active ? pool.getTotalNumberOfConnections() - pool.getConnectionsAvailable().size() : pool.getMaxNumberOfConnections();
+        writer.sample(name, "unit", persistenceUnit, "pool", poolName, value);
+    }
+
+    void writeCacheEntries(PrometheusWriter writer) {
+        for (int i = 0; i < descriptors.size(); i++) {
+            final IdentityMap identityMap = session.getIdentityMapAccessorInstance().getIdentityMapManager().getIdentityMap(descriptors.get(i), true);
+            writer.sample("tx_cache_entries", "unit", persistenceUnit, "entity", entityNames.get(i), identityMap == null ? 0 : identityMap.getSize());
+        }
+    }
+
+    /**
+     * Whether cache hits and misses are still counted: a profiler attached afterwards (e.g. a SqlStatementProfiler) replaces ours, the
+     * counters then stop, and are no longer exposed rather than exposed frozen
+     */
+    private boolean isCacheCounted() {
+        if (cacheProfiler == null || cacheProfilerReplaced) {
+            return false;
+        }
+        if (session.getProfiler() != cacheProfiler) {
+            cacheProfilerReplaced = true;
+            logger.warn("Persistence unit {} now profiled by {}: cache hits and misses are no longer counted", persistenceUnit,
+                    session.getProfiler() == null ? "none" : session.getProfiler().getClass().getSimpleName());
+            return false;
+        }
+        return true;
+    }
+
+    void writeCacheHits(PrometheusWriter writer, boolean hits) {
+        if (isCacheCounted()) {
+            writer.sample(hits ? "tx_cache_hits_total" : "tx_cache_misses_total", "unit", persistenceUnit, hits ? cacheHits.sum() : cacheMisses.sum());
+        }
+    }
+
+    private class CacheProfiler extends SessionProfilerAdapter {
+        @Override
+        public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+            occurred(operationName, session);
+        }
+
+        @Override
+        public void occurred(String operationName, AbstractSession session) {
+            if (SessionProfiler.CacheHits.equals(operationName)) {
+                cacheHits.increment();
+            } else if (SessionProfiler.CacheMisses.equals(operationName)) {
+                cacheMisses.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions.metrics;
+
+import com.eurotech.persistence.repositories.AdaptiveLockMode;
+import com.eurotech.persistence.transactions.LatencyHistogram;
+import com.eurotech.persistence.transactions.TxManagerImpl;
+import com.eurotech.persistence.transactions.jdbc.PooledDataSource;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.Session;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transaction metrics, fed by {@link TxManagerImpl} (and, for the EclipseLink sessions, by the persistence units added), exposed
+ * in the Prometheus text format by {@link MetricsHttpServer}. Recording only updates counters and histograms: a scrape reads them
+ * without blocking transactions.
+ */
+public class TransactionMetrics {
+    public enum Phase {
+        /**
+         * The transaction's work, from the first statement to the last one, for each attempt
+         */
+        EXECUTE,
+        COMMIT,
+        ROLLBACK,
+        /**
+         * The whole transaction, attempts included
+         */
+        TOTAL;
+
+        private final String label = name().toLowerCase();
+    }
+
+    public enum Outcome {
+        COMMITTED,
+        /**
+         * Read-only transaction, completed
+         */
+        ROLLED_BACK,
+        FAILED, TIMED_OUT;
+
+        private final String label = name().toLowerCase();
+    }
+
+    // values() copies the constants at each call
+    private static final Phase[] PHASES = Phase.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private final LatencyHistogram[] phaseLatencies = new LatencyHistogram[PHASES.length];
+    private final LongAdder[] outcomes = new LongAdder[OUTCOMES.length];
+    private final LongAdder started = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final List<SessionMetrics> sessions = new CopyOnWriteArrayList<>();
+    private final List<ConnectionPool> connectionPools = new CopyOnWriteArrayList<>();
+    private final List<LockMode> lockModes = new CopyOnWriteArrayList<>();
+
+    public TransactionMetrics() {
+        for (int i = 0; i < phaseLatencies.length; i++) {
+            phaseLatencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds the metrics of the EclipseLink session behind the factory: {@link javax.persistence.EntityManager}s and connections in use,
+     * connection pools and shared cache. A session is added once, its other factories (e.g. of other {@link TxManagerImpl}s on the
+     * same unit) being ignored; another session under the same name is rejected, as its series would clash.
+     */
+    public synchronized TransactionMetrics addPersistenceUnit(String persistenceUnitName, EntityManagerFactory entityManagerFactory) {
+        final Session session = JpaHelper.getServerSession(entityManagerFactory);
+        for (SessionMetrics added : sessions) {
+            if (added.getSession() == session) {
+                return this;
+            }
+            if (added.getPersistenceUnit().equals(PrometheusWriter.escape(persistenceUnitName))) {
+                throw new IllegalArgumentException("Persistence unit " + persistenceUnitName + " already added, with another session");
+            }
+        }
+        sessions.add(new SessionMetrics(persistenceUnitName, entityManagerFactory));
+        return this;
+    }
+
+    /**
+     * Adds the metrics of the connection pool: connections in use and idle, acquisition times and timeouts, validation failures
+     * and statement cache hits. A pool is added once: its series would otherwise be duplicated.
+     */
+    public synchronized TransactionMetrics addConnectionPool(String poolName, PooledDataSource dataSource) {
+        if (connectionPools.stream().anyMatch(connectionPool -> connectionPool.dataSource == dataSource)) {
+            throw new IllegalArgumentException("Connection pool already added");
+        }
+        connectionPools.add(new ConnectionPool(poolName, dataSource));
+        return this;
+    }
+
+    /**
+     * Adds the lock mode selected by the adaptive lock mode (e.g. {@link AdaptiveLockMode#forEntityClass(Class)}) and its switches,
+     * labelled by its name. A lock mode is added once.
+     */
+    public synchronized TransactionMetrics addAdaptiveLockMode(AdaptiveLockMode adaptiveLockMode) {
+        if (lockModes.stream().noneMatch(lockMode -> lockMode.adaptiveLockMode == adaptiveLockMode)) {
+            lockModes.add(new LockMode(adaptiveLockMode));
+        }
+        return this;
+    }
+
+    public void transactionStarted() {
+        started.increment();
+    }
+
+    public void transactionEnded(Outcome outcome, long nanos) {
+        outcomes[outcome.ordinal()].increment();
+        phaseLatencies[Phase.TOTAL.ordinal()].record(nanos);
+    }
+
+    public void phaseCompleted(Phase phase, long nanos) {
+        phaseLatencies[phase.ordinal()].record(nanos);
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    /**
+     * An attempt failed and was rolled back: the rollback completing a read-only transaction is not counted
+     */
+    public void aborted() {
+        rollbacks.increment();
+    }
+
+    public long getTransactions(Outcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    public long getInFlight() {
+        long ended = 0;
+        for (LongAdder outcome : outcomes) {
+            ended += outcome.sum();
+        }
+        return started.sum() - ended;
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    public LatencyHistogram getPhaseLatency(Phase phase) {
+        return phaseLatencies[phase.ordinal()];
+    }
+
+    /**
+     * @return The metrics in the Prometheus text format, as served by {@link MetricsHttpServer}
+     */
+    public String scrape() {
+        final PrometheusWriter writer = new PrometheusWriter();
+        writeTo(writer);
+        return writer.toString();
+    }
+
+    void writeTo(PrometheusWriter writer) {
+        writer.family("tx_transactions_total", "counter", "Transactions completed, by outcome");
+        for (Outcome outcome : OUTCOMES) {
+            writer.sample("tx_transactions_total", "outcome", outcome.label, outcomes[outcome.ordinal()].sum());
+        }
+        writer.family("tx_transactions_in_flight", "gauge", "Transactions started and not completed yet")
+                .sample("tx_transactions_in_flight", getInFlight());
+        writer.family("tx_retries_total", "counter", "Transaction attempts retried after a recoverable failure")
+                .sample("tx_retries_total", retries.sum());
+        writer.family("tx_rollbacks_total", "counter", "Transaction attempts aborted and rolled back")
+                .sample("tx_rollbacks_total", rollbacks.sum());
+        writer.family("tx_phase_duration_seconds", "histogram", "Duration of the transaction phases");
+        for (Phase phase : PHASES) {
+            writer.histogram("tx_phase_duration_seconds", "phase", phase.label, phaseLatencies[phase.ordinal()]);
+        }
+        writeConnectionPools(writer);
+        writeAdaptiveLockModes(writer);
+        if (sessions.isEmpty()) {
+            return;
+        }
+        // Indexed loops: no iterator nor lambda allocated per scrape
+        writer.family("tx_entity_managers_active", "gauge", "Entity managers holding a client session, by persistence unit");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writeClientSessions(writer);
+        }
+        writer.family("tx_entity_managers_total", "counter", "Client sessions acquired by entity managers, by persistence unit");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writeClientSessionsTotal(writer);
+        }
+        writer.family("tx_connection_acquisitions_total", "counter", "Connections acquired by client sessions, by persistence unit");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writeConnectionsAcquired(writer);
+        }
+        writer.family("tx_connections_active", "gauge", "Connections in use, by persistence unit and connection pool");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writePools(writer, "tx_connections_active", true);
+        }
+        writer.family("tx_connections_max", "gauge", "Maximum size of the connection pool, by persistence unit and connection pool");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writePools(writer, "tx_connections_max", false);
+        }
+        writer.family("tx_cache_entries", "gauge", "Entities in the shared cache, by persistence unit and entity");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writeCacheEntries(writer);
+        }
+        writer.family("tx_cache_hits_total", "counter", "Queries answered by the shared cache, by persistence unit");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writeCacheHits(writer, true);
+        }
+        writer.family("tx_cache_misses_total", "counter", "Queries not answered by the shared cache, by persistence unit");
+        for (int i = 0; i < sessions.size(); i++) {
+            sessions.get(i).writeCacheHits(writer, false);
+        }
+    }
+
+    private void writeAdaptiveLockModes(PrometheusWriter writer) {
+        if (lockModes.isEmpty()) {
+            return;
+        }
+        writer.family("tx_lock_mode_pessimistic", "gauge", "Whether reads currently use the pessimistic lock mode, by adaptive lock mode");
+        for (int i = 0; i < lockModes.size(); i++) {
+            final LockMode lockMode = lockModes.get(i);
+            writer.sample("tx_lock_mode_pessimistic", "entity", lockMode.name, lockMode.adaptiveLockMode.isPessimistic() ? 1 : 0);
+        }
+        writer.family("tx_lock_mode_switches_total", "counter", "Switches of the lock mode used for reads, by adaptive lock mode and new mode");
+        for (int i = 0; i < lockModes.size(); i++) {
+            final LockMode lockMode = lockModes.get(i);
+            writer.sample("tx_lock_mode_switches_total", "entity", lockMode.name, "to", "pessimistic", lockMode.adaptiveLockMode.getSwitchesToPessimistic())
+                    .sample("tx_lock_mode_switches_total", "entity", lockMode.name, "to", "optimistic", lockMode.adaptiveLockMode.getSwitchesToOptimistic());
+        }
+    }
+
+    private void writeConnectionPools(PrometheusWriter writer) {
+        if (connectionPools.isEmpty()) {
+            return;
+        }
+        writer.family("tx_pool_connections", "gauge", "Connections of the connection pool, by pool and state");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_connections", "pool", pool.name, "state", "active", pool.dataSource.getActiveCount())
+                    .sample("tx_pool_connections", "pool", pool.name, "state", "idle", pool.dataSource.getIdleCount());
+        }
+        writer.family("tx_pool_connections_max", "gauge", "Maximum size of the connection pool, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_connections_max", "pool", pool.name, pool.dataSource.getOptions().getMaxSize());
+        }
+        writer.family("tx_pool_waiting", "gauge", "Threads waiting for a connection, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_waiting", "pool", pool.name, pool.dataSource.getWaitingCount());
+        }
+        writer.family("tx_pool_acquisition_seconds", "histogram", "Time taken to acquire a connection, waits included, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.histogram("tx_pool_acquisition_seconds", "pool", pool.name, pool.dataSource.getAcquisitionTime());
+        }
+        writer.family("tx_pool_acquisition_timeouts_total", "counter", "Connection acquisitions failed for want of a connection, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_acquisition_timeouts_total", "pool", pool.name, pool.dataSource.getAcquisitionTimeoutCount());
+        }
+        writer.family("tx_pool_validation_failures_total", "counter", "Idle connections discarded by validation, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_validation_failures_total", "pool", pool.name, pool.dataSource.getValidationFailureCount());
+        }
+        writer.family("tx_pool_statement_cache_hits_total", "counter", "Prepared statements reused from the statement cache, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_statement_cache_hits_total", "pool", pool.name, pool.dataSource.getStatementCacheHits());
+        }
+        writer.family("tx_pool_statement_cache_misses_total", "counter", "Prepared statements prepared anew, by pool");
+        for (int i = 0; i < connectionPools.size(); i++) {
+            final ConnectionPool pool = connectionPools.get(i);
+            writer.sample("tx_pool_statement_cache_misses_total", "pool", pool.name, pool.dataSource.getStatementCacheMisses());
+        }
+    }
+
+    private static final class LockMode {
+        private final String name;
+        private final AdaptiveLockMode adaptiveLockMode;
+
+        private LockMode(AdaptiveLockMode adaptiveLockMode) {
+            this.name = PrometheusWriter.escape(adaptiveLockMode.getName());
+            this.adaptiveLockMode = adaptiveLockMode;
+        }
+    }
+
+    private static final class ConnectionPool {
+        private final String name;
+        private final PooledDataSource dataSource;
+
+        private ConnectionPool(String name, PooledDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -13,6 +13,8 @@
 package org.eclipse.kapua.commons.jpa;
 
 import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.SessionProfiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +22,7 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import javax.persistence.PersistenceUnit;
 import javax.sql.DataSource;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -68,6 +71,28 @@ public abstract class AbstractEntityManagerFactory implements org.eclipse.kapua.
      * @since 2.0.0
      */
     protected AbstractEntityManagerFactory(String persistenceUnitName, String datasourceName) {
+        this(persistenceUnitName, new HashMap<>());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param persistenceUnitName The {@link PersistenceUnit} name.
+     * @param dataSource          The {@link DataSource} providing the connections (e.g. a connection pool), overriding the JDBC settings of the {@link PersistenceUnit}.
+     * @since 2.0.0
+     */
+    protected AbstractEntityManagerFactory(String persistenceUnitName, DataSource dataSource) {
+        this(persistenceUnitName, Collections.singletonMap(PersistenceUnitProperties.NON_JTA_DATASOURCE, dataSource));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param persistenceUnitName The {@link PersistenceUnit} name.
+     * @param additionalOverrides Properties overriding the {@link PersistenceUnit} ones (e.g. the JDBC url), on top of the standard overrides.
+     * @since 2.0.0
+     */
+    protected AbstractEntityManagerFactory(String persistenceUnitName, Map<String, ?> additionalOverrides) {
         //
         // Initialize the EntityManagerFactory
         try {
@@ -76,13 +101,14 @@ public abstract class AbstractEntityManagerFactory implements org.eclipse.kapua.
             Map<String, Object> configOverrides = new HashMap<>();
 
             configOverrides.put(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "false"); // This has to be set to false in order to disable the local object cache of EclipseLink.
-//            configOverrides.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, DataSource.getDataSource());
 
 //            String targetDatabase = SYSTEM_SETTING.getString(SystemSettingKey.DB_JDBC_DATABASE_TARGET);
 //            if (!Strings.isNullOrEmpty(targetDatabase)) {
 //                configOverrides.put(PersistenceUnitProperties.TARGET_DATABASE, targetDatabase);
 //            }
 
+            configOverrides.putAll(additionalOverrides);
+
             // Standalone JPA
             entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnitName, configOverrides);
         } catch (Throwable ex) {
@@ -102,4 +128,24 @@ public abstract class AbstractEntityManagerFactory implements org.eclipse.kapua.
         return new EntityManager(entityManagerFactory.createEntityManager());
     }
 
+    /**
+     * Returns the JPA factory behind this one, e.g. to add the usage of the {@link PersistenceUnit} to metrics.
+     *
+     * @return The JPA {@link EntityManagerFactory}.
+     * @since 2.0.0
+     */
+    public EntityManagerFactory getJpaEntityManagerFactory() {
+        return entityManagerFactory;
+    }
+
+    /**
+     * Profiles the operations (e.g. the SQL statements) of the {@link EntityManager}s created from now on.
+     *
+     * @param profiler The EclipseLink profiler to install on the session of the {@link PersistenceUnit}, replacing any previous one.
+     * @since 2.0.0
+     */
+    public void setSessionProfiler(SessionProfiler profiler) {
+        JpaHelper.getDatabaseSession(entityManagerFactory).setProfiler(profiler);
+    }
+
 }
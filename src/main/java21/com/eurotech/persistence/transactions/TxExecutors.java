@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2016, 2022 Eurotech and/or its affiliates and others
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Eurotech - initial API and implementation
+ *******************************************************************************/
+package com.eurotech.persistence.transactions;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for running transactions, e.g. one per request. The number of concurrent transactions is capped, so that threads
+ * do not outnumber the connections available to them.
+ * <p>
+ * JDK 21+ implementation: each transaction runs on its own virtual thread, parking (without holding a carrier thread)
+ * while waiting for a permit or for the database.
+ */
+public final class TxExecutors {
+
+    private TxExecutors() {
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return true;
+    }
+
+    public static ExecutorService newTransactionExecutor(int maxConcurrentTransactions) {
+        return new PermitBoundedExecutorService(Executors.newVirtualThreadPerTaskExecutor(), maxConcurrentTransactions);
+    }
+
+    public static ExecutorService newPlatformTransactionExecutor(int maxConcurrentTransactions) {
+        return Executors.newFixedThreadPool(maxConcurrentTransactions);
+    }
+}
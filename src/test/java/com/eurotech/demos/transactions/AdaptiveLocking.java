@@ -0,0 +1,80 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.AdaptiveLockMode;
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import com.eurotech.persistence.transactions.metrics.TransactionMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class AdaptiveLocking {
+
+    public static final int THREADS = 8;
+    public static final int UPDATES_PER_THREAD = 25;
+    private JpaTxManagerFactory txManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        txManagerFactory = new JpaTxManagerFactory(5);
+    }
+
+    /**
+     * This demonstrates the {@link AdaptiveLockMode} switching to pessimistic reads when many threads update the same versioned entity:
+     * every update that does not fail is counted, so at the end the entity's changes counter must match the successful updates.
+     * The switches are exported through the transaction metrics.
+     *
+     * @throws InterruptedException never, really
+     */
+    @Test
+    public void demoAdaptiveLockMode() throws InterruptedException {
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final TxManager txManager = txManagerFactory.create("demos");
+        final VersionedEntity initialEntity = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity Content")));
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final String threadName = "T" + t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                    try {
+                        txManager.execute(tx -> {
+                            final VersionedEntity entity = repo.find(tx, initialEntity.getId()).get();
+                            entity.setContent(threadName + " update " + entity.getChangesCounter());
+                            return repo.update(tx, entity);
+                        });
+                        succeeded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final AdaptiveLockMode adaptiveLockMode = repo.getAdaptiveLockMode();
+        // Shared by all the repositories of the entity class
+        Assertions.assertSame(adaptiveLockMode, new DemoEntityRepository<>(VersionedEntity.class).getAdaptiveLockMode());
+        final List<String> lines = Arrays.asList(new TransactionMetrics().addAdaptiveLockMode(adaptiveLockMode).scrape().split("\n"));
+        Utils.print("MAIN", "\n" + lines.stream().filter(line -> line.startsWith("tx_lock_mode_")).collect(Collectors.joining("\n")));
+        Assertions.assertTrue(lines.contains("tx_lock_mode_switches_total{entity=\"VersionedEntity\",to=\"pessimistic\"} "
+                + adaptiveLockMode.getSwitchesToPessimistic()));
+        Assertions.assertTrue(lines.contains("tx_lock_mode_pessimistic{entity=\"VersionedEntity\"} " + (adaptiveLockMode.isPessimistic() ? 1 : 0)));
+        Utils.print("MAIN", String.format("succeeded: %d, failed: %d, conflict rate: %.3f, pessimistic: %s, switches to pessimistic: %d, to optimistic: %d",
+                succeeded.get(), failed.get(), adaptiveLockMode.getConflictRate(), adaptiveLockMode.isPessimistic(),
+                adaptiveLockMode.getSwitchesToPessimistic(), adaptiveLockMode.getSwitchesToOptimistic()));
+        final VersionedEntity finalEntity = txManager.execute(tx -> Utils.fetchAndPrint(tx, VersionedEntity.class, "MAIN", initialEntity.getId(), LockModeType.NONE));
+        Assertions.assertEquals(succeeded.get(), finalEntity.getChangesCounter());
+    }
+}
@@ -0,0 +1,45 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+public class BoundedPersistenceContext {
+
+    public static final int MAX_MANAGED_ENTITIES = 50;
+    public static final int ENTITIES = 500;
+
+    /**
+     * This demonstrates the bound on the persistence context: a single transaction creates {@value #ENTITIES} entities, but the persistence
+     * context is flushed and cleared whenever it holds {@value #MAX_MANAGED_ENTITIES} of them. All the rows are there once committed.
+     */
+    @Test
+    public void demoFlushAndClear() {
+        final TxManager txManager = new JpaTxManagerFactory(1, MAX_MANAGED_ENTITIES).create("demos");
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final String marker = UUID.randomUUID().toString();
+
+        final int[] usage = txManager.execute(tx -> {
+            for (int i = 0; i < ENTITIES; i++) {
+                repo.create(tx, VersionedEntity.newEntity(marker + " " + i));
+            }
+            final JpaTxContext jpaTxContext = (JpaTxContext) tx;
+            return new int[]{jpaTxContext.getManagedEntitiesHighWaterMark(), jpaTxContext.getFlushAndClearCount()};
+        });
+        Utils.print("MAIN", String.format("High water mark: %d managed entities, flushed and cleared %d times", usage[0], usage[1]));
+        Assertions.assertTrue(usage[0] <= MAX_MANAGED_ENTITIES);
+        Assertions.assertEquals(ENTITIES / MAX_MANAGED_ENTITIES, usage[1]);
+
+        final long rows = txManager.execute(tx -> JpaAwareTxContext.extractEntityManager(tx)
+                .createQuery("SELECT COUNT(e) FROM VersionedEntity e WHERE e.content LIKE :marker", Long.class)
+                .setParameter("marker", marker + " %")
+                .getSingleResult());
+        Assertions.assertEquals(ENTITIES, rows);
+    }
+}
@@ -0,0 +1,114 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.BulkOptions;
+import com.eurotech.persistence.transactions.BulkResult;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jdbc.ConnectionPoolOptions;
+import com.eurotech.persistence.transactions.jdbc.PooledDataSource;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BulkExecution {
+
+    public static final int NUMBER_OF_ITEMS = 4096;
+
+    /**
+     * This demonstrates the creation of {@value #NUMBER_OF_ITEMS} entities in chunks, each chunk in its own transaction:
+     * the items failing are reported, while the rest of their chunk is committed anyway.
+     */
+    @Test
+    public void demoExecuteAll() {
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final List<Integer> items = IntStream.range(0, NUMBER_OF_ITEMS).boxed().collect(Collectors.toList());
+
+        for (int parallelism : new int[]{1, 4}) {
+            final Instant start = Instant.now();
+            final BulkResult<Integer, NonVersionedEntity> result = txManager.executeAll(items, (tx, item) -> {
+                if (item % 1000 == 999) {
+                    throw new IllegalArgumentException("Rejecting item " + item);
+                }
+                return repo.create(tx, NonVersionedEntity.newEntity("Bulk " + item));
+            }, BulkOptions.defaults().chunkSize(100).parallelism(parallelism));
+            Utils.print("MAIN", String.format("parallelism %d: %d created, %d failed in %d millis",
+                    parallelism, result.getResults().size(), result.getFailures().size(), Duration.between(start, Instant.now()).toMillis()));
+
+            Assertions.assertEquals(NUMBER_OF_ITEMS - 4, result.getResults().size());
+            Assertions.assertEquals(List.of(999, 1999, 2999, 3999),
+                    result.getFailures().stream().map(BulkResult.ItemFailure::getItem).collect(Collectors.toList()));
+            result.getItemResults().forEach(itemResult -> Assertions.assertEquals("Bulk " + itemResult.getItem(), itemResult.getResult().getContent()));
+        }
+    }
+
+    /**
+     * This demonstrates that items are read from the {@link Iterable} only as chunks complete: no more than one chunk per thread
+     * is in flight, plus the one being filled
+     */
+    @Test
+    public void demoBoundedInFlight() {
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final int chunkSize = 50;
+        final int parallelism = 2;
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        final Iterable<Integer> items = () -> IntStream.range(0, NUMBER_OF_ITEMS)
+                .peek(item -> maxAhead.accumulateAndGet(read.incrementAndGet() - processed.get(), Math::max))
+                .iterator();
+
+        final BulkResult<Integer, NonVersionedEntity> result = txManager.executeAll(items, (tx, item) -> {
+            final NonVersionedEntity created = repo.create(tx, NonVersionedEntity.newEntity("Bulk " + item));
+            processed.incrementAndGet();
+            return created;
+        }, BulkOptions.defaults().chunkSize(chunkSize).parallelism(parallelism));
+        Utils.print("MAIN", String.format("at most %d items read ahead of the processed ones", maxAhead.get()));
+
+        Assertions.assertEquals(NUMBER_OF_ITEMS, result.getResults().size());
+        Assertions.assertTrue(maxAhead.get() <= (parallelism + 1) * chunkSize);
+    }
+
+    /**
+     * This demonstrates the parallelism capped by the connection pool: asking for more transactions than connections would only
+     * make them wait for one
+     */
+    @Test
+    public void demoParallelismBoundedByPool() {
+        try (PooledDataSource pool = new PooledDataSource(ConnectionPooling.URL, "test", "test", ConnectionPoolOptions.defaults()
+                .minSize(1)
+                .maxSize(2))) {
+            final TxManager txManager = new JpaTxManagerFactory(2)
+                    .withConnectionPool(pool)
+                    .create("demos", Utils.ownSession("bulk-pool-demo"));
+            final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+            final BulkOptions options = BulkOptions.defaults().chunkSize(50).parallelism(8).connectionPool(pool);
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+
+            final BulkResult<Integer, NonVersionedEntity> result = txManager.executeAll(IntStream.range(0, 1000).boxed().collect(Collectors.toList()),
+                    (tx, item) -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            return repo.create(tx, NonVersionedEntity.newEntity("Bulk " + item));
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }, options);
+            Utils.print("MAIN", String.format("parallelism %d, at most %d items processed at once", options.getParallelism(), maxRunning.get()));
+
+            Assertions.assertEquals(2, options.getParallelism());
+            Assertions.assertEquals(1000, result.getResults().size());
+            Assertions.assertTrue(maxRunning.get() <= 2);
+            Assertions.assertEquals(0, pool.getAcquisitionTimeoutCount());
+        }
+    }
+}
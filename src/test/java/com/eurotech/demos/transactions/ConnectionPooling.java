@@ -0,0 +1,153 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jdbc.ConnectionPoolOptions;
+import com.eurotech.persistence.transactions.jdbc.PooledDataSource;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import com.eurotech.persistence.transactions.metrics.TransactionMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ConnectionPooling {
+
+    public static final String URL = "jdbc:derby:/tmp/databases/demoDb;create=true";
+    public static final int POOL_SIZE = 3;
+    public static final int THREADS = 8;
+    public static final int TRANSACTIONS_PER_THREAD = 5;
+
+    /**
+     * This demonstrates the connection pool: {@value #THREADS} threads run transactions concurrently through a pool of {@value #POOL_SIZE}
+     * connections, so some wait for a connection. The same statements being issued again and again, most are reused from the statement cache.
+     */
+    @Test
+    public void demoConcurrentTransactions() throws InterruptedException, ExecutionException {
+        final TransactionMetrics metrics = new TransactionMetrics();
+        try (PooledDataSource pool = new PooledDataSource(URL, "test", "test", ConnectionPoolOptions.defaults()
+                .minSize(1)
+                .maxSize(POOL_SIZE)
+                .statementCacheSize(10))) {
+            final TxManager txManager = new JpaTxManagerFactory(3)
+                    .withMetrics(metrics)
+                    .withConnectionPool(pool)
+                    .create("demos", Utils.ownSession("pooling-demo"));
+            final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+
+            final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            final List<Future<?>> results = IntStream.range(0, THREADS)
+                    .mapToObj(thread -> executor.submit(() -> IntStream.range(0, TRANSACTIONS_PER_THREAD).forEach(i -> {
+                        final VersionedEntity entity = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity " + thread + "-" + i)));
+                        txManager.execute(tx -> repo.find(tx, entity.getId(), LockModeType.PESSIMISTIC_WRITE));
+                    })))
+                    .collect(Collectors.toList());
+            for (Future<?> result : results) {
+                result.get();
+            }
+            executor.shutdown();
+
+            Utils.print("MAIN", String.format("%d connections created, %d acquisitions (p99 %d us), statement cache: %d hits, %d misses",
+                    pool.getCreatedCount(), pool.getAcquisitionCount(), pool.getAcquisitionTime().getPercentileNanos(99) / 1000,
+                    pool.getStatementCacheHits(), pool.getStatementCacheMisses()));
+            Utils.print("MAIN", "\n" + Arrays.stream(metrics.scrape().split("\n"))
+                    .filter(line -> line.startsWith("tx_pool_") && !line.contains("_bucket{"))
+                    .collect(Collectors.joining("\n")));
+            Assertions.assertTrue(pool.getCreatedCount() <= POOL_SIZE);
+            Assertions.assertEquals(0, pool.getActiveCount());
+            Assertions.assertEquals(pool.getAcquisitionCount(), pool.getAcquisitionTime().getCount());
+            Assertions.assertTrue(pool.getAcquisitionCount() >= 2 * THREADS * TRANSACTIONS_PER_THREAD);
+            Assertions.assertTrue(pool.getStatementCacheHits() > pool.getStatementCacheMisses());
+            Assertions.assertTrue(metrics.scrape().contains("tx_pool_connections{pool=\"demos\",state=\"active\"} 0"));
+        }
+    }
+
+    /**
+     * This demonstrates the acquisition timeout: the only connection of the pool being held, the transaction fails once the timeout expires,
+     * and succeeds once the connection is returned
+     */
+    @Test
+    public void demoAcquisitionTimeout() throws SQLException {
+        try (PooledDataSource pool = new PooledDataSource(URL, "test", "test", ConnectionPoolOptions.defaults()
+                .minSize(0)
+                .maxSize(1)
+                .acquisitionTimeout(Duration.ofMillis(200)))) {
+            final JpaTxManagerFactory txManagerFactory = new JpaTxManagerFactory(1).withConnectionPool(pool);
+            final TxManager txManager = txManagerFactory
+                    .create("demos", Utils.ownSession("pooling-timeout-demo"));
+            // The pool serves a single persistence unit
+            Assertions.assertThrows(IllegalStateException.class, () -> txManagerFactory
+                    .create("demos", Utils.ownSession("pooling-timeout-demo-2")));
+            final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+
+            final Connection held = pool.getConnection();
+            final RuntimeException failure = Assertions.assertThrows(RuntimeException.class,
+                    () -> txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity Content"))));
+            Utils.print("MAIN", "Failed while the connection is held: " + failure);
+            Assertions.assertEquals(1, pool.getAcquisitionTimeoutCount());
+            Assertions.assertTrue(hasCause(failure, SQLTransientConnectionException.class));
+
+            held.close();
+            Assertions.assertNotNull(txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity Content"))).getId());
+            Assertions.assertEquals(0, pool.getActiveCount());
+        }
+    }
+
+    /**
+     * This demonstrates connections going back to the pool as they were taken: the settings changed are restored, and the statements
+     * left open are closed, those still referenced failing if used
+     */
+    @Test
+    public void demoConnectionReset() throws SQLException {
+        try (PooledDataSource pool = new PooledDataSource(URL, "test", "test", ConnectionPoolOptions.defaults()
+                .minSize(1)
+                .maxSize(1))) {
+            final Connection connection = pool.getConnection();
+            final int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            connection.setReadOnly(true);
+            final PreparedStatement cached = connection.prepareStatement("VALUES 1");
+            final Statement notCached = connection.createStatement();
+            connection.close();
+
+            Assertions.assertTrue(cached.isClosed());
+            Assertions.assertTrue(notCached.isClosed());
+            Assertions.assertThrows(SQLException.class, cached::executeQuery);
+            Assertions.assertThrows(SQLException.class, () -> notCached.executeQuery("VALUES 1"));
+            try (Connection reused = pool.getConnection()) {
+                Utils.print("MAIN", String.format("Connection reused: isolation %d, read-only %b", reused.getTransactionIsolation(), reused.isReadOnly()));
+                Assertions.assertEquals(1, pool.getCreatedCount());
+                Assertions.assertEquals(isolation, reused.getTransactionIsolation());
+                Assertions.assertFalse(reused.isReadOnly());
+                // Back from the cache
+                try (PreparedStatement statement = reused.prepareStatement("VALUES 1")) {
+                    Assertions.assertTrue(statement.executeQuery().next());
+                }
+                Assertions.assertEquals(1, pool.getStatementCacheHits());
+            }
+        }
+    }
+
+    private static boolean hasCause(Throwable throwable, Class<? extends Throwable> causeClass) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (causeClass.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.TxTimeoutException;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+public class Deadlines {
+
+    public static final int MAX_ATTEMPTS = 10;
+    public static final int ATTEMPT_MILLIS = 300;
+    private TxManager txManager;
+    private DemoEntityRepository<NonVersionedEntity> repo;
+
+    @BeforeEach
+    void setUp() {
+        txManager = new JpaTxManagerFactory(MAX_ATTEMPTS).create("demos");
+        repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+    }
+
+    /**
+     * This demonstrates a transaction still running after its deadline: the next statement is not issued, and the caller gets a {@link TxTimeoutException}
+     */
+    @Test
+    public void demoStatementPastDeadline() {
+        final NonVersionedEntity entity = txManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity Content")));
+        final TxTimeoutException e = Assertions.assertThrows(TxTimeoutException.class, () -> txManager.execute(Duration.ofMillis(200), tx -> {
+            Utils.sleep(ATTEMPT_MILLIS);
+            return repo.find(tx, entity.getId(), LockModeType.PESSIMISTIC_WRITE);
+        }));
+        Utils.print("MAIN", e.getMessage());
+    }
+
+    /**
+     * This demonstrates a transaction failing with recoverable exceptions: the retries stop when the time left is not enough
+     * for another attempt, long before {@value #MAX_ATTEMPTS} attempts are made
+     */
+    @Test
+    public void demoRetriesCappedByDeadline() {
+        final AtomicInteger attempts = new AtomicInteger();
+        Assertions.assertThrows(TxTimeoutException.class, () -> txManager.execute(Duration.ofSeconds(1), tx -> {
+            attempts.incrementAndGet();
+            Utils.sleep(ATTEMPT_MILLIS);
+            throw new OptimisticLockException("Conflicting, again");
+        }));
+        Utils.print("MAIN", String.format("gave up after %d attempts", attempts.get()));
+        Assertions.assertTrue(attempts.get() < 4);
+    }
+
+    /**
+     * This demonstrates the deadline of a {@link TxManager} implementing only the transactions without timeout, as decorators often do:
+     * the default implementation still sets the deadline on the context, so that the statement past the deadline is not issued.
+     * The same goes for read-only transactions
+     */
+    @Test
+    public void demoDefaultDeadline() {
+        final TxManager decorator = new TxManager() {
+            @Override
+            public <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) throws RuntimeException {
+                return txManager.execute(transactionConsumer, afterCommitConsumers);
+            }
+
+            @Override
+            public Supplier<TxContext> getSupplier() {
+                return txManager.getSupplier();
+            }
+        };
+        final NonVersionedEntity entity = decorator.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity Content")));
+        Assertions.assertThrows(TxTimeoutException.class, () -> decorator.execute(Duration.ofMillis(200), tx -> {
+            Utils.sleep(ATTEMPT_MILLIS);
+            return repo.find(tx, entity.getId(), LockModeType.PESSIMISTIC_WRITE);
+        }));
+        final TxTimeoutException e = Assertions.assertThrows(TxTimeoutException.class, () -> decorator.executeReadOnly(Duration.ofMillis(200), tx -> {
+            Utils.sleep(ATTEMPT_MILLIS);
+            return repo.find(tx, entity.getId(), LockModeType.NONE);
+        }));
+        Utils.print("MAIN", e.getMessage());
+    }
+}
@@ -0,0 +1,94 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeferredFlush {
+
+    public static final String URL = "jdbc:derby:/tmp/databases/demoDb;create=true";
+    public static final int ENTITIES = 200;
+
+    /**
+     * This demonstrates a deferred-flush transaction: the {@value #ENTITIES} entities created are only sent to the database (in JDBC batches)
+     * at commit, and are all there afterwards
+     */
+    @Test
+    public void demoDeferredCreates() {
+        final TxManager txManager = new JpaTxManagerFactory(1)
+                .withBatchWriting(50)
+                .create("demos", Utils.ownSession("deferred-flush-demo"));
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final String marker = UUID.randomUUID().toString();
+
+        final long rowsBeforeCommit = txManager.execute(tx -> {
+            ((JpaTxContext) tx).setFlushDeferred(true);
+            for (int i = 0; i < ENTITIES; i++) {
+                repo.create(tx, VersionedEntity.newEntity(marker + " " + i));
+            }
+            return countRows(marker);
+        });
+        final long rowsAfterCommit = countRows(marker);
+        Utils.print("MAIN", String.format("%d rows before commit, %d after", rowsBeforeCommit, rowsAfterCommit));
+        Assertions.assertEquals(0, rowsBeforeCommit);
+        Assertions.assertEquals(ENTITIES, rowsAfterCommit);
+    }
+
+    /**
+     * This demonstrates the retry of generated id clashes surfacing at the deferred flush: on the first attempt, the id generated for the new
+     * entity is taken by another connection before the commit, which fails. The transaction is retried, and the second attempt succeeds.
+     */
+    @Test
+    public void demoIdClashRetried() {
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final NonVersionedEntity created = txManager.execute(tx -> {
+            ((JpaTxContext) tx).setFlushDeferred(true);
+            final NonVersionedEntity entity = repo.create(tx, NonVersionedEntity.newEntity("Entity Content"));
+            if (attempts.incrementAndGet() == 1) {
+                insertClashingRow(entity.getId());
+            }
+            return entity;
+        });
+        Utils.print("MAIN", String.format("Created %s after %d attempts", created, attempts.get()));
+        Assertions.assertEquals(2, attempts.get());
+        Assertions.assertEquals("Entity Content", txManager.execute(tx -> repo.find(tx, created.getId())).get().getContent());
+    }
+
+    // Counts through a separate connection: rows not committed yet are not seen
+    private static long countRows(String marker) {
+        try (Connection connection = DriverManager.getConnection(URL, "test", "test");
+             PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM NONVERSIONEDENTITY WHERE CONTENT LIKE ?")) {
+            statement.setString(1, marker + " %");
+            try (java.sql.ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void insertClashingRow(Long id) {
+        try (Connection connection = DriverManager.getConnection(URL, "test", "test");
+             PreparedStatement statement = connection.prepareStatement("INSERT INTO NONVERSIONEDENTITY (ID, DTYPE, CHANGESCOUNTER, CONTENT) VALUES (?, 'NonVersionedEntity', 0, 'Clashing')")) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jfr.EntityManagerCreationEvent;
+import com.eurotech.persistence.transactions.jfr.LockAcquisitionEvent;
+import com.eurotech.persistence.transactions.jfr.TransactionCommitEvent;
+import com.eurotech.persistence.transactions.jfr.TransactionEvent;
+import com.eurotech.persistence.transactions.jfr.TransactionRetryEvent;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class FlightRecorderEvents {
+
+    /**
+     * This demonstrates the JFR events emitted by the transaction layer: a transaction retried once after a (simulated) optimistic
+     * conflict, then one reading an entity with a pessimistic lock. The recording is dumped and read back, as JDK Mission Control would.
+     */
+    @Test
+    public void demoTransactionEvents() throws IOException {
+        final TxManager txManager = new JpaTxManagerFactory(3).create("demos");
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final Path dump = Files.createTempFile("transactions", ".jfr");
+        final List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            Stream.of(TransactionEvent.class, TransactionCommitEvent.class, TransactionRetryEvent.class, LockAcquisitionEvent.class, EntityManagerCreationEvent.class)
+                    .forEach(eventClass -> recording.enable(eventClass).withoutThreshold());
+            recording.start();
+            final AtomicInteger attempts = new AtomicInteger();
+            final VersionedEntity created = txManager.execute(tx -> {
+                final VersionedEntity entity = repo.create(tx, VersionedEntity.newEntity("Entity Content"));
+                if (attempts.incrementAndGet() == 1) {
+                    throw new OptimisticLockException("Simulated conflict");
+                }
+                return entity;
+            });
+            txManager.execute(tx -> repo.find(tx, created.getId(), LockModeType.PESSIMISTIC_WRITE));
+            recording.stop();
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        } finally {
+            Files.deleteIfExists(dump);
+        }
+
+        events.forEach(event -> Utils.print("MAIN", String.format("%s %.3f ms %s", event.getEventType().getLabel(), event.getDuration().toNanos() / 1e6,
+                event.getFields().stream()
+                        .filter(field -> !Arrays.asList("startTime", "duration", "eventThread", "stackTrace").contains(field.getName()))
+                        .map(field -> field.getName() + "=" + event.getValue(field.getName()))
+                        .collect(Collectors.joining(", ")))));
+        final Map<String, List<RecordedEvent>> byName = events.stream().collect(Collectors.groupingBy(event -> event.getEventType().getName()));
+        final List<RecordedEvent> transactions = byName.get("com.eurotech.persistence.Transaction");
+        Assertions.assertEquals(2, transactions.size());
+        Assertions.assertEquals(TransactionEvent.COMMITTED, transactions.get(0).getString("outcome"));
+        Assertions.assertEquals(1, transactions.get(0).getInt("retries"));
+        final RecordedEvent retry = byName.get("com.eurotech.persistence.TransactionRetry").get(0);
+        Assertions.assertEquals(OptimisticLockException.class.getName(), retry.getString("exceptionClass"));
+        Assertions.assertEquals(2, byName.get("com.eurotech.persistence.TransactionCommit").size());
+        final RecordedEvent lock = byName.get("com.eurotech.persistence.LockAcquisition").get(0);
+        Assertions.assertEquals(LockModeType.PESSIMISTIC_WRITE.name(), lock.getString("lockMode"));
+        Assertions.assertTrue(lock.getBoolean("acquired"));
+        // One entity manager per transaction: the retried attempt reuses it
+        Assertions.assertEquals(2, byName.get("com.eurotech.persistence.EntityManagerCreation").size());
+    }
+}
@@ -0,0 +1,82 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.ContentionTracker;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HotKeys {
+
+    public static final int ENTITIES = 20;
+    public static final int HOTTEST_CONFLICTS = 40;
+    public static final int MAX_ATTEMPTS = 2;
+
+    /**
+     * This demonstrates the hot key report: stale copies of {@value #ENTITIES} entities are updated with a skewed distribution
+     * (the n-th entity {@value #HOTTEST_CONFLICTS}/n times), each update failing with an optimistic conflict on every attempt.
+     * The tracker, sized to 5 keys, reports the hottest ones.
+     */
+    @Test
+    public void demoHottestKeys() {
+        final ContentionTracker contentionTracker = new ContentionTracker(ContentionTracker.DEFAULT_DEPTH, ContentionTracker.DEFAULT_WIDTH, 5, Duration.ofMinutes(1));
+        final TxManager txManager = new JpaTxManagerFactory(MAX_ATTEMPTS).withContentionTracker(contentionTracker).create("demos");
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final List<VersionedEntity> staleCopies = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            final VersionedEntity staleCopy = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity Content")));
+            final VersionedEntity current = txManager.execute(tx -> repo.find(tx, staleCopy.getId(), LockModeType.NONE)).get();
+            current.setContent("Updated Content");
+            txManager.execute(tx -> repo.update(tx, current, LockModeType.NONE));
+            staleCopies.add(staleCopy);
+        }
+
+        int conflicts = 0;
+        for (int i = 0; i < ENTITIES; i++) {
+            final VersionedEntity staleCopy = staleCopies.get(i);
+            for (int update = 0; update < HOTTEST_CONFLICTS / (i + 1); update++) {
+                staleCopy.setContent("Stale Content " + update);
+                try {
+                    txManager.execute(tx -> repo.update(tx, staleCopy, LockModeType.NONE));
+                    Assertions.fail("The stale copy should not be updated");
+                } catch (RuntimeException e) {
+                    conflicts += MAX_ATTEMPTS;
+                }
+            }
+        }
+
+        Utils.print("MAIN", contentionTracker.report());
+        Assertions.assertEquals(conflicts, contentionTracker.getTotal());
+        final List<ContentionTracker.HotKey> hottestKeys = contentionTracker.getHottestKeys();
+        Assertions.assertEquals(5, hottestKeys.size());
+        Assertions.assertEquals("VersionedEntity#" + staleCopies.get(0).getId(), hottestKeys.get(0).getKey());
+        // Count-min sketches never underestimate
+        Assertions.assertTrue(hottestKeys.get(0).getConflicts() >= HOTTEST_CONFLICTS * MAX_ATTEMPTS);
+        Assertions.assertEquals("VersionedEntity#" + staleCopies.get(1).getId(), hottestKeys.get(1).getKey());
+    }
+
+    /**
+     * This demonstrates that keys with the same {@link String#hashCode()} ("Aa" and "BB") are told apart: each row of the sketch
+     * hashes the keys with its own seed, so they are unlikely to collide in all rows.
+     */
+    @Test
+    public void demoCollidingKeys() {
+        final ContentionTracker contentionTracker = new ContentionTracker(ContentionTracker.DEFAULT_DEPTH, ContentionTracker.DEFAULT_WIDTH, 1, Duration.ofMinutes(1));
+        Assertions.assertEquals("Aa".hashCode(), "BB".hashCode());
+        for (int i = 0; i < HOTTEST_CONFLICTS; i++) {
+            contentionTracker.record("Aa");
+        }
+        contentionTracker.record("BB");
+
+        Utils.print("MAIN", contentionTracker.report());
+        Assertions.assertEquals(HOTTEST_CONFLICTS, contentionTracker.estimate("Aa"));
+        Assertions.assertEquals(1, contentionTracker.estimate("BB"));
+        Assertions.assertEquals("Aa", contentionTracker.getHottestKeys().get(0).getKey());
+    }
+}
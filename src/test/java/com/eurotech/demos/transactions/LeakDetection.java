@@ -0,0 +1,83 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxContextLeakDetector;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class LeakDetection {
+
+    public static final int LEAKS = 3;
+    public static final int SAMPLING_INTERVAL = 10;
+
+    /**
+     * This demonstrates the detection of contexts obtained through {@link TxManager#getSupplier()} and never closed: {@value #LEAKS}
+     * contexts are leaked after reading an entity (so holding a transaction and its connection), one is closed properly and one is kept open.
+     * Once the leaked ones are garbage collected, they are reported with their acquisition site, and closed.
+     */
+    @Test
+    public void demoLeakedContexts() throws IOException {
+        final TxContextLeakDetector leakDetector = new TxContextLeakDetector(1);
+        final TxManager txManager = new JpaTxManagerFactory(1).withLeakDetector(leakDetector).create("demos");
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final VersionedEntity entity = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity Content")));
+
+        IntStream.range(0, LEAKS).forEach(i -> leak(txManager, repo, entity.getId()));
+        try (TxContext txContext = txManager.getSupplier().get()) {
+            Assertions.assertTrue(repo.find(txContext, entity.getId(), LockModeType.NONE).isPresent());
+            // Tracked contexts keep the interfaces of the context they stand for
+            Assertions.assertTrue(txContext instanceof JpaAwareTxContext);
+            txContext.commit();
+        }
+        final TxContext kept = txManager.getSupplier().get();
+
+        final Instant timeout = Instant.now().plusSeconds(10);
+        while (leakDetector.getLeakedCount() < LEAKS && Instant.now().isBefore(timeout)) {
+            System.gc();
+            Utils.sleep(50);
+        }
+        Utils.print("MAIN", "\n" + leakDetector.report(Duration.ZERO));
+        Assertions.assertEquals(LEAKS + 2, leakDetector.getTrackedCount());
+        Assertions.assertEquals(LEAKS, leakDetector.getLeakedCount());
+        Assertions.assertTrue(leakDetector.getRecentLeaks().stream()
+                .allMatch(leak -> Arrays.stream(leak.getSite()).anyMatch(frame -> frame.getMethodName().equals("leak"))));
+        Assertions.assertEquals(1, leakDetector.getOpen(Duration.ZERO).size());
+        kept.close();
+        Assertions.assertTrue(leakDetector.getOpen(Duration.ZERO).isEmpty());
+    }
+
+    private static void leak(TxManager txManager, DemoEntityRepository<VersionedEntity> repo, Long id) {
+        final TxContext txContext = txManager.getSupplier().get();
+        repo.find(txContext, id, LockModeType.NONE);
+    }
+
+    /**
+     * This demonstrates the sampling: only one context every {@value #SAMPLING_INTERVAL} is tracked, the others are handed out as they are
+     */
+    @Test
+    public void demoSampling() throws IOException {
+        final TxContextLeakDetector leakDetector = new TxContextLeakDetector(SAMPLING_INTERVAL);
+        final TxManager txManager = new JpaTxManagerFactory(1).withLeakDetector(leakDetector).create("demos");
+        int proxies = 0;
+        for (int i = 0; i < 10 * SAMPLING_INTERVAL; i++) {
+            try (TxContext txContext = txManager.getSupplier().get()) {
+                proxies += txContext.getClass().getSimpleName().startsWith("$Proxy") ? 1 : 0;
+            }
+        }
+        Utils.print("MAIN", leakDetector.report(Duration.ZERO));
+        Assertions.assertEquals(10, leakDetector.getTrackedCount());
+        Assertions.assertEquals(10, proxies);
+        Assertions.assertTrue(leakDetector.getOpen(Duration.ZERO).isEmpty());
+    }
+}
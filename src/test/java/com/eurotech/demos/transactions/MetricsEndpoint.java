@@ -0,0 +1,142 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import com.eurotech.persistence.transactions.jpa.SqlStatementProfiler;
+import com.eurotech.persistence.transactions.metrics.MetricsHttpServer;
+import com.eurotech.persistence.transactions.metrics.TransactionMetrics;
+import org.eclipse.kapua.commons.jpa.AbstractEntityManagerFactory;
+import org.eclipse.kapua.commons.jpa.DemoEntityDAO;
+import org.eclipse.kapua.commons.jpa.EntityManagerSession;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class MetricsEndpoint {
+
+    public static final int ENTITIES = 5;
+
+    /**
+     * This demonstrates the Prometheus endpoint: a few transactions (one retried after a simulated optimistic conflict,
+     * one failing, one read-only, whose rollback is not counted as an abort) are run, entities being found twice so that the second find is answered by the shared cache, then the endpoint is scraped.
+     * A dedicated session name keeps the metrics of this demo apart from the other demos using the same persistence unit.
+     */
+    @Test
+    public void demoPrometheusScrape() throws IOException {
+        final TransactionMetrics metrics = new TransactionMetrics();
+        final JpaTxManagerFactory txManagerFactory = new JpaTxManagerFactory(3).withMetrics(metrics);
+        final TxManager txManager = txManagerFactory.create("demos", Utils.ownSession("metrics-demo"));
+        // Another TxManager on the same session: its metrics are added once
+        txManagerFactory.create("demos", Utils.ownSession("metrics-demo"));
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final List<Long> ids = IntStream.range(0, ENTITIES)
+                .mapToObj(i -> txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity " + i))).getId())
+                .collect(Collectors.toList());
+        ids.forEach(id -> txManager.execute(tx -> repo.find(tx, id, LockModeType.NONE)));
+        ids.forEach(id -> txManager.execute(tx -> repo.find(tx, id, LockModeType.NONE)));
+        final AtomicInteger attempts = new AtomicInteger();
+        txManager.execute(tx -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new OptimisticLockException("Simulated conflict");
+            }
+            return repo.find(tx, ids.get(0), LockModeType.NONE);
+        });
+        Assertions.assertThrows(RuntimeException.class, () -> txManager.execute(tx -> {
+            throw new IllegalStateException("Simulated failure");
+        }));
+        txManager.executeReadOnly(tx -> repo.find(tx, ids.get(0), LockModeType.NONE));
+
+        final String scrape;
+        try (MetricsHttpServer server = new MetricsHttpServer(new InetSocketAddress("localhost", 0), metrics)) {
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", server.getAddress().getPort(), MetricsHttpServer.PATH).openConnection();
+            Assertions.assertEquals(200, connection.getResponseCode());
+            Assertions.assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            try (InputStream body = connection.getInputStream()) {
+                scrape = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        Utils.print("MAIN", "\n" + Arrays.stream(scrape.split("\n"))
+                .filter(line -> !line.contains("_bucket{"))
+                .collect(Collectors.joining("\n")));
+
+        final List<String> lines = Arrays.asList(scrape.split("\n"));
+        Assertions.assertTrue(lines.contains("tx_transactions_total{outcome=\"committed\"} " + (3 * ENTITIES + 1)));
+        Assertions.assertTrue(lines.contains("tx_transactions_total{outcome=\"failed\"} 1"));
+        Assertions.assertTrue(lines.contains("tx_transactions_total{outcome=\"rolled_back\"} 1"));
+        Assertions.assertTrue(lines.contains("tx_transactions_in_flight 0"));
+        Assertions.assertTrue(lines.contains("tx_retries_total 1"));
+        Assertions.assertTrue(lines.contains("tx_rollbacks_total 2"));
+        Assertions.assertTrue(lines.contains("tx_phase_duration_seconds_count{phase=\"total\"} " + (3 * ENTITIES + 3)));
+        Assertions.assertTrue(lines.contains("tx_phase_duration_seconds_bucket{phase=\"total\",le=\"+Inf\"} " + (3 * ENTITIES + 3)));
+        Assertions.assertEquals(1, lines.stream().filter(line -> line.startsWith("tx_entity_managers_active{")).count());
+        Assertions.assertTrue(lines.contains("tx_entity_managers_active{unit=\"demos\"} 0"));
+        Assertions.assertTrue(lines.contains("tx_cache_entries{unit=\"demos\",entity=\"VersionedEntity\"} " + ENTITIES));
+        Assertions.assertTrue(metrics.getPhaseLatency(TransactionMetrics.Phase.COMMIT).getCount() >= 3 * ENTITIES + 1);
+        final long cacheHits = lines.stream()
+                .filter(line -> line.startsWith("tx_cache_hits_total{unit=\"demos\"} "))
+                .mapToLong(line -> Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)))
+                .findFirst().getAsLong();
+        Assertions.assertTrue(cacheHits >= ENTITIES);
+    }
+
+    /**
+     * This demonstrates a statement profiler attached once the metrics are registered: it replaces the profiler counting cache hits and
+     * misses, which are then no longer exposed rather than exposed frozen
+     */
+    @Test
+    public void demoProfilerAttachedLater() {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("demos", Utils.ownSession("metrics-profiled-demo"));
+        try {
+            final TransactionMetrics metrics = new TransactionMetrics().addPersistenceUnit("demos", entityManagerFactory);
+            Assertions.assertTrue(metrics.scrape().contains("tx_cache_hits_total{unit=\"demos\"} "));
+
+            new SqlStatementProfiler().attach(entityManagerFactory);
+            final String scrape = metrics.scrape();
+            Utils.print("MAIN", "\n" + Arrays.stream(scrape.split("\n"))
+                    .filter(line -> line.contains("tx_cache_"))
+                    .collect(Collectors.joining("\n")));
+            Assertions.assertFalse(scrape.contains("tx_cache_hits_total{unit=\"demos\"} "));
+            Assertions.assertFalse(scrape.contains("tx_cache_misses_total{unit=\"demos\"} "));
+        } finally {
+            entityManagerFactory.close();
+        }
+    }
+
+    /**
+     * This demonstrates the metrics of the legacy stack: the JPA factory behind the legacy one is added to the metrics,
+     * which count the entity managers used by its transactions
+     */
+    @Test
+    public void demoLegacyStack() {
+        final AbstractEntityManagerFactory entityManagerFactory = new AbstractEntityManagerFactory("demos", Utils.ownSession("legacy-metrics-demo")) {
+        };
+        final TransactionMetrics metrics = new TransactionMetrics().addPersistenceUnit("demos", entityManagerFactory.getJpaEntityManagerFactory());
+        final EntityManagerSession session = new EntityManagerSession(entityManagerFactory);
+        final DemoEntityDAO<VersionedEntity> dao = new DemoEntityDAO<>(VersionedEntity.class);
+
+        final VersionedEntity created = session.doTransactedAction(em -> dao.create(em, VersionedEntity.newEntity("Entity Content")));
+        session.doTransactedAction(em -> dao.find(em, created.getId()));
+        final List<String> lines = Arrays.asList(metrics.scrape().split("\n"));
+        Utils.print("MAIN", "\n" + lines.stream()
+                .filter(line -> line.startsWith("tx_entity_managers_"))
+                .collect(Collectors.joining("\n")));
+        Assertions.assertTrue(lines.contains("tx_entity_managers_active{unit=\"demos\"} 0"));
+        Assertions.assertTrue(lines.contains("tx_entity_managers_total{unit=\"demos\"} 2"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.FileRecoveryLog;
+import com.eurotech.persistence.transactions.MultiUnitTxCoordinator;
+import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+public class MultiUnitCommit {
+
+    public static final int WORK_MILLIS = 500;
+    private JpaTxManagerFactory txManagerFactory;
+    private ExecutorService executor;
+    private Path recoveryLogFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        txManagerFactory = new JpaTxManagerFactory(2);
+        executor = Executors.newCachedThreadPool();
+        recoveryLogFile = Files.createTempFile("recovery", ".log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdown();
+        Files.deleteIfExists(recoveryLogFile);
+    }
+
+    /**
+     * This demonstrates an operation spanning two databases, each taking {@value #WORK_MILLIS} millis: as they run in parallel,
+     * the whole operation takes about as long as each of them. A failure in either database rolls back both.
+     */
+    @Test
+    public void demoParallelCommit() {
+        final TxManager first = txManagerFactory.create("demos-shard-0");
+        final TxManager second = txManagerFactory.create("demos-shard-1");
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final FileRecoveryLog recoveryLog = new FileRecoveryLog(recoveryLogFile);
+        final MultiUnitTxCoordinator coordinator = new MultiUnitTxCoordinator(executor, recoveryLog, 2);
+
+        // Warming up: deploying the persistence units
+        first.execute(tx -> repo.find(tx, 0L, LockModeType.NONE));
+        second.execute(tx -> repo.find(tx, 0L, LockModeType.NONE));
+        final Instant start = Instant.now();
+        final List<Object> created = coordinator.execute(Arrays.asList(
+                MultiUnitTxCoordinator.Unit.of("first", first, tx -> {
+                    Utils.sleep(WORK_MILLIS);
+                    return repo.create(tx, NonVersionedEntity.newEntity("First half"));
+                }),
+                MultiUnitTxCoordinator.Unit.of("second", second, tx -> {
+                    Utils.sleep(WORK_MILLIS);
+                    return repo.create(tx, NonVersionedEntity.newEntity("Second half"));
+                })));
+        Utils.print("MAIN", String.format("committed on both units in %d millis", Duration.between(start, Instant.now()).toMillis()));
+        Assertions.assertTrue(first.execute(tx -> repo.find(tx, ((DemoEntity) created.get(0)).getId(), LockModeType.NONE)).isPresent());
+        Assertions.assertTrue(second.execute(tx -> repo.find(tx, ((DemoEntity) created.get(1)).getId(), LockModeType.NONE)).isPresent());
+
+        final NonVersionedEntity[] notCommitted = new NonVersionedEntity[1];
+        Assertions.assertThrows(RuntimeException.class, () -> coordinator.execute(Arrays.asList(
+                MultiUnitTxCoordinator.Unit.of("first", first, tx -> notCommitted[0] = repo.create(tx, NonVersionedEntity.newEntity("Rolled back"))),
+                MultiUnitTxCoordinator.Unit.of("second", second, tx -> {
+                    throw new RuntimeException("BABOOM!!");
+                }))));
+        Assertions.assertFalse(first.execute(tx -> repo.find(tx, notCommitted[0].getId(), LockModeType.NONE)).isPresent());
+        Assertions.assertTrue(recoveryLog.readIncomplete().isEmpty());
+    }
+
+    /**
+     * This demonstrates that when a unit cannot even start its transaction, the transactions already started on the other units
+     * are closed rather than leaked.
+     */
+    @Test
+    public void demoStartFailure() {
+        final TxManager first = txManagerFactory.create("demos-shard-0");
+        final AtomicInteger opened = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        final TxManager counted = new TxManager() {
+            @Override
+            @SafeVarargs
+            public final <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) {
+                return first.execute(transactionConsumer, afterCommitConsumers);
+            }
+
+            @Override
+            public Supplier<TxContext> getSupplier() {
+                return () -> {
+                    final TxContext txContext = first.getSupplier().get();
+                    opened.incrementAndGet();
+                    return (TxContext) Proxy.newProxyInstance(TxContext.class.getClassLoader(), new Class<?>[]{TxContext.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            closed.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(txContext, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+                };
+            }
+        };
+        final TxManager unavailable = new TxManager() {
+            @Override
+            @SafeVarargs
+            public final <R> R execute(TxConsumer<R> transactionConsumer, BiConsumer<TxContext, R>... afterCommitConsumers) {
+                throw new IllegalStateException("Database unavailable");
+            }
+
+            @Override
+            public Supplier<TxContext> getSupplier() {
+                return () -> {
+                    throw new IllegalStateException("Database unavailable");
+                };
+            }
+        };
+        final MultiUnitTxCoordinator coordinator = new MultiUnitTxCoordinator(executor, new FileRecoveryLog(recoveryLogFile), 2);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> coordinator.execute(Arrays.asList(
+                MultiUnitTxCoordinator.Unit.of("first", counted, tx -> null),
+                MultiUnitTxCoordinator.Unit.of("second", unavailable, tx -> null))));
+        Utils.print("MAIN", String.format("opened %d transaction contexts, closed %d", opened.get(), closed.get()));
+        Assertions.assertEquals(1, opened.get());
+        Assertions.assertEquals(1, closed.get());
+    }
+}
@@ -0,0 +1,76 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class OrderedLocking {
+
+    public static final int ENTITIES = 20;
+    private JpaTxManagerFactory txManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        txManagerFactory = new JpaTxManagerFactory(1);
+    }
+
+    /**
+     * This demonstrates two threads (T1 and T2) locking the same set of entities, listing them in opposite order.
+     * Locking them one by one in the given order would deadlock, {@link DemoEntityRepository#lockAll} always locks in ascending id order instead:
+     * T2 simply waits for T1 to complete
+     *
+     * @throws InterruptedException never, really
+     */
+    @Test
+    public void demoLockAll() throws InterruptedException {
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final TxManager txManager = txManagerFactory.create("demos");
+        final List<Long> ids = txManager.execute(tx -> IntStream.range(0, ENTITIES)
+                .mapToObj(i -> repo.create(tx, VersionedEntity.newEntity("Entity " + i)).getId())
+                .collect(Collectors.toList()));
+        final List<Long> reversedIds = new ArrayList<>(ids);
+        Collections.reverse(reversedIds);
+        final AtomicBoolean t1Failed = new AtomicBoolean();
+        final AtomicBoolean t2Failed = new AtomicBoolean();
+        final Thread t1 = lockAndUpdate("T1", txManager, repo, ids, t1Failed);
+        final Thread t2 = lockAndUpdate("T2", txManager, repo, reversedIds, t2Failed);
+        t1.start();
+        Utils.sleep(50);
+        t2.start();
+        t1.join();
+        t2.join();
+        Assertions.assertFalse(t1Failed.get());
+        Assertions.assertFalse(t2Failed.get());
+        txManager.execute(tx -> repo.lockAll(tx, ids, LockModeType.NONE))
+                .forEach(entity -> Assertions.assertEquals(2, entity.getChangesCounter()));
+    }
+
+    private Thread lockAndUpdate(String threadName, TxManager txManager, DemoEntityRepository<VersionedEntity> repo, List<Long> ids, AtomicBoolean failed) {
+        return new Thread(() -> {
+            try {
+                txManager.execute(tx -> {
+                    final List<VersionedEntity> locked = repo.lockAll(tx, ids, LockModeType.PESSIMISTIC_WRITE);
+                    Utils.print(threadName, "locked " + locked.size() + " entities");
+                    Utils.sleep(500);
+                    locked.forEach(entity -> entity.setContent(entity.getContent() + " plus " + threadName));
+                    return locked;
+                });
+                Utils.print(threadName, "committed");
+            } catch (Throwable t) {
+                Utils.print(threadName, "failed: " + t);
+                failed.set(true);
+            }
+        });
+    }
+}
@@ -2,26 +2,45 @@ package com.eurotech.demos.transactions;
 
 import com.eurotech.persistence.repositories.DemoEntityRepository;
 import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxContext;
 import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 
 public class PerformanceTest {
 
     public static final int LOOPS = 100;
+    public static final int MAX_MANAGED_ENTITIES = 500;
+    public static final int TX_CONTEXT_POOL_SIZE = 10;
     private JpaTxManagerFactory txManagerFactory;
+    private JpaTxManagerFactory boundedTxManagerFactory;
+    private JpaTxManagerFactory pooledTxManagerFactory;
+    private JpaTxManagerFactory batchingTxManagerFactory;
 
     @BeforeEach
     void setUp() {
         txManagerFactory = new JpaTxManagerFactory(2);
+        boundedTxManagerFactory = new JpaTxManagerFactory(2, MAX_MANAGED_ENTITIES);
+        pooledTxManagerFactory = new JpaTxManagerFactory(2, JpaTxContext.UNBOUNDED, TX_CONTEXT_POOL_SIZE);
+        batchingTxManagerFactory = new JpaTxManagerFactory(2).withBatchWriting(100);
     }
 
     @Test
     void timeInsertTime() {
         final TxManager txManager = txManagerFactory.create("demos");
+        final TxManager boundedTxManager = boundedTxManagerFactory.create("demos");
+        final TxManager pooledTxManager = pooledTxManagerFactory.create("demos");
+        // A session of its own, leaving the other ones unbatched, on the tables (and id sequences) of the main session
+        final Map<String, Object> batchingProperties = new HashMap<>();
+        batchingProperties.put(PersistenceUnitProperties.SESSION_NAME, "demos-batching");
+        batchingProperties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.NONE);
+        final TxManager batchingTxManager = batchingTxManagerFactory.create("demos", batchingProperties);
         final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
 
         txManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Warming up")));
@@ -38,6 +57,16 @@ public class PerformanceTest {
                 final Duration operationDuration = Duration.between(start, end);
                 System.out.print(String.format("individual transactions: %d millis", operationDuration.toMillis()));
             }
+            {
+                final Instant start = Instant.now();
+                for (int i = 0; i < loops_number; i++) {
+                    final int finalI = i;
+                    pooledTxManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity number " + finalI)));
+                }
+                final Instant end = Instant.now();
+                final Duration operationDuration = Duration.between(start, end);
+                System.out.print(String.format(", pooled individual transactions: %d millis", operationDuration.toMillis()));
+            }
             {
                 final Instant start = Instant.now();
                 txManager.execute(tx -> {
@@ -49,7 +78,34 @@ public class PerformanceTest {
                 });
                 final Instant end = Instant.now();
                 final Duration operationDuration = Duration.between(start, end);
-                System.out.println(String.format(", single transaction: %d millis", operationDuration.toMillis()));
+                System.out.print(String.format(", single transaction: %d millis", operationDuration.toMillis()));
+            }
+            {
+                final Instant start = Instant.now();
+                batchingTxManager.execute(tx -> {
+                    ((JpaTxContext) tx).setFlushDeferred(true);
+                    for (int i = 0; i < finalLoops_number; i++) {
+                        final int finalI = i;
+                        repo.create(tx, NonVersionedEntity.newEntity("Entity number " + finalI));
+                    }
+                    return null;
+                });
+                final Instant end = Instant.now();
+                final Duration operationDuration = Duration.between(start, end);
+                System.out.print(String.format(", deferred flush single transaction: %d millis", operationDuration.toMillis()));
+            }
+            {
+                final Instant start = Instant.now();
+                final int highWaterMark = boundedTxManager.execute(tx -> {
+                    for (int i = 0; i < finalLoops_number; i++) {
+                        final int finalI = i;
+                        repo.create(tx, NonVersionedEntity.newEntity("Entity number " + finalI));
+                    }
+                    return ((JpaTxContext) tx).getManagedEntitiesHighWaterMark();
+                });
+                final Instant end = Instant.now();
+                final Duration operationDuration = Duration.between(start, end);
+                System.out.println(String.format(", bounded single transaction: %d millis (max %d managed entities)", operationDuration.toMillis(), highWaterMark));
             }
         }
     }
@@ -0,0 +1,88 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.PriorityTxManager;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.TxPriority;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PriorityScheduling {
+
+    public static final int PERMITS = 2;
+    public static final int BATCH_THREADS = 8;
+    public static final int INTERACTIVE_THREADS = 2;
+    public static final int INTERACTIVE_TRANSACTIONS = 20;
+    public static final int WORK_MILLIS = 20;
+
+    /**
+     * This demonstrates {@value #BATCH_THREADS} threads flooding a {@link PriorityTxManager} having {@value #PERMITS} permits with
+     * batch transactions: the interactive transactions still get most of the permits, waiting far less than the batch ones,
+     * while batch work keeps progressing.
+     *
+     * @throws InterruptedException never, really
+     */
+    @Test
+    public void demoPriorities() throws InterruptedException {
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final NonVersionedEntity entity = txManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity Content")));
+        final PriorityTxManager priorityTxManager = new PriorityTxManager(txManager, PERMITS);
+        final TxManager batchTxManager = priorityTxManager.withPriority(TxPriority.BATCH);
+        final AtomicBoolean interactiveDone = new AtomicBoolean();
+        final AtomicLong batchNanos = new AtomicLong();
+        final AtomicLong batchTransactions = new AtomicLong();
+        final AtomicLong interactiveNanos = new AtomicLong();
+
+        final List<Thread> batchThreads = new ArrayList<>();
+        for (int t = 0; t < BATCH_THREADS; t++) {
+            batchThreads.add(new Thread(() -> {
+                while (!interactiveDone.get()) {
+                    final long start = System.nanoTime();
+                    batchTxManager.execute(tx -> {
+                        Utils.sleep(WORK_MILLIS);
+                        return repo.find(tx, entity.getId(), LockModeType.NONE);
+                    });
+                    batchNanos.addAndGet(System.nanoTime() - start);
+                    batchTransactions.incrementAndGet();
+                }
+            }));
+        }
+        final List<Thread> interactiveThreads = new ArrayList<>();
+        for (int t = 0; t < INTERACTIVE_THREADS; t++) {
+            interactiveThreads.add(new Thread(() -> {
+                for (int i = 0; i < INTERACTIVE_TRANSACTIONS; i++) {
+                    final long start = System.nanoTime();
+                    priorityTxManager.execute(tx -> {
+                        Utils.sleep(WORK_MILLIS);
+                        return repo.find(tx, entity.getId(), LockModeType.NONE);
+                    });
+                    interactiveNanos.addAndGet(System.nanoTime() - start);
+                }
+            }));
+        }
+        batchThreads.forEach(Thread::start);
+        Utils.sleep(100);
+        interactiveThreads.forEach(Thread::start);
+        for (Thread thread : interactiveThreads) {
+            thread.join();
+        }
+        interactiveDone.set(true);
+        for (Thread thread : batchThreads) {
+            thread.join();
+        }
+        final long interactiveAverageMillis = interactiveNanos.get() / (INTERACTIVE_THREADS * INTERACTIVE_TRANSACTIONS) / 1_000_000;
+        final long batchAverageMillis = batchNanos.get() / batchTransactions.get() / 1_000_000;
+        Utils.print("MAIN", String.format("average latency: interactive %d millis, batch %d millis (%d batch transactions, %d served by the starvation guard)",
+                interactiveAverageMillis, batchAverageMillis, batchTransactions.get(), priorityTxManager.getStarvationGrants(TxPriority.BATCH)));
+        Assertions.assertTrue(interactiveAverageMillis < batchAverageMillis);
+        Assertions.assertTrue(batchTransactions.get() > 0);
+    }
+}
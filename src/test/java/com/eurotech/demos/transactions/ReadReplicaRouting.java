@@ -0,0 +1,72 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.RoutingTxManager;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.time.Duration;
+
+public class ReadReplicaRouting {
+
+    public static final Duration READ_YOUR_WRITES_WINDOW = Duration.ofMillis(500);
+    private JpaTxManagerFactory txManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        txManagerFactory = new JpaTxManagerFactory(2);
+    }
+
+    /**
+     * This demonstrates read-only transactions being routed to the replica, except for a short window after a write,
+     * during which the writing thread still reads from the primary (so that it sees its own writes, even if the replica lags behind)
+     */
+    @Test
+    public void demoReadYourWrites() {
+        final TxManager primary = txManagerFactory.create("demos");
+        final TxManager replica = txManagerFactory.create("demos-replica");
+        final RoutingTxManager txManager = new RoutingTxManager(primary, replica, READ_YOUR_WRITES_WINDOW);
+        final ReplicaCopier<NonVersionedEntity> copier = new ReplicaCopier<>(NonVersionedEntity.class, primary, replica);
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+
+        final NonVersionedEntity created = txManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity Content")));
+        // Within the window: reading from the primary
+        Assertions.assertTrue(txManager.executeReadOnly(tx -> repo.find(tx, created.getId(), LockModeType.NONE)).isPresent());
+        Utils.sleep((int) READ_YOUR_WRITES_WINDOW.toMillis());
+        // After the window: reading from the replica, which has not caught up yet
+        Assertions.assertFalse(txManager.executeReadOnly(tx -> repo.find(tx, created.getId(), LockModeType.NONE)).isPresent());
+        Utils.print("MAIN", "copied " + copier.copy() + " entities to the replica");
+        Assertions.assertTrue(txManager.executeReadOnly(tx -> repo.find(tx, created.getId(), LockModeType.NONE)).isPresent());
+    }
+
+    /**
+     * This demonstrates that read-only transactions are rolled back: changes done within them are not persisted,
+     * neither on the primary (within the read-your-writes window) nor on the replica
+     */
+    @Test
+    public void demoReadOnlyNotPersisted() {
+        final TxManager primary = txManagerFactory.create("demos");
+        final TxManager replica = txManagerFactory.create("demos-replica");
+        final RoutingTxManager txManager = new RoutingTxManager(primary, replica, READ_YOUR_WRITES_WINDOW);
+        final ReplicaCopier<NonVersionedEntity> copier = new ReplicaCopier<>(NonVersionedEntity.class, primary, replica);
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+
+        final NonVersionedEntity created = txManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity Content")));
+        copier.copy();
+        final TxManager.TxConsumer<Object> change = tx -> {
+            repo.find(tx, created.getId(), LockModeType.NONE).get().setContent("Changed Content");
+            return null;
+        };
+        // Within the window: on the primary
+        txManager.executeReadOnly(change);
+        Assertions.assertEquals("Entity Content", primary.execute(tx -> repo.find(tx, created.getId(), LockModeType.NONE)).get().getContent());
+        Utils.sleep((int) READ_YOUR_WRITES_WINDOW.toMillis());
+        // After the window: on the replica
+        txManager.executeReadOnly(change);
+        Assertions.assertEquals("Entity Content", replica.execute(tx -> repo.find(tx, created.getId(), LockModeType.NONE)).get().getContent());
+    }
+}
@@ -0,0 +1,30 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.transactions.jpa.RecoverableSqlErrors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.PersistenceException;
+import java.sql.SQLException;
+
+public class RecoverableErrors {
+
+    /**
+     * This demonstrates the classification of SQL errors: deadlocks and lock timeouts anywhere in the causal chain are recoverable,
+     * other errors are not, including those without a SQL state (as raised by connection pools and some drivers)
+     */
+    @Test
+    public void demoClassification() {
+        final RecoverableSqlErrors derby = RecoverableSqlErrors.forTargetDatabase("Derby");
+        Assertions.assertTrue(derby.isRecoverable(new PersistenceException(new SQLException("Deadlock", "40001"))));
+        Assertions.assertTrue(derby.isRecoverable(new PersistenceException(new SQLException("Lock timeout", "40XL1"))));
+        Assertions.assertFalse(derby.isRecoverable(new PersistenceException(new SQLException("Duplicate key", "23505"))));
+
+        final PersistenceException withoutSqlState = new PersistenceException(new SQLException("x"));
+        Assertions.assertFalse(derby.isRecoverable(withoutSqlState));
+        Assertions.assertFalse(RecoverableSqlErrors.GENERIC.isRecoverable(withoutSqlState));
+        Assertions.assertFalse(RecoverableSqlErrors.MYSQL.isRecoverable(withoutSqlState));
+        Assertions.assertTrue(RecoverableSqlErrors.MYSQL.isRecoverable(new PersistenceException(new SQLException("Lock wait timeout", null, 1205))));
+        Utils.print("MAIN", "Errors without SQL state are not recoverable");
+    }
+}
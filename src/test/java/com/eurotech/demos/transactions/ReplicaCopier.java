@@ -0,0 +1,47 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a replica persistence unit in sync with the primary one, copying all entities of a given class over
+ * (good enough for demos, a real replica would be fed by the database's own replication)
+ */
+public class ReplicaCopier<E extends DemoEntity> {
+    private final Class<E> clazz;
+    private final TxManager primary;
+    private final TxManager replica;
+
+    public ReplicaCopier(Class<E> clazz, TxManager primary, TxManager replica) {
+        this.clazz = clazz;
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    public int copy() {
+        final List<E> primaryEntities = primary.execute(tx -> findAll(JpaAwareTxContext.extractEntityManager(tx)));
+        final Set<Long> primaryIds = primaryEntities.stream().map(DemoEntity::getId).collect(Collectors.toSet());
+        return replica.execute(tx -> {
+            final EntityManager em = JpaAwareTxContext.extractEntityManager(tx);
+            findAll(em).stream()
+                    .filter(e -> !primaryIds.contains(e.getId()))
+                    .forEach(em::remove);
+            primaryEntities.forEach(em::merge);
+            return primaryEntities.size();
+        });
+    }
+
+    private List<E> findAll(EntityManager em) {
+        return em.createQuery("SELECT e FROM " + clazz.getSimpleName() + " e", clazz)
+                .getResultList()
+                .stream()
+                // Leaving subclasses (stored in the same table) out
+                .filter(e -> e.getClass().equals(clazz))
+                .collect(Collectors.toList());
+    }
+}
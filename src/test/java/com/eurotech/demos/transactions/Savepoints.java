@@ -0,0 +1,111 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaAwareTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Savepoints {
+
+    public static final int EXPENSIVE_STEP_CREATIONS = 50;
+
+    /**
+     * This demonstrates a transaction made of an expensive step (creating {@value #EXPENSIVE_STEP_CREATIONS} entities), followed by
+     * the update of a versioned entity by id and expected version, that conflicts with a concurrent transaction: the update step
+     * detects the conflict, and only the step is rolled back to its savepoint and executed again. The expensive step runs once and its work is committed.
+     */
+    @Test
+    public void demoStepRetriedFromSavepoint() {
+        final TxManager txManager = new JpaTxManagerFactory(1).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> nonVersionedRepo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final DemoEntityRepository<VersionedEntity> versionedRepo = new DemoEntityRepository<>(VersionedEntity.class);
+        final VersionedEntity contended = txManager.execute(tx -> versionedRepo.create(tx, VersionedEntity.newEntity("Entity Content")));
+        final AtomicInteger expensiveStepExecutions = new AtomicInteger();
+        final AtomicInteger updateStepExecutions = new AtomicInteger();
+        final List<Long> createdIds = new ArrayList<>();
+
+        txManager.execute(tx -> {
+            expensiveStepExecutions.incrementAndGet();
+            for (int i = 0; i < EXPENSIVE_STEP_CREATIONS; i++) {
+                createdIds.add(nonVersionedRepo.create(tx, NonVersionedEntity.newEntity("Expensive " + i)).getId());
+            }
+            return JpaAwareTxContext.executeStep(tx, "update", 3, stepTx -> {
+                final EntityManager em = JpaAwareTxContext.extractEntityManager(stepTx);
+                final Integer version = em.createQuery("SELECT e.version FROM VersionedEntity e WHERE e.id = :id", Integer.class)
+                        .setParameter("id", contended.getId())
+                        .getSingleResult();
+                if (updateStepExecutions.incrementAndGet() == 1) {
+                    CompletableFuture.runAsync(() -> txManager.execute(otherTx -> {
+                        final VersionedEntity concurrent = versionedRepo.find(otherTx, contended.getId(), LockModeType.NONE).get();
+                        concurrent.setContent("Concurrent update");
+                        return versionedRepo.update(otherTx, concurrent, concurrent);
+                    })).join();
+                    Utils.print("MAIN", "concurrent update committed");
+                }
+                final int updated = em.createQuery("UPDATE VersionedEntity e SET e.content = :content, e.version = e.version + 1 WHERE e.id = :id AND e.version = :version")
+                        .setParameter("content", "Updated by step attempt " + updateStepExecutions.get())
+                        .setParameter("id", contended.getId())
+                        .setParameter("version", version)
+                        .executeUpdate();
+                if (updated == 0) {
+                    throw new OptimisticLockException("Version " + version + " of entity " + contended.getId() + " is stale");
+                }
+                return updated;
+            });
+        });
+
+        Utils.print("MAIN", String.format("expensive step executed %d times, update step %d times", expensiveStepExecutions.get(), updateStepExecutions.get()));
+        Assertions.assertEquals(1, expensiveStepExecutions.get());
+        Assertions.assertEquals(2, updateStepExecutions.get());
+        Assertions.assertEquals(EXPENSIVE_STEP_CREATIONS, txManager.execute(tx -> nonVersionedRepo.findAll(tx, createdIds)).size());
+        final VersionedEntity finalEntity = txManager.execute(tx -> versionedRepo.find(tx, contended.getId(), LockModeType.NONE).get());
+        Assertions.assertEquals("Updated by step attempt 2", finalEntity.getContent());
+    }
+
+    /**
+     * This demonstrates a step whose conflict is detected by the persistence provider, at flush: the flush failure marks the whole
+     * transaction for rollback, so the step cannot be retried alone and the transaction is retried by the {@link TxManager}, expensive step included.
+     */
+    @Test
+    public void demoStepFailingAtFlush() {
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> nonVersionedRepo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final DemoEntityRepository<VersionedEntity> versionedRepo = new DemoEntityRepository<>(VersionedEntity.class);
+        final VersionedEntity contended = txManager.execute(tx -> versionedRepo.create(tx, VersionedEntity.newEntity("Entity Content")));
+        final AtomicInteger expensiveStepExecutions = new AtomicInteger();
+        final AtomicInteger updateStepExecutions = new AtomicInteger();
+
+        txManager.execute(tx -> {
+            expensiveStepExecutions.incrementAndGet();
+            for (int i = 0; i < EXPENSIVE_STEP_CREATIONS; i++) {
+                nonVersionedRepo.create(tx, NonVersionedEntity.newEntity("Expensive " + i));
+            }
+            return JpaAwareTxContext.executeStep(tx, "update", 3, stepTx -> {
+                final VersionedEntity entity = versionedRepo.find(stepTx, contended.getId(), LockModeType.NONE).get();
+                if (updateStepExecutions.incrementAndGet() == 1) {
+                    CompletableFuture.runAsync(() -> txManager.execute(otherTx -> {
+                        final VersionedEntity concurrent = versionedRepo.find(otherTx, contended.getId(), LockModeType.NONE).get();
+                        concurrent.setContent("Concurrent update");
+                        return versionedRepo.update(otherTx, concurrent, concurrent);
+                    })).join();
+                }
+                entity.setContent("Updated by step attempt " + updateStepExecutions.get());
+                return versionedRepo.update(stepTx, entity, entity);
+            });
+        });
+
+        Utils.print("MAIN", String.format("expensive step executed %d times, update step %d times", expensiveStepExecutions.get(), updateStepExecutions.get()));
+        Assertions.assertEquals(2, expensiveStepExecutions.get());
+        Assertions.assertEquals(2, updateStepExecutions.get());
+    }
+}
@@ -0,0 +1,90 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.repositories.ShardRouter;
+import com.eurotech.persistence.repositories.ShardedDemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class Sharding {
+
+    // As the initial values of the shards' sequences, in their mapping files
+    public static final long SHARD_RANGE_SIZE = 1_000_000L;
+    public static final int ENTITIES = 100;
+    private JpaTxManagerFactory txManagerFactory;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        txManagerFactory = new JpaTxManagerFactory(2);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * This demonstrates entities spread over two databases by id range: single entity operations go to the shard owning the id,
+     * multi-id lookups and full scans query both shards in parallel. Each shard generates ids in the range it owns, its sequence
+     * being configured in its persistence unit
+     */
+    @Test
+    public void demoRangeSharding() {
+        final List<TxManager> shards = Arrays.asList(txManagerFactory.create("demos-shard-0"), txManagerFactory.create("demos-shard-1"));
+        final ShardedDemoEntityRepository<NonVersionedEntity> repo = new ShardedDemoEntityRepository<>(
+                new DemoEntityRepository<>(NonVersionedEntity.class),
+                shards,
+                ShardRouter.byRange(SHARD_RANGE_SIZE, shards.size()),
+                executor);
+
+        final List<Long> ids = IntStream.range(0, ENTITIES)
+                .mapToObj(i -> repo.create(NonVersionedEntity.newEntity("Entity " + i)).getId())
+                .collect(Collectors.toList());
+        Utils.print("MAIN", "created ids " + ids.subList(0, 4) + "...");
+        Assertions.assertEquals(ENTITIES / 2, ids.stream().filter(id -> id >= SHARD_RANGE_SIZE).count());
+
+        final NonVersionedEntity toUpdate = repo.find(ids.get(1), LockModeType.NONE).get();
+        toUpdate.setContent("Updated content");
+        repo.update(toUpdate, LockModeType.NONE);
+        Assertions.assertEquals("Updated content", repo.find(ids.get(1), LockModeType.NONE).get().getContent());
+
+        Assertions.assertEquals(ids.subList(0, 10).stream().sorted().collect(Collectors.toList()),
+                repo.findAll(ids.subList(0, 10)).stream().map(DemoEntity::getId).collect(Collectors.toList()));
+
+        repo.delete(ids.get(0));
+        final AtomicLong scanned = new AtomicLong();
+        Assertions.assertEquals(ENTITIES - 1, repo.forEach(7, entity -> scanned.incrementAndGet()));
+        Assertions.assertEquals(ENTITIES - 1, scanned.get());
+
+        // Subclasses get their ids from the shards' sequences too, and are not included in lookups and scans
+        final ShardedDemoEntityRepository<VersionedEntity> versionedRepo = new ShardedDemoEntityRepository<>(
+                new DemoEntityRepository<>(VersionedEntity.class),
+                shards,
+                ShardRouter.byRange(SHARD_RANGE_SIZE, shards.size()),
+                executor);
+        final List<Long> versionedIds = IntStream.range(0, shards.size())
+                .mapToObj(i -> versionedRepo.create(VersionedEntity.newEntity("Versioned Entity " + i)).getId())
+                .collect(Collectors.toList());
+        Utils.print("MAIN", "created versioned ids " + versionedIds);
+        Assertions.assertEquals(1, versionedIds.stream().filter(id -> id >= SHARD_RANGE_SIZE).count());
+        Assertions.assertEquals(versionedIds.size(), versionedRepo.findAll(versionedIds).size());
+        Assertions.assertTrue(repo.findAll(versionedIds).isEmpty());
+        Assertions.assertEquals(ENTITIES - 1, repo.forEach(7, entity -> Assertions.assertEquals(NonVersionedEntity.class, entity.getClass())));
+        Assertions.assertEquals(versionedIds.size(), versionedRepo.forEach(7, entity -> Assertions.assertEquals(VersionedEntity.class, entity.getClass())));
+    }
+}
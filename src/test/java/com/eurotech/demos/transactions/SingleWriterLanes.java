@@ -0,0 +1,120 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.repositories.UpdateLanes;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class SingleWriterLanes {
+
+    public static final int THREADS = 4;
+    public static final int UPDATES_PER_THREAD = 50;
+
+    /**
+     * This demonstrates {@value #THREADS} threads updating the same versioned entity through {@link UpdateLanes}: no update fails
+     * with an optimistic conflict, and the updates queued while a transaction runs are applied together, with far fewer writes than updates
+     *
+     * @throws InterruptedException never, really
+     */
+    @Test
+    public void demoUpdateLanes() throws InterruptedException {
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final VersionedEntity initialEntity = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("")));
+        final List<CompletableFuture<VersionedEntity>> updates = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        final Instant start = Instant.now();
+        try (UpdateLanes<VersionedEntity> lanes = new UpdateLanes<>(txManager, repo, 4)) {
+            for (int t = 0; t < THREADS; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        final CompletableFuture<VersionedEntity> update = lanes.update(initialEntity.getId(), entity -> entity.setContent(entity.getContent() + "."));
+                        synchronized (updates) {
+                            updates.add(update);
+                        }
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0])).join();
+        }
+        final VersionedEntity finalEntity = txManager.execute(tx -> repo.find(tx, initialEntity.getId(), LockModeType.NONE).get());
+        Utils.print("MAIN", String.format("%d updates applied with %d writes in %d millis",
+                finalEntity.getContent().length(), finalEntity.getChangesCounter(), Duration.between(start, Instant.now()).toMillis()));
+        Assertions.assertEquals(THREADS * UPDATES_PER_THREAD, finalEntity.getContent().length());
+        Assertions.assertTrue(finalEntity.getChangesCounter() < THREADS * UPDATES_PER_THREAD);
+    }
+
+    /**
+     * This demonstrates closing the lanes while updates are being submitted: every update completes, either applied,
+     * cancelled or rejected, none is left pending
+     */
+    @Test
+    public void demoCloseWhileUpdating() throws InterruptedException, ExecutionException, TimeoutException {
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final VersionedEntity initialEntity = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("")));
+        final List<CompletableFuture<VersionedEntity>> updates = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        final UpdateLanes<VersionedEntity> lanes = new UpdateLanes<>(txManager, repo, 4);
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                    final CompletableFuture<VersionedEntity> update = lanes.update(initialEntity.getId(), entity -> entity.setContent(entity.getContent() + "."));
+                    synchronized (updates) {
+                        updates.add(update);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        lanes.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(updates.toArray(new CompletableFuture<?>[0]))
+                .exceptionally(e -> null)
+                .get(10, TimeUnit.SECONDS);
+        Utils.print("MAIN", String.format("%d updates applied, %d cancelled or rejected",
+                updates.stream().filter(update -> !update.isCompletedExceptionally()).count(),
+                updates.stream().filter(CompletableFuture::isCompletedExceptionally).count()));
+        Assertions.assertTrue(updates.stream().allMatch(CompletableFuture::isDone));
+    }
+
+    /**
+     * This demonstrates a mutation throwing an error rather than an exception: its update completes exceptionally with the error,
+     * and the lane keeps applying the following updates
+     */
+    @Test
+    public void demoMutationError() throws InterruptedException, ExecutionException, TimeoutException {
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final VersionedEntity initialEntity = txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("")));
+        try (UpdateLanes<VersionedEntity> lanes = new UpdateLanes<>(txManager, repo, 1)) {
+            final CompletableFuture<VersionedEntity> failed = lanes.update(initialEntity.getId(), entity -> {
+                throw new AssertionError("BABOOM!!");
+            });
+            final CompletableFuture<VersionedEntity> applied = lanes.update(initialEntity.getId(), entity -> entity.setContent("Updated"));
+
+            final ExecutionException failure = Assertions.assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+            Utils.print("MAIN", "failed update: " + failure.getCause());
+            Assertions.assertTrue(failure.getCause() instanceof AssertionError);
+            Assertions.assertEquals("Updated", applied.get(10, TimeUnit.SECONDS).getContent());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import com.eurotech.persistence.transactions.jpa.SqlStatementProfiler;
+import org.eclipse.kapua.commons.jpa.AbstractEntityManagerFactory;
+import org.eclipse.kapua.commons.jpa.DemoEntityDAO;
+import org.eclipse.kapua.commons.jpa.EntityManagerSession;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class StatementProfiling {
+
+    public static final int ENTITIES = 10;
+
+    /**
+     * This demonstrates the statements profiled for a single update (with the shared cache disabled, so that every find reaches
+     * the database), and an N+1 select pattern (entities loaded one by one in a loop) being flagged.
+     */
+    @Test
+    public void demoStatementsPerTransaction() {
+        final SqlStatementProfiler profiler = new SqlStatementProfiler();
+        // A session of its own, the shared cache setting being ignored for a session already deployed
+        final Map<String, Object> properties = Utils.ownSession("statement-profiling-demo");
+        properties.put(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "false");
+        final TxManager txManager = new JpaTxManagerFactory(1)
+                .withStatementProfiler(profiler)
+                .create("demos", properties);
+        final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+        final List<Long> ids = IntStream.range(0, ENTITIES)
+                .mapToObj(i -> txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity " + i))).getId())
+                .collect(Collectors.toList());
+        profiler.reset();
+
+        txManager.execute(tx -> {
+            final VersionedEntity entity = repo.find(tx, ids.get(0), LockModeType.NONE).get();
+            entity.setContent("Updated");
+            return repo.update(tx, entity);
+        });
+        final SqlStatementProfiler.TransactionProfile update = profiler.getRecentTransactions().get(0);
+        Utils.print("MAIN", update);
+        Assertions.assertTrue(update.getStatements().stream().anyMatch(statement -> statement.getCaller().equals("DemoEntityRepository.update")
+                && statement.getShape().startsWith("UPDATE")));
+        Assertions.assertTrue(update.getNPlusOneSuspects().isEmpty());
+
+        txManager.execute(tx -> ids.stream().map(id -> repo.find(tx, id, LockModeType.NONE).get()).collect(Collectors.toList()));
+        final SqlStatementProfiler.TransactionProfile nPlusOne = profiler.getRecentTransactions().get(1);
+        Utils.print("MAIN", nPlusOne);
+        Assertions.assertEquals(ENTITIES, nPlusOne.getStatementCount());
+        Assertions.assertEquals(1, nPlusOne.getNPlusOneSuspects().size());
+        Assertions.assertTrue(nPlusOne.getNPlusOneSuspects().get(0).startsWith("DemoEntityRepository.find: SELECT"));
+
+        txManager.execute(tx -> repo.findAll(tx, ids));
+        Assertions.assertEquals(1, profiler.getRecentTransactions().get(2).getStatementCount());
+        Utils.print("MAIN", "\n" + profiler.report());
+    }
+
+    /**
+     * This demonstrates the same profiler installed on the legacy stack, as a plain EclipseLink profiler: statements are still
+     * attributed to the DAO method issuing them, and grouped by transaction
+     */
+    @Test
+    public void demoLegacyStack() {
+        final SqlStatementProfiler profiler = new SqlStatementProfiler();
+        final AbstractEntityManagerFactory entityManagerFactory = new AbstractEntityManagerFactory("demos",
+                Utils.ownSession("legacy-profiling-demo")) {
+        };
+        entityManagerFactory.setSessionProfiler(profiler);
+        final EntityManagerSession session = new EntityManagerSession(entityManagerFactory);
+        final DemoEntityDAO<VersionedEntity> dao = new DemoEntityDAO<>(VersionedEntity.class);
+
+        final VersionedEntity created = session.doTransactedAction(em -> dao.create(em, VersionedEntity.newEntity("Entity Content")));
+        session.doTransactedAction(em -> dao.find(em, created.getId()));
+        Utils.print("MAIN", "\n" + profiler.report());
+        final List<SqlStatementProfiler.TransactionProfile> transactions = profiler.getRecentTransactions();
+        Assertions.assertTrue(transactions.size() >= 2);
+        Assertions.assertTrue(transactions.stream().flatMap(transaction -> transaction.getStatements().stream())
+                .anyMatch(statement -> statement.getCaller().equals("DemoEntityDAO.create") && statement.getShape().startsWith("INSERT")));
+    }
+}
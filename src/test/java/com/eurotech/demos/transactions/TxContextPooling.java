@@ -0,0 +1,90 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.TxContext;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.TxManagerImpl;
+import com.eurotech.persistence.transactions.jpa.JpaTxContext;
+import com.eurotech.persistence.transactions.jpa.JpaTxContextPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+
+public class TxContextPooling {
+
+    public static final int TRANSACTIONS = 100;
+
+    /**
+     * This demonstrates the reuse of pooled contexts: {@value #TRANSACTIONS} transactions run one after the other all use the same
+     * {@link javax.persistence.EntityManager}
+     */
+    @Test
+    public void demoReuse() {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("demos");
+        try (JpaTxContextPool pool = new JpaTxContextPool(entityManagerFactory, JpaTxContext.UNBOUNDED, 2)) {
+            final TxManager txManager = new TxManagerImpl(pool, 1);
+            final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+            for (int i = 0; i < TRANSACTIONS; i++) {
+                final int finalI = i;
+                txManager.execute(tx -> repo.create(tx, VersionedEntity.newEntity("Entity " + finalI)));
+            }
+            Utils.print("MAIN", String.format("%d transactions, %d entity managers created", TRANSACTIONS, pool.getCreatedCount()));
+            Assertions.assertEquals(1, pool.getCreatedCount());
+            Assertions.assertEquals(1, pool.getIdleCount());
+            Assertions.assertEquals(0, pool.getCheckedOutCount());
+        }
+    }
+
+    /**
+     * This demonstrates that a context closed twice does not harm the next owner of its {@link javax.persistence.EntityManager}:
+     * the second close of the first owner is ignored, and the transaction of the second owner goes on and commits
+     */
+    @Test
+    public void demoStaleClose() throws IOException {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("demos");
+        try (JpaTxContextPool pool = new JpaTxContextPool(entityManagerFactory, JpaTxContext.UNBOUNDED, 2)) {
+            final DemoEntityRepository<VersionedEntity> repo = new DemoEntityRepository<>(VersionedEntity.class);
+            final TxContext first = pool.get();
+            final Long id = repo.create(first, VersionedEntity.newEntity("Entity Content")).getId();
+            first.commit();
+            first.close();
+
+            final TxContext second = pool.get();
+            Assertions.assertEquals(1, pool.getCreatedCount());
+            final VersionedEntity entity = repo.find(second, id).get();
+            entity.setContent("Updated Content");
+            repo.update(second, entity);
+            // Stale owner
+            first.close();
+            Assertions.assertEquals(1, pool.getCheckedOutCount());
+            second.commit();
+            second.close();
+
+            final TxContext third = pool.get();
+            Assertions.assertEquals("Updated Content", repo.find(third, id).get().getContent());
+            third.close();
+            Utils.print("MAIN", "The second close of a context is ignored");
+        }
+    }
+
+    /**
+     * This demonstrates the closing of the pool: idle {@link javax.persistence.EntityManager}s are closed, and no more contexts are handed out
+     */
+    @Test
+    public void demoClose() throws IOException {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("demos");
+        final JpaTxContextPool pool = new JpaTxContextPool(entityManagerFactory, JpaTxContext.UNBOUNDED, 2);
+        final TxContext txContext = pool.get();
+        ((JpaTxContext) txContext).getEntityManager();
+        txContext.commit();
+        txContext.close();
+        Assertions.assertEquals(1, pool.getIdleCount());
+
+        pool.close();
+        Assertions.assertEquals(0, pool.getIdleCount());
+        Assertions.assertThrows(IllegalStateException.class, pool::get);
+    }
+}
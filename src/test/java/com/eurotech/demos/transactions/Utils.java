@@ -2,11 +2,16 @@ package com.eurotech.demos.transactions;
 
 import com.eurotech.persistence.repositories.DemoEntityRepository;
 import com.eurotech.persistence.transactions.TxContext;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.jpa.JpaHelper;
 
 import javax.persistence.LockModeType;
+import javax.persistence.Persistence;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Utils {
 
@@ -34,4 +39,16 @@ public class Utils {
         System.out.println(time() + " - " + thread + ": " + message);
     }
 
+    /**
+     * Properties of a session of its own on the demos unit, on the tables (and id sequences) of the main session, deployed first if not yet:
+     * deploying another session with the schema generation of the unit would drop them under the main one
+     */
+    protected static Map<String, Object> ownSession(String sessionName) {
+        JpaHelper.getServerSession(Persistence.createEntityManagerFactory("demos"));
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put(PersistenceUnitProperties.SESSION_NAME, sessionName);
+        properties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.NONE);
+        return properties;
+    }
+
 }
@@ -0,0 +1,105 @@
+package com.eurotech.demos.transactions;
+
+import com.eurotech.persistence.repositories.DemoEntityRepository;
+import com.eurotech.persistence.transactions.PermitBoundedExecutorService;
+import com.eurotech.persistence.transactions.TxExecutors;
+import com.eurotech.persistence.transactions.TxManager;
+import com.eurotech.persistence.transactions.jpa.JpaTxManagerFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.LockModeType;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreads {
+
+    public static final int TRANSACTIONS = 2000;
+    public static final int MAX_CONCURRENT_TRANSACTIONS = 10;
+    public static final int WORK_MILLIS = 5;
+
+    /**
+     * This compares {@value #TRANSACTIONS} concurrent transactions, each one submitted as its own task, run on:
+     * a platform thread per task, a fixed pool of platform threads, and {@link TxExecutors#newTransactionExecutor(int)}
+     * (virtual threads when running from the multi-release jar on JDK 21+). All are capped at {@value #MAX_CONCURRENT_TRANSACTIONS} concurrent transactions.
+     *
+     * @throws Exception never, really
+     */
+    @Test
+    public void demoTransactionExecutors() throws Exception {
+        final TxManager txManager = new JpaTxManagerFactory(2).create("demos");
+        final DemoEntityRepository<NonVersionedEntity> repo = new DemoEntityRepository<>(NonVersionedEntity.class);
+        final NonVersionedEntity entity = txManager.execute(tx -> repo.create(tx, NonVersionedEntity.newEntity("Entity Content")));
+
+        run("platform thread per transaction", new PermitBoundedExecutorService(Executors.newCachedThreadPool(), MAX_CONCURRENT_TRANSACTIONS), txManager, repo, entity);
+        run("platform thread pool", TxExecutors.newPlatformTransactionExecutor(MAX_CONCURRENT_TRANSACTIONS), txManager, repo, entity);
+        run(TxExecutors.isVirtualThreadsSupported() ? "virtual threads" : "transaction executor (no virtual threads)",
+                TxExecutors.newTransactionExecutor(MAX_CONCURRENT_TRANSACTIONS), txManager, repo, entity);
+    }
+
+    private void run(String name, ExecutorService executor, TxManager txManager, DemoEntityRepository<NonVersionedEntity> repo, NonVersionedEntity entity) throws Exception {
+        final long threadsStartedBefore = ManagementFactory.getThreadMXBean().getTotalStartedThreadCount();
+        final Instant start = Instant.now();
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            futures.add(executor.submit(() -> txManager.execute(tx -> {
+                Utils.sleep(WORK_MILLIS);
+                return repo.find(tx, entity.getId(), LockModeType.NONE);
+            })));
+        }
+        for (Future<?> future : futures) {
+            Assertions.assertTrue(((java.util.Optional<?>) future.get()).isPresent());
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        Utils.print("MAIN", String.format("%s: %d transactions in %d millis, %d platform threads started",
+                name, TRANSACTIONS, Duration.between(start, Instant.now()).toMillis(), ManagementFactory.getThreadMXBean().getTotalStartedThreadCount() - threadsStartedBefore));
+    }
+
+    /**
+     * This demonstrates tasks waiting for a permit of a {@link PermitBoundedExecutorService}: when interrupted they do not run, and their
+     * future is cancelled rather than left pending; on {@link ExecutorService#shutdownNow()} they are returned as never started
+     *
+     * @throws Exception never, really
+     */
+    @Test
+    public void demoInterruptedWhileWaiting() throws Exception {
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+        final PermitBoundedExecutorService executor = new PermitBoundedExecutorService(Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable);
+            threads.add(thread);
+            return thread;
+        }), 1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Future<?> holding = executor.submit(() -> {
+            done.await();
+            return null;
+        });
+        final List<Future<?>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(executor.submit(() -> Utils.print("MAIN", "should not run")));
+        }
+        while (executor.getWaitingTasks() < waiting.size()) {
+            Utils.sleep(10);
+        }
+
+        threads.get(1).interrupt();
+        Assertions.assertThrows(CancellationException.class, () -> waiting.get(0).get(5, TimeUnit.SECONDS));
+        final List<Runnable> notStarted = executor.shutdownNow();
+        Utils.print("MAIN", String.format("%d tasks never started", notStarted.size()));
+        Assertions.assertEquals(waiting.size() - 1, notStarted.size());
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertThrows(ExecutionException.class, holding::get);
+    }
+}